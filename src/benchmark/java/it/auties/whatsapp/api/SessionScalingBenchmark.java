@@ -0,0 +1,116 @@
+package it.auties.whatsapp.api;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Measures the threads and the memory used to host a number of idle sessions that receive listener events and ping periodically.
+ * {@link Model#SHARED} uses a {@link WhatsappRuntime}: a lane on the shared listeners pool and a ping task on the shared scheduler per session.
+ * {@link Model#PER_SESSION} reproduces the previous model: a pool of ten listener threads and a ping scheduler per session.
+ * The throughput is the number of listener events dispatched per second, while the threads and the resident memory are reported as secondary results.
+ * The resident memory is read from /proc, so it's only reported on Linux.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class SessionScalingBenchmark {
+    private static final int PING_INTERVAL = 30;
+
+    @Param({"10", "100", "1000"})
+    private int sessions;
+
+    @Param({"SHARED", "PER_SESSION"})
+    private Model model;
+
+    private WhatsappRuntime runtime;
+
+    private List<Executor> lanes;
+
+    private List<ScheduledFuture<?>> pings;
+
+    private List<ExecutorService> services;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.runtime = new WhatsappRuntime(Math.max(4, Runtime.getRuntime()
+                .availableProcessors() * 2));
+        this.lanes = new ArrayList<>();
+        this.pings = new ArrayList<>();
+        this.services = new ArrayList<>();
+        for (var index = 0; index < sessions; index++) {
+            switch (model) {
+                case SHARED -> {
+                    lanes.add(runtime.newListenersLane());
+                    pings.add(runtime.scheduler()
+                            .scheduleAtFixedRate(() -> {
+                            }, PING_INTERVAL, PING_INTERVAL, TimeUnit.SECONDS));
+                }
+                case PER_SESSION -> {
+                    var listeners = Executors.newScheduledThreadPool(10);
+                    var ping = Executors.newSingleThreadScheduledExecutor();
+                    lanes.add(listeners);
+                    pings.add(ping.scheduleAtFixedRate(() -> {
+                    }, PING_INTERVAL, PING_INTERVAL, TimeUnit.SECONDS));
+                    services.add(listeners);
+                    services.add(ping);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pings.forEach(ping -> ping.cancel(false));
+        services.forEach(ExecutorService::shutdownNow);
+        runtime.close();
+    }
+
+    @Benchmark
+    public void dispatch(Resources resources) throws InterruptedException {
+        var latch = new CountDownLatch(lanes.size());
+        lanes.forEach(lane -> lane.execute(latch::countDown));
+        latch.await();
+        resources.update();
+    }
+
+    public enum Model {
+        SHARED,
+        PER_SESSION
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Resources {
+        public long threads;
+
+        public long rssMegabytes;
+
+        private void update() {
+            this.threads = ManagementFactory.getThreadMXBean()
+                    .getThreadCount();
+            this.rssMegabytes = readResidentMemory() / 1024;
+        }
+
+        private long readResidentMemory() {
+            try (var lines = Files.lines(Path.of("/proc/self/status"))) {
+                return lines.filter(line -> line.startsWith("VmRSS:"))
+                        .map(line -> line.replaceAll("\\D", ""))
+                        .mapToLong(Long::parseLong)
+                        .findFirst()
+                        .orElse(0);
+            } catch (IOException | RuntimeException exception) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package it.auties.whatsapp.binary;
+
+import it.auties.whatsapp.model.request.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and the allocations of {@link Encoder} and {@link Decoder} on the stanzas of {@link StanzaCorpus}.
+ * {@link CodecBenchmark#decodeConcurrently(Session)} decodes on four threads at once, each one owning its decoder like a socket does, to check that sessions don't contend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class CodecBenchmark {
+    @Param({StanzaCorpus.RECEIPT, StanzaCorpus.GROUP_MESSAGE, StanzaCorpus.USYNC, StanzaCorpus.APP_STATE})
+    private String stanza;
+
+    private Node node;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        this.node = StanzaCorpus.stanza(stanza);
+        this.encoded = StanzaCorpus.encoded(stanza);
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        private final Encoder encoder = new Encoder();
+
+        private final Decoder decoder = new Decoder();
+    }
+
+    @Benchmark
+    public byte[] encode(Session session) {
+        return session.encoder.encode(node);
+    }
+
+    @Benchmark
+    public Node decode(Session session) {
+        return session.decoder.decode(encoded);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Node decodeConcurrently(Session session) {
+        return session.decoder.decode(encoded);
+    }
+}
@@ -0,0 +1,53 @@
+package it.auties.whatsapp.binary;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how a websocket message carrying every stanza of {@link StanzaCorpus} is split into frames and decoded.
+ * Frames are plaintext, so the cost of decryption is not included.
+ * {@link MessageWrapperBenchmark#assemble(Blackhole)} feeds the same message to a {@link FrameAssembler} in fragments, like a fragmented websocket message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MessageWrapperBenchmark {
+    private static final int FRAGMENT_SIZE = 4096;
+
+    private final Decoder decoder = new Decoder();
+
+    private final FrameAssembler assembler = new FrameAssembler();
+
+    private ByteBuffer message;
+
+    @Setup
+    public void setup() {
+        this.message = StanzaCorpus.frames();
+    }
+
+    @Benchmark
+    public MessageWrapper split() {
+        return new MessageWrapper(message);
+    }
+
+    @Benchmark
+    public void splitAndDecode(Blackhole blackhole) {
+        for (var frame : new MessageWrapper(message).decoded()) {
+            blackhole.consume(decoder.decode(frame));
+        }
+    }
+
+    @Benchmark
+    public void assemble(Blackhole blackhole) {
+        for (var position = 0; position < message.limit(); position += FRAGMENT_SIZE) {
+            var fragment = message.slice(position, Math.min(FRAGMENT_SIZE, message.limit() - position));
+            assembler.append(fragment, blackhole::consume);
+        }
+    }
+}
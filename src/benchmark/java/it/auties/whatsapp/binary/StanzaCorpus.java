@@ -0,0 +1,185 @@
+package it.auties.whatsapp.binary;
+
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+
+import static it.auties.whatsapp.model.request.Node.*;
+
+/**
+ * A deterministic corpus of synthetic stanzas shaped like the ones Whatsapp sends during a normal session.
+ * Ids, jids and binary payloads are random, but the structure, the attributes and the size of the payloads mirror real traffic, so no account is needed to run the benchmarks.
+ */
+public final class StanzaCorpus {
+    /**
+     * A read receipt for five messages sent in a group
+     */
+    public static final String RECEIPT = "receipt";
+
+    /**
+     * A group message encrypted for 256 participant devices
+     */
+    public static final String GROUP_MESSAGE = "group-message";
+
+    /**
+     * The result of a device usync query for 50 users
+     */
+    public static final String USYNC = "usync";
+
+    /**
+     * The result of an app state sync with 20 patches
+     */
+    public static final String APP_STATE = "app-state";
+
+    private static final int GROUP_PARTICIPANTS = 256;
+
+    private static final int USYNC_USERS = 50;
+
+    private static final int APP_STATE_PATCHES = 20;
+
+    private static final long SEED = 42;
+
+    private final Random random;
+
+    private StanzaCorpus() {
+        this.random = new Random(SEED);
+    }
+
+    /**
+     * Builds a stanza of this corpus
+     *
+     * @param name the name of the stanza
+     * @return a non-null node
+     */
+    public static Node stanza(String name) {
+        var corpus = new StanzaCorpus();
+        return switch (name) {
+            case RECEIPT -> corpus.receipt();
+            case GROUP_MESSAGE -> corpus.groupMessage();
+            case USYNC -> corpus.usync();
+            case APP_STATE -> corpus.appState();
+            default -> throw new IllegalArgumentException("Unknown stanza: %s".formatted(name));
+        };
+    }
+
+    /**
+     * Encodes a stanza of this corpus
+     *
+     * @param name the name of the stanza
+     * @return a non-null array, flag byte included
+     */
+    public static byte[] encoded(String name) {
+        return new Encoder().encode(stanza(name));
+    }
+
+    /**
+     * Builds a websocket message that carries every stanza of this corpus as a plaintext frame
+     *
+     * @return a non-null buffer
+     */
+    public static ByteBuffer frames() {
+        var encoded = new ArrayList<byte[]>();
+        for (var name : new String[]{RECEIPT, GROUP_MESSAGE, USYNC, APP_STATE}) {
+            encoded.add(encoded(name));
+        }
+
+        var length = encoded.stream()
+                .mapToInt(frame -> frame.length + 3)
+                .sum();
+        var result = ByteBuffer.allocate(length);
+        for (var frame : encoded) {
+            result.put((byte) (frame.length >>> 16));
+            result.putShort((short) frame.length);
+            result.put(frame);
+        }
+
+        return result.flip();
+    }
+
+    private Node receipt() {
+        var items = new ArrayList<Node>();
+        for (var index = 0; index < 5; index++) {
+            items.add(withAttributes("item", Map.of("id", messageId())));
+        }
+
+        return withChildren("receipt", Map.of("id", messageId(), "from", groupJid(), "participant", deviceJid(),
+                "type", "read", "t", timestamp()), withChildren("list", items));
+    }
+
+    private Node groupMessage() {
+        var participants = new ArrayList<Node>();
+        for (var index = 0; index < GROUP_PARTICIPANTS; index++) {
+            var enc = with("enc", Map.of("v", "2", "type", index % 8 == 0 ?
+                    "pkmsg" :
+                    "msg"), bytes(180));
+            participants.add(withChildren("to", Map.of("jid", deviceJid()), enc));
+        }
+
+        return withChildren("message", Map.of("id", messageId(), "to", groupJid(), "type", "text"),
+                withChildren("participants", participants), with("device-identity", bytes(140)),
+                with("enc", Map.of("v", "2", "type", "skmsg"), bytes(120)));
+    }
+
+    private Node usync() {
+        var users = new ArrayList<Node>();
+        for (var index = 0; index < USYNC_USERS; index++) {
+            var deviceList = withChildren("device-list", withAttributes("device", Map.of("id", "0")),
+                    withAttributes("device", Map.of("id", String.valueOf(1 + random.nextInt(20)), "key-index",
+                            String.valueOf(1 + random.nextInt(5)))));
+            var keyIndex = with("key-index-list", Map.of("ts", timestamp()), bytes(60));
+            users.add(withChildren("user", Map.of("jid", userJid()), withChildren("devices", deviceList, keyIndex)));
+        }
+
+        var usync = withChildren("usync", Map.of("sid", messageId(), "mode", "query", "last", "true", "index", "0",
+                "context", "message"), withChildren("result", with("devices")), withChildren("list", users));
+        return withChildren("iq", Map.of("from", ContactJid.WHATSAPP, "id", messageId(), "type", "result"), usync);
+    }
+
+    private Node appState() {
+        var patches = new ArrayList<Node>();
+        for (var index = 0; index < APP_STATE_PATCHES; index++) {
+            patches.add(with("patch", bytes(300 + random.nextInt(200))));
+        }
+
+        var collection = withChildren("collection", Map.of("name", "regular_high", "version",
+                String.valueOf(random.nextInt(1000))), withChildren("patches", patches));
+        return withChildren("iq", Map.of("from", ContactJid.WHATSAPP, "id", messageId(), "type", "result"),
+                withChildren("sync", collection));
+    }
+
+    private String messageId() {
+        return "3EB0%016X".formatted(random.nextLong());
+    }
+
+    private String timestamp() {
+        return String.valueOf(1_660_000_000 + random.nextInt(10_000_000));
+    }
+
+    private String phoneNumber() {
+        return "39%010d".formatted(random.nextInt(Integer.MAX_VALUE));
+    }
+
+    private ContactJid userJid() {
+        return ContactJid.of(phoneNumber(), ContactJid.Server.WHATSAPP);
+    }
+
+    private ContactJid deviceJid() {
+        return ContactJid.ofDevice(phoneNumber(), random.nextInt(4) == 0 ?
+                0 :
+                1 + random.nextInt(20));
+    }
+
+    private ContactJid groupJid() {
+        return ContactJid.of("120363%012d".formatted(random.nextLong(1_000_000_000_000L)), ContactJid.Server.GROUP);
+    }
+
+    private byte[] bytes(int length) {
+        var result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+}
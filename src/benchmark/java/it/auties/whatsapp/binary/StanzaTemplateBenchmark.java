@@ -0,0 +1,40 @@
+package it.auties.whatsapp.binary;
+
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how a receipt is encoded through {@link StanzaTemplate#RECEIPT} and through the generic {@link Encoder}.
+ * The generic path includes building the node, like the socket did before templates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class StanzaTemplateBenchmark {
+    private static final String ID = "3EB0C431C26A1916E07E";
+
+    private static final ContactJid GROUP = ContactJid.of("120363041234567890@g.us");
+
+    private static final ContactJid PARTICIPANT = ContactJid.of("393495089819:12@s.whatsapp.net");
+
+    private static final long TIMESTAMP = 1660000000L;
+
+    @Benchmark
+    public byte[] template() {
+        return StanzaTemplate.RECEIPT.encode(ID, null, GROUP, PARTICIPANT, TIMESTAMP);
+    }
+
+    @Benchmark
+    public byte[] generic() {
+        var node = Node.withAttributes("receipt", Map.of("id", ID, "t", TIMESTAMP, "to", GROUP, "participant",
+                PARTICIPANT));
+        return new Encoder().encode(node);
+    }
+}
@@ -0,0 +1,74 @@
+package it.auties.whatsapp.binary;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups that the encoder runs for every string it writes: the token index and the packed string classification.
+ * Inputs mix single byte tokens, double byte tokens, ids, phone numbers and free text in roughly the proportions of outgoing stanzas.
+ * The linear lookup that the encoder used before the token index is kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TokenBenchmark {
+    private static final int INPUTS = 1024;
+
+    private String[] inputs;
+
+    @Setup
+    public void setup() {
+        var random = new Random(42);
+        var inputs = new ArrayList<String>(INPUTS);
+        for (var index = 0; index < INPUTS; index++) {
+            inputs.add(switch (index % 5) {
+                case 0 -> randomEntry(Tokens.SINGLE_BYTE, random);
+                case 1 -> randomEntry(Tokens.DOUBLE_BYTE, random);
+                case 2 -> "3EB0%016X".formatted(random.nextLong());
+                case 3 -> "39%010d".formatted(random.nextInt(Integer.MAX_VALUE));
+                default -> "message %s".formatted(random.nextInt());
+            });
+        }
+
+        this.inputs = inputs.toArray(String[]::new);
+    }
+
+    private String randomEntry(List<String> entries, Random random) {
+        return entries.get(random.nextInt(entries.size()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void findToken(Blackhole blackhole) {
+        for (var input : inputs) {
+            blackhole.consume(TokenIndex.find(input));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void findTokenLinear(Blackhole blackhole) {
+        for (var input : inputs) {
+            var singleByte = Tokens.SINGLE_BYTE.indexOf(input);
+            blackhole.consume(singleByte != -1 ?
+                    singleByte :
+                    Tokens.DOUBLE_BYTE.indexOf(input));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void classifyPacked(Blackhole blackhole) {
+        for (var input : inputs) {
+            blackhole.consume(PackedStrings.classify(input));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.model.signal.keypair.SignalPreKeyPair;
+import it.auties.whatsapp.model.signal.keypair.SignalSignedKeyPair;
+import it.auties.whatsapp.util.StripedLock;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many group messages are encrypted per second for every device of the participants.
+ * Each participant has three devices with an established session.
+ * The sequential benchmarks encrypt the devices on the calling thread, while the parallel ones split them across a pool with a thread per processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class FanOutCipherBenchmark {
+    private static final int DEVICES_PER_PARTICIPANT = 3;
+
+    @Param({"50", "256", "1024"})
+    private int participants;
+
+    private List<ContactJid> devices;
+
+    private byte[] message;
+
+    private ExecutorService pool;
+
+    private FanOutCipher sequential;
+
+    private FanOutCipher parallel;
+
+    @Setup
+    public void setup() {
+        var sender = Keys.random(1, false);
+        var receiver = Keys.random(2, false);
+        var preKey = SignalPreKeyPair.random(1);
+        var signedPreKey = new SignalSignedKeyPair(preKey.id(), preKey.toGenericKeyPair(), null);
+        this.devices = new ArrayList<>();
+        for (var participant = 0; participant < participants; participant++) {
+            for (var device = 0; device < DEVICES_PER_PARTICIPANT; device++) {
+                var jid = ContactJid.of("39%010d:%s@s.whatsapp.net".formatted(participant, device));
+                new SessionBuilder(jid.toSignalAddress(), sender).createOutgoing(receiver.id(),
+                        receiver.identityKeyPair()
+                                .encodedPublicKey(), receiver.signedKeyPair(), signedPreKey);
+                devices.add(jid);
+            }
+        }
+
+        this.message = Bytes.ofRandom(256)
+                .toByteArray();
+        this.pool = Executors.newFixedThreadPool(Runtime.getRuntime()
+                .availableProcessors());
+        var locks = new StripedLock(64);
+        this.sequential = new FanOutCipher(sender, locks, Runnable::run);
+        this.parallel = new FanOutCipher(sender, locks, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Node> encryptSequential() {
+        return sequential.encrypt(devices, message)
+                .join();
+    }
+
+    @Benchmark
+    public List<Node> encryptParallel() {
+        return parallel.encrypt(devices, message)
+                .join();
+    }
+}
@@ -0,0 +1,75 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.model.signal.keypair.SignalPreKeyPair;
+import it.auties.whatsapp.model.signal.keypair.SignalSignedKeyPair;
+import it.auties.whatsapp.model.signal.message.SignalMessage;
+import it.auties.whatsapp.model.signal.message.SignalPreKeyMessage;
+import it.auties.whatsapp.model.signal.session.SessionAddress;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many signal messages are encrypted, and encrypted and then decrypted, per second over an established session.
+ * The session is acknowledged by both sides before the measurement, so every message is a "msg" and not a "pkmsg".
+ * The cost of a decryption is the difference between the two benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class SessionCipherBenchmark {
+    @Param({"64", "4096"})
+    private int size;
+
+    private SessionCipher sender;
+
+    private SessionCipher receiver;
+
+    private byte[] plainText;
+
+    @Setup
+    public void setup() {
+        var senderKeys = Keys.random(1, false);
+        var receiverKeys = Keys.random(2, false);
+        var preKey = SignalPreKeyPair.random(1);
+        receiverKeys.addPreKey(preKey);
+        var senderAddress = new SessionAddress("sender", 0);
+        var receiverAddress = new SessionAddress("receiver", 0);
+        new SessionBuilder(receiverAddress, senderKeys).createOutgoing(receiverKeys.id(),
+                receiverKeys.identityKeyPair()
+                        .encodedPublicKey(), receiverKeys.signedKeyPair(),
+                new SignalSignedKeyPair(preKey.id(), preKey.toGenericKeyPair(), null));
+        this.sender = new SessionCipher(receiverAddress, senderKeys);
+        this.receiver = new SessionCipher(senderAddress, receiverKeys);
+        var preKeyMessage = sender.encrypt(new byte[1])
+                .contentAsBytes()
+                .orElseThrow();
+        receiver.decrypt(SignalPreKeyMessage.ofSerialized(preKeyMessage));
+        var reply = receiver.encrypt(new byte[1])
+                .contentAsBytes()
+                .orElseThrow();
+        sender.decrypt(SignalMessage.ofSerialized(reply));
+        this.plainText = Bytes.ofRandom(size)
+                .toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return sender.encrypt(plainText)
+                .contentAsBytes()
+                .orElseThrow();
+    }
+
+    @Benchmark
+    public byte[] encryptAndDecrypt() {
+        var encrypted = sender.encrypt(plainText)
+                .contentAsBytes()
+                .orElseThrow();
+        return receiver.decrypt(SignalMessage.ofSerialized(encrypted));
+    }
+}
@@ -0,0 +1,71 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many transport frames are encrypted and decrypted per second.
+ * The legacy benchmarks create a new BouncyCastle cipher for every frame, like {@link AesGmc}, while the others reuse a {@link TransportCipher} per direction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TransportCipherBenchmark {
+    @Param({"128", "65536"})
+    private int size;
+
+    private Bytes key;
+
+    private TransportCipher writer;
+
+    private TransportCipher reader;
+
+    private byte[] plainText;
+
+    private byte[] output;
+
+    private byte[] encrypted;
+
+    private long counter;
+
+    @Setup
+    public void setup() {
+        this.key = Bytes.ofRandom(32);
+        this.writer = new TransportCipher(key);
+        this.reader = new TransportCipher(key);
+        this.plainText = Bytes.ofRandom(size)
+                .toByteArray();
+        this.output = new byte[writer.outputSize(size)];
+        this.encrypted = AesGmc.of(key, 0, true)
+                .encrypt(plainText);
+    }
+
+    @Benchmark
+    public byte[] encryptLegacy() {
+        return AesGmc.of(key, counter++, true)
+                .encrypt(plainText);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        writer.encrypt(counter++, plainText, 0, plainText.length, output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] decryptLegacy() {
+        return AesGmc.of(key, 0, false)
+                .encrypt(encrypted);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return reader.decrypt(0, ByteBuffer.wrap(encrypted));
+    }
+}
@@ -0,0 +1,64 @@
+package it.auties.whatsapp.model.request;
+
+import it.auties.whatsapp.binary.Decoder;
+import it.auties.whatsapp.binary.StanzaCorpus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups that the socket handlers run on decoded stanzas.
+ * Both walks mirror the handlers: reading the participants of a group message and the devices of a usync result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class NodeBenchmark {
+    private Node groupMessage;
+
+    private Node usync;
+
+    @Setup
+    public void setup() {
+        var decoder = new Decoder();
+        this.groupMessage = decoder.decode(StanzaCorpus.encoded(StanzaCorpus.GROUP_MESSAGE));
+        this.usync = decoder.decode(StanzaCorpus.encoded(StanzaCorpus.USYNC));
+    }
+
+    @Benchmark
+    public void participants(Blackhole blackhole) {
+        var participants = groupMessage.findNode("participants")
+                .orElseThrow();
+        for (var participant : participants.findNodes("to")) {
+            blackhole.consume(participant.attributes()
+                    .getJid("jid"));
+            blackhole.consume(participant.findNode("enc")
+                    .flatMap(Node::contentAsBuffer));
+        }
+
+        blackhole.consume(groupMessage.findNode("device-identity"));
+        blackhole.consume(groupMessage.hasNode("enc"));
+    }
+
+    @Benchmark
+    public void devices(Blackhole blackhole) {
+        var users = usync.findNode("usync")
+                .flatMap(node -> node.findNode("list"))
+                .orElseThrow();
+        for (var user : users.children()) {
+            blackhole.consume(user.attributes()
+                    .getJid("jid"));
+            var devices = user.findNode("devices")
+                    .flatMap(node -> node.findNode("device-list"))
+                    .orElseThrow();
+            for (var device : devices.findNodes("device")) {
+                blackhole.consume(device.attributes()
+                        .getInt("id"));
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package it.auties.whatsapp.socket;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * A minimal WebSocket server that echoes every binary message that it receives.
+ * Only the parts of RFC 6455 needed to benchmark a client are implemented: no extensions, no TLS and a thread per connection.
+ */
+public final class EchoServer implements Closeable {
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final int CLOSE = 0x8;
+
+    private static final int PING = 0x9;
+
+    private static final int PONG = 0xA;
+
+    private final ServerSocket server;
+
+    private final Thread acceptor;
+
+    private EchoServer() throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "echo-server");
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts a server on a random port of the loopback interface
+     *
+     * @return a non-null server
+     * @throws IOException if the server cannot be bound
+     */
+    public static EchoServer start() throws IOException {
+        var result = new EchoServer();
+        result.acceptor.start();
+        return result;
+    }
+
+    /**
+     * Returns the uri that clients should connect to
+     *
+     * @return a non-null uri
+     */
+    public URI uri() {
+        return URI.create("ws://127.0.0.1:%s/".formatted(server.getLocalPort()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                var client = server.accept();
+                client.setTcpNoDelay(true);
+                var thread = new Thread(() -> serve(client), "echo-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException ignored) {
+                // The server was closed
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (client) {
+            var input = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            var output = new BufferedOutputStream(client.getOutputStream());
+            handshake(input, output);
+            while (true) {
+                var header = input.readUnsignedByte();
+                var opcode = header & 0xF;
+                var payload = readPayload(input);
+                switch (opcode) {
+                    case CLOSE -> {
+                        writeFrame(output, 0x80 | CLOSE, payload);
+                        output.flush();
+                        return;
+                    }
+                    case PING -> writeFrame(output, 0x80 | PONG, payload);
+                    case PONG -> {
+                    }
+                    default -> writeFrame(output, header, payload);
+                }
+
+                if (input.available() == 0) {
+                    output.flush();
+                }
+            }
+        } catch (EOFException ignored) {
+            // The client closed the connection
+        } catch (Exception exception) {
+            if (!server.isClosed()) {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    private void handshake(DataInputStream input, OutputStream output) throws Exception {
+        String key = null;
+        for (var line = readLine(input); !line.isEmpty(); line = readLine(input)) {
+            var separator = line.indexOf(':');
+            if (separator != -1 && line.substring(0, separator)
+                    .equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(separator + 1)
+                        .trim();
+            }
+        }
+
+        if (key == null) {
+            throw new IOException("Missing websocket key");
+        }
+
+        var digest = MessageDigest.getInstance("SHA-1")
+                .digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+        var response = """
+                HTTP/1.1 101 Switching Protocols\r
+                Upgrade: websocket\r
+                Connection: Upgrade\r
+                Sec-WebSocket-Accept: %s\r
+                \r
+                """.formatted(Base64.getEncoder()
+                .encodeToString(digest));
+        output.write(response.getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+    }
+
+    private String readLine(DataInputStream input) throws IOException {
+        var result = new StringBuilder();
+        for (var next = input.read(); next != '\n'; next = input.read()) {
+            if (next == -1) {
+                throw new EOFException();
+            }
+
+            if (next != '\r') {
+                result.append((char) next);
+            }
+        }
+
+        return result.toString();
+    }
+
+    private byte[] readPayload(DataInputStream input) throws IOException {
+        var header = input.readUnsignedByte();
+        var masked = (header & 0x80) != 0;
+        long length = header & 0x7F;
+        if (length == 126) {
+            length = input.readUnsignedShort();
+        } else if (length == 127) {
+            length = input.readLong();
+        }
+
+        var mask = new byte[4];
+        if (masked) {
+            input.readFully(mask);
+        }
+
+        var payload = new byte[Math.toIntExact(length)];
+        input.readFully(payload);
+        if (masked) {
+            for (var index = 0; index < payload.length; index++) {
+                payload[index] ^= mask[index & 3];
+            }
+        }
+
+        return payload;
+    }
+
+    private void writeFrame(OutputStream output, int header, byte[] payload) throws IOException {
+        output.write(header);
+        if (payload.length < 126) {
+            output.write(payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            output.write(126);
+            output.write(payload.length >>> 8);
+            output.write(payload.length);
+        } else {
+            output.write(127);
+            for (var shift = 56; shift >= 0; shift -= 8) {
+                output.write((int) ((long) payload.length >>> shift));
+            }
+        }
+
+        output.write(payload);
+    }
+}
@@ -0,0 +1,106 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.api.TransportType;
+import it.auties.whatsapp.api.WhatsappRuntime;
+import lombok.NonNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the transports against an {@link EchoServer} running on the loopback interface.
+ * Every invocation sends a burst of messages and waits until all of them were echoed back, so the numbers include both the write and the read path.
+ * The server is the same for every transport, so the difference between the results is the cost of the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TransportBenchmark {
+    private static final int BURST = 64;
+
+    @Param({"TYRUS", "JDK"})
+    private TransportType type;
+
+    @Param({"128", "16384"})
+    private int size;
+
+    private EchoServer server;
+
+    private Transport transport;
+
+    private Counter counter;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.server = EchoServer.start();
+        this.counter = new Counter();
+        this.transport = Transport.of(type, WhatsappRuntime.shared());
+        this.payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        transport.connect(server.uri(), counter)
+                .get(10, TimeUnit.SECONDS);
+        counter.opened.get(10, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        transport.close()
+                .get(10, TimeUnit.SECONDS);
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void echo() throws InterruptedException {
+        var target = counter.received() + (long) BURST * size;
+        for (var index = 0; index < BURST; index++) {
+            transport.send(ByteBuffer.wrap(payload));
+        }
+
+        counter.await(target);
+    }
+
+    private static class Counter implements Transport.Listener {
+        private final CompletableFuture<Void> opened = new CompletableFuture<>();
+
+        private long received;
+
+        @Override
+        public void onOpen() {
+            opened.complete(null);
+        }
+
+        @Override
+        public synchronized void onMessage(@NonNull ByteBuffer fragment) {
+            this.received += fragment.remaining();
+            notifyAll();
+        }
+
+        @Override
+        public void onClose() {
+        }
+
+        @Override
+        public void onError(@NonNull Throwable throwable) {
+            throwable.printStackTrace();
+        }
+
+        private synchronized long received() {
+            return received;
+        }
+
+        private synchronized void await(long target) throws InterruptedException {
+            while (received < target) {
+                wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package it.auties.whatsapp.api;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A session managed by a {@link SessionHost}
+ */
+@Accessors(fluent = true)
+public final class HostedSession {
+    /**
+     * The id of the session
+     */
+    @Getter
+    private final int id;
+
+    /**
+     * The state of the session
+     */
+    @Getter
+    @Setter(AccessLevel.PACKAGE)
+    private volatile State state;
+
+    /**
+     * The instance of the session, null if it isn't in memory
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private volatile Whatsapp whatsapp;
+
+    /**
+     * The future that completes when the pending connection of the session is established
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private CompletableFuture<Whatsapp> connection;
+
+    /**
+     * The future that completes when the session was written to disk after its last hibernation
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private CompletableFuture<?> release;
+
+    private volatile long lastActivity;
+
+    HostedSession(int id, @NonNull State state) {
+        this.id = id;
+        this.state = state;
+        this.release = CompletableFuture.completedFuture(null);
+        touch();
+    }
+
+    /**
+     * Returns the instance of this session if it's in memory
+     *
+     * @return a non-null optional
+     */
+    public Optional<Whatsapp> whatsapp() {
+        return Optional.ofNullable(whatsapp);
+    }
+
+    /**
+     * Returns the last time that this session sent or received a message, or was accessed through its host
+     *
+     * @return a non-null instant
+     */
+    public Instant lastActivity() {
+        return Instant.ofEpochMilli(lastActivity);
+    }
+
+    /**
+     * Returns the estimated memory used by this session if it's in memory
+     *
+     * @return a non-null optional
+     */
+    public Optional<SessionFootprint> footprint() {
+        return whatsapp().map(instance -> SessionFootprint.of(instance.store(), instance.keys()));
+    }
+
+    void touch() {
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    long idleMillis(long now) {
+        return now - lastActivity;
+    }
+
+    /**
+     * The states of a hosted session
+     */
+    public enum State {
+        /**
+         * The session is waiting for its turn to connect
+         */
+        QUEUED,
+
+        /**
+         * The session is connecting
+         */
+        CONNECTING,
+
+        /**
+         * The session is connected and in memory
+         */
+        ACTIVE,
+
+        /**
+         * The session was written to disk and released from memory.
+         * It will connect again when it's accessed through its host.
+         */
+        HIBERNATED,
+
+        /**
+         * The session was removed from its host
+         */
+        REMOVED
+    }
+}
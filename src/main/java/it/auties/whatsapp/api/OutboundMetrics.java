@@ -0,0 +1,24 @@
+package it.auties.whatsapp.api;
+
+/**
+ * A snapshot of the outbound queue of a connection
+ *
+ * @param controlDepth     the number of acks, receipts, presences and pings waiting to be written
+ * @param interactiveDepth the number of queries waiting to be written
+ * @param bulkDepth        the number of messages, patches and pre key uploads waiting to be written
+ * @param capacity         the maximum number of frames that the interactive and bulk lanes can hold each
+ * @param writtenFrames    the number of frames written since the socket was created
+ * @param writtenMessages  the number of WebSocket messages written since the socket was created, each one may carry many frames
+ * @param rejectedFrames   the number of frames rejected since the socket was created because their lane was full
+ */
+public record OutboundMetrics(int controlDepth, int interactiveDepth, int bulkDepth, int capacity, long writtenFrames,
+                              long writtenMessages, long rejectedFrames) {
+    /**
+     * Returns the number of frames waiting to be written in every lane
+     *
+     * @return a non-negative int
+     */
+    public int depth() {
+        return controlDepth + interactiveDepth + bulkDepth;
+    }
+}
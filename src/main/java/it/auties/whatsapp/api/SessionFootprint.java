@@ -0,0 +1,69 @@
+package it.auties.whatsapp.api;
+
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.controller.Store;
+import it.auties.whatsapp.model.chat.Chat;
+import lombok.NonNull;
+
+import java.util.Collection;
+
+/**
+ * An estimate of the memory used by a session, computed from the number of entities that its store and its keys hold.
+ * The estimate uses an average size for each kind of entity, so it's meant to compare sessions and to enforce a budget, not to measure the heap exactly.
+ *
+ * @param chats              the number of chats
+ * @param messages           the number of messages in every chat and of status updates
+ * @param contacts           the number of contacts
+ * @param signalSessions     the number of signal sessions
+ * @param senderKeys         the number of sender keys
+ * @param preKeys            the number of pre keys
+ * @param skippedMessageKeys the number of message keys kept by the signal sessions for messages that were skipped
+ */
+public record SessionFootprint(int chats, int messages, int contacts, int signalSessions, int senderKeys,
+                               int preKeys, int skippedMessageKeys) {
+    private static final long BASE_SIZE = 16 * 1024;
+
+    private static final long CHAT_SIZE = 512;
+
+    private static final long MESSAGE_SIZE = 2048;
+
+    private static final long CONTACT_SIZE = 256;
+
+    private static final long SIGNAL_SESSION_SIZE = 1024;
+
+    private static final long SENDER_KEY_SIZE = 512;
+
+    private static final long PRE_KEY_SIZE = 128;
+
+    private static final long SKIPPED_MESSAGE_KEY_SIZE = 64;
+
+    /**
+     * Computes the footprint of a session
+     *
+     * @param store the non-null store of the session
+     * @param keys  the non-null keys of the session
+     * @return a non-null footprint
+     */
+    public static SessionFootprint of(@NonNull Store store, @NonNull Keys keys) {
+        var chats = store.chats();
+        var messages = chats.stream()
+                .map(Chat::messages)
+                .mapToInt(Collection::size)
+                .sum() + store.status()
+                .size();
+        return new SessionFootprint(chats.size(), messages, store.contacts()
+                .size(), keys.sessionsCount(), keys.senderKeysCount(), keys.preKeysCount(),
+                keys.skippedMessageKeysCount());
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the session, including a fixed cost for its socket, its handlers and its keys
+     *
+     * @return a non-negative long
+     */
+    public long estimatedBytes() {
+        return BASE_SIZE + chats * CHAT_SIZE + messages * MESSAGE_SIZE + contacts * CONTACT_SIZE
+                + signalSessions * SIGNAL_SESSION_SIZE + senderKeys * SENDER_KEY_SIZE + preKeys * PRE_KEY_SIZE
+                + skippedMessageKeys * SKIPPED_MESSAGE_KEY_SIZE;
+    }
+}
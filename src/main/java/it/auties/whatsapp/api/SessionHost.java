@@ -0,0 +1,592 @@
+package it.auties.whatsapp.api;
+
+import it.auties.whatsapp.listener.Listener;
+import it.auties.whatsapp.model.info.MessageInfo;
+import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.util.ControllerProviderLoader;
+import it.auties.whatsapp.util.Validate;
+import lombok.Builder;
+import lombok.Builder.Default;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.With;
+import lombok.experimental.Accessors;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Hosts many sessions in the same JVM.
+ * Every session uses the same {@link WhatsappRuntime}, so sockets, listeners and timeouts share a fixed number of threads.
+ * The asynchronous stages of a session run on the executor of their {@link Whatsapp.Options}: by default, if the JVM doesn't support virtual threads, this is a pool of platform threads where every stage that waits for a lock or for a response holds a thread, so its size grows with the number of busy sessions.
+ * Sessions connect one at a time, at a fixed interval and with a limited number of handshakes in flight, so that a restart doesn't open thousands of connections at once.
+ * A session that doesn't send or receive messages for a while is hibernated: its store and its keys are written to disk and it's released from memory.
+ * A hibernated session connects again, loading its data from disk, when it's accessed through {@link SessionHost#connect(int)} or {@link SessionHost#find(int)}.
+ * While a session is hibernated, Whatsapp holds the messages sent to it and delivers them when it connects again.
+ * If a memory budget is configured, the sessions that were idle the longest are hibernated until the estimated memory used by the sessions fits the budget.
+ */
+public final class SessionHost implements AutoCloseable {
+    private final Options options;
+
+    private final ConcurrentHashMap<Integer, HostedSession> sessions;
+
+    private final ConcurrentLinkedQueue<HostedSession> queue;
+
+    private final AtomicInteger handshakes;
+
+    private final List<Listener> listeners;
+
+    private final Listener activityListener;
+
+    private final AtomicBoolean evicting;
+
+    private final ScheduledFuture<?> rampUpTask;
+
+    private final ScheduledFuture<?> evictionTask;
+
+    private volatile boolean closed;
+
+    private volatile Function<Whatsapp, CompletableFuture<Whatsapp>> connector;
+
+    private SessionHost(Options options) {
+        this.options = options.withSessionOptions(options.sessionOptions()
+                .withRuntime(options.runtime())
+                .withLatestVersion());
+        this.sessions = new ConcurrentHashMap<>();
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.handshakes = new AtomicInteger();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.activityListener = new ActivityListener();
+        this.evicting = new AtomicBoolean();
+        this.connector = Whatsapp::connect;
+        var scheduler = options.runtime()
+                .scheduler();
+        var rampUpInterval = options.rampUpInterval()
+                .toNanos();
+        this.rampUpTask = scheduler.scheduleAtFixedRate(this::rampUp, rampUpInterval, rampUpInterval,
+                TimeUnit.NANOSECONDS);
+        var evictionInterval = options.evictionInterval()
+                .toNanos();
+        this.evictionTask = scheduler.scheduleAtFixedRate(() -> executor().execute(this::evict), evictionInterval,
+                evictionInterval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructs a new host with default options
+     *
+     * @return a non-null host
+     */
+    public static SessionHost of() {
+        return of(Options.defaultOptions());
+    }
+
+    /**
+     * Constructs a new host
+     *
+     * @param options the non-null options of the host
+     * @return a non-null host
+     */
+    public static SessionHost of(@NonNull Options options) {
+        Validate.isTrue(!options.rampUpInterval()
+                .isNegative() && !options.rampUpInterval()
+                .isZero(), "The ramp up interval must be positive: %s", options.rampUpInterval());
+        Validate.isTrue(!options.evictionInterval()
+                .isNegative() && !options.evictionInterval()
+                .isZero(), "The eviction interval must be positive: %s", options.evictionInterval());
+        Validate.isTrue(options.maxConcurrentHandshakes() > 0, "The number of concurrent handshakes must be positive: %s",
+                options.maxConcurrentHandshakes());
+        return new SessionHost(options);
+    }
+
+    /**
+     * Registers a listener on every session of this host, including the ones that will connect later
+     *
+     * @param listener the non-null listener
+     * @return the same instance
+     */
+    public SessionHost addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+        sessions.values()
+                .forEach(session -> session.whatsapp()
+                        .ifPresent(whatsapp -> whatsapp.addListener(listener)));
+        return this;
+    }
+
+    /**
+     * Connects a session.
+     * If the session isn't known by this host, it's added to it.
+     * If the session is hibernated, it's queued to connect again.
+     *
+     * @param id the id of the session
+     * @return a future that completes when the session is connected
+     */
+    public CompletableFuture<Whatsapp> connect(int id) {
+        Validate.isTrue(!closed, "Cannot connect session %s: the host is closed", id);
+        var session = sessions.computeIfAbsent(id, key -> new HostedSession(key, HostedSession.State.HIBERNATED));
+        session.touch();
+        synchronized (session) {
+            return switch (session.state()) {
+                case ACTIVE -> completedFuture(session.whatsapp()
+                        .orElseThrow());
+                case QUEUED, CONNECTING -> session.connection();
+                case HIBERNATED -> enqueue(session);
+                case REMOVED -> CompletableFuture.failedFuture(
+                        new IllegalStateException("Cannot connect session %s: it was removed".formatted(id)));
+            };
+        }
+    }
+
+    /**
+     * Connects every session known by the serializers of the sessions of this host
+     *
+     * @return a future that completes when every session is connected
+     */
+    public CompletableFuture<Void> connectAll() {
+        var futures = ControllerProviderLoader.allIds(options.sessionOptions()
+                        .defaultSerialization())
+                .stream()
+                .map(this::connect)
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Returns a connected session.
+     * If the session is hibernated, it's queued to connect again and this method returns an empty optional.
+     *
+     * @param id the id of the session
+     * @return a non-null optional
+     */
+    public Optional<Whatsapp> find(int id) {
+        var session = sessions.get(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+
+        if (session.state() == HostedSession.State.HIBERNATED) {
+            connect(id);
+            return Optional.empty();
+        }
+
+        session.touch();
+        return session.whatsapp();
+    }
+
+    /**
+     * Returns a session of this host
+     *
+     * @param id the id of the session
+     * @return a non-null optional
+     */
+    public Optional<HostedSession> session(int id) {
+        return Optional.ofNullable(sessions.get(id));
+    }
+
+    /**
+     * Returns the sessions of this host
+     *
+     * @return a non-null unmodifiable collection
+     */
+    public Collection<HostedSession> sessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Hibernates a session: its store and its keys are written to disk and it's released from memory.
+     * Only connected sessions can be hibernated: a queued session is removed from the queue instead, while a session that is connecting is rejected, as its connection can't be stopped halfway.
+     *
+     * @param id the id of the session
+     * @return a future that completes when the session was written to disk, or that fails if the session is connecting
+     */
+    public CompletableFuture<Void> hibernate(int id) {
+        var session = sessions.get(id);
+        if (session == null) {
+            return completedFuture(null);
+        }
+
+        synchronized (session) {
+            if (session.state() == HostedSession.State.CONNECTING) {
+                return CompletableFuture.failedFuture(
+                        new IllegalStateException("Cannot hibernate session %s: it's connecting".formatted(id)));
+            }
+
+            return hibernate(session, HostedSession.State.HIBERNATED);
+        }
+    }
+
+    /**
+     * Removes a session from this host, disconnecting it if it's connected.
+     * The data of the session isn't deleted.
+     *
+     * @param id the id of the session
+     * @return a future that completes when the session was written to disk
+     */
+    public CompletableFuture<Void> remove(int id) {
+        var session = sessions.remove(id);
+        if (session == null) {
+            return completedFuture(null);
+        }
+
+        queue.remove(session);
+        return hibernate(session, HostedSession.State.REMOVED);
+    }
+
+    /**
+     * Returns a snapshot of the sessions of this host.
+     * The estimated memory is computed on every call by walking the data of every session in memory.
+     *
+     * @return a non-null snapshot
+     */
+    public SessionHostMetrics metrics() {
+        var states = new int[HostedSession.State.values().length];
+        var estimatedBytes = 0L;
+        var outboundDepth = 0L;
+        for (var session : sessions.values()) {
+            states[session.state()
+                    .ordinal()]++;
+            var whatsapp = session.whatsapp();
+            if (whatsapp.isEmpty()) {
+                continue;
+            }
+
+            estimatedBytes += session.footprint()
+                    .map(SessionFootprint::estimatedBytes)
+                    .orElse(0L);
+            outboundDepth += whatsapp.get()
+                    .outboundMetrics()
+                    .depth();
+        }
+
+        return new SessionHostMetrics(sessions.size(), states[HostedSession.State.QUEUED.ordinal()],
+                states[HostedSession.State.CONNECTING.ordinal()], states[HostedSession.State.ACTIVE.ordinal()],
+                states[HostedSession.State.HIBERNATED.ordinal()], estimatedBytes, outboundDepth);
+    }
+
+    /**
+     * Closes this host: every connected session is hibernated and the sessions waiting to connect are cancelled.
+     * The runtime of the host isn't closed.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        rampUpTask.cancel(false);
+        evictionTask.cancel(false);
+        for (var session = queue.poll(); session != null; session = queue.poll()) {
+            synchronized (session) {
+                session.state(HostedSession.State.HIBERNATED);
+                session.connection()
+                        .cancel(false);
+            }
+        }
+
+        var futures = sessions.values()
+                .stream()
+                .map(session -> hibernate(session, HostedSession.State.HIBERNATED))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures)
+                .join();
+    }
+
+    /**
+     * Replaces how the sessions of this host are connected, so that tests don't need a server
+     *
+     * @param connector the non-null function that connects a session
+     * @return the same instance
+     */
+    SessionHost connector(@NonNull Function<Whatsapp, CompletableFuture<Whatsapp>> connector) {
+        this.connector = connector;
+        return this;
+    }
+
+    private Executor executor() {
+        return options.sessionOptions()
+                .executor();
+    }
+
+    private CompletableFuture<Whatsapp> enqueue(HostedSession session) {
+        session.state(HostedSession.State.QUEUED);
+        session.connection(new CompletableFuture<>());
+        queue.add(session);
+        return session.connection();
+    }
+
+    private void rampUp() {
+        if (handshakes.get() >= options.maxConcurrentHandshakes()) {
+            return;
+        }
+
+        for (var session = queue.poll(); session != null; session = queue.poll()) {
+            synchronized (session) {
+                if (session.state() != HostedSession.State.QUEUED) {
+                    continue;
+                }
+
+                session.state(HostedSession.State.CONNECTING);
+            }
+
+            startConnection(session);
+            return;
+        }
+    }
+
+    private void startConnection(HostedSession session) {
+        handshakes.incrementAndGet();
+        var released = new AtomicBoolean();
+        Runnable releaseHandshake = () -> {
+            if (released.compareAndSet(false, true)) {
+                handshakes.decrementAndGet();
+            }
+        };
+        var timeout = options.runtime()
+                .scheduler()
+                .schedule(releaseHandshake, options.handshakeTimeout()
+                        .toNanos(), TimeUnit.NANOSECONDS);
+        session.release()
+                .handleAsync((ignored, throwable) -> load(session), executor())
+                .thenCompose(connector)
+                .whenCompleteAsync((whatsapp, throwable) -> {
+                    timeout.cancel(false);
+                    releaseHandshake.run();
+                    onConnected(session, throwable);
+                }, executor());
+    }
+
+    private Whatsapp load(HostedSession session) {
+        var whatsapp = Whatsapp.newConnection(options.sessionOptions()
+                .withId(session.id())
+                .withRuntime(options.runtime()));
+        whatsapp.addListener(activityListener);
+        listeners.forEach(whatsapp::addListener);
+        session.whatsapp(whatsapp);
+        return whatsapp;
+    }
+
+    private void onConnected(HostedSession session, Throwable throwable) {
+        var cancelled = false;
+        synchronized (session) {
+            if (throwable != null) {
+                session.whatsapp(null);
+                if (session.state() != HostedSession.State.REMOVED) {
+                    session.state(HostedSession.State.HIBERNATED);
+                }
+
+                session.connection()
+                        .completeExceptionally(throwable);
+                return;
+            }
+
+            if (session.state() == HostedSession.State.CONNECTING) {
+                session.state(HostedSession.State.ACTIVE);
+                session.touch();
+            } else {
+                cancelled = true;
+            }
+        }
+
+        if (cancelled || closed) {
+            hibernate(session, session.state() == HostedSession.State.REMOVED ?
+                    HostedSession.State.REMOVED :
+                    HostedSession.State.HIBERNATED);
+            session.connection()
+                    .cancel(false);
+            return;
+        }
+
+        session.connection()
+                .complete(session.whatsapp()
+                        .orElseThrow());
+    }
+
+    private CompletableFuture<Void> hibernate(HostedSession session, HostedSession.State next) {
+        Whatsapp whatsapp;
+        synchronized (session) {
+            var previous = session.state();
+            session.state(next);
+            whatsapp = session.whatsapp()
+                    .orElse(null);
+            if (previous == HostedSession.State.QUEUED) {
+                session.connection()
+                        .cancel(false);
+            }
+
+            if (previous == HostedSession.State.CONNECTING || whatsapp == null) {
+                return completedFuture(null);
+            }
+
+            session.whatsapp(null);
+            session.release(whatsapp.disconnect());
+        }
+
+        return session.release()
+                .thenRun(() -> {
+                });
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            var now = System.currentTimeMillis();
+            var idleTimeout = options.idleTimeout()
+                    .toMillis();
+            var active = sessions.values()
+                    .stream()
+                    .filter(session -> session.state() == HostedSession.State.ACTIVE)
+                    .sorted(Comparator.comparingLong(session -> -session.idleMillis(now)))
+                    .toList();
+            var resident = new ArrayDeque<HostedSession>();
+            for (var session : active) {
+                if (idleTimeout > 0 && session.idleMillis(now) >= idleTimeout) {
+                    hibernate(session, HostedSession.State.HIBERNATED);
+                    continue;
+                }
+
+                resident.add(session);
+            }
+
+            if (options.memoryBudget() <= 0) {
+                return;
+            }
+
+            var estimatedBytes = resident.stream()
+                    .mapToLong(session -> session.footprint()
+                            .map(SessionFootprint::estimatedBytes)
+                            .orElse(0L))
+                    .sum();
+            while (estimatedBytes > options.memoryBudget() && !resident.isEmpty()) {
+                var session = resident.poll();
+                estimatedBytes -= session.footprint()
+                        .map(SessionFootprint::estimatedBytes)
+                        .orElse(0L);
+                hibernate(session, HostedSession.State.HIBERNATED);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static boolean isActivity(Node node) {
+        return switch (node.description()) {
+            case "ack" -> false;
+            case "iq" -> !Objects.equals(node.attributes()
+                    .getString("xmlns", null), "w:p");
+            default -> true;
+        };
+    }
+
+    private void touch(Whatsapp whatsapp) {
+        var session = sessions.get(whatsapp.store()
+                .id());
+        if (session != null) {
+            session.touch();
+        }
+    }
+
+    private final class ActivityListener implements Listener {
+        @Override
+        public void onNewMessage(Whatsapp whatsapp, MessageInfo info) {
+            touch(whatsapp);
+        }
+
+        @Override
+        public void onNodeSent(Whatsapp whatsapp, Node outgoing) {
+            if (isActivity(outgoing)) {
+                touch(whatsapp);
+            }
+        }
+    }
+
+    /**
+     * A configuration class used to specify the behaviour of {@link SessionHost}
+     */
+    @Builder(builderMethodName = "newOptions")
+    @With
+    @Data
+    @Accessors(fluent = true)
+    public static class Options {
+        /**
+         * The options used to create every session.
+         * The id and the runtime of these options are replaced by the id of each session and by the runtime of the host.
+         * By default, {@link Whatsapp.Options#defaultOptions()}.
+         */
+        @Default
+        @NonNull
+        private final Whatsapp.Options sessionOptions = Whatsapp.Options.defaultOptions();
+
+        /**
+         * The resources shared by the sessions of the host.
+         * By default, the runtime shared by every session of the JVM.
+         */
+        @Default
+        @NonNull
+        private final WhatsappRuntime runtime = WhatsappRuntime.shared();
+
+        /**
+         * The interval between two connections.
+         * By default, 50 milliseconds.
+         */
+        @Default
+        @NonNull
+        private final Duration rampUpInterval = Duration.ofMillis(50);
+
+        /**
+         * The maximum number of sessions that can be connecting at the same time.
+         * By default, 16.
+         */
+        @Default
+        private final int maxConcurrentHandshakes = 16;
+
+        /**
+         * How long a connection counts towards {@link Options#maxConcurrentHandshakes()}.
+         * A session that is waiting for its qr code to be scanned doesn't block the other sessions after this time.
+         * By default, one minute.
+         */
+        @Default
+        @NonNull
+        private final Duration handshakeTimeout = Duration.ofMinutes(1);
+
+        /**
+         * How long a session can go without sending or receiving a message before being hibernated.
+         * Pings and acks don't count as activity.
+         * Set it to zero to never hibernate idle sessions.
+         * By default, thirty minutes.
+         */
+        @Default
+        @NonNull
+        private final Duration idleTimeout = Duration.ofMinutes(30);
+
+        /**
+         * The maximum estimated memory, in bytes, that the sessions in memory can use, as computed by {@link SessionFootprint}.
+         * When the budget is exceeded, the sessions that were idle the longest are hibernated.
+         * Set it to zero to never hibernate sessions because of their memory.
+         * By default, zero.
+         */
+        @Default
+        private final long memoryBudget = 0;
+
+        /**
+         * How often idle sessions and the memory budget are checked.
+         * By default, thirty seconds.
+         */
+        @Default
+        @NonNull
+        private final Duration evictionInterval = Duration.ofSeconds(30);
+
+        /**
+         * Constructs a new instance of the options with default values
+         *
+         * @return a non-null options configuration
+         */
+        public static Options defaultOptions() {
+            return newOptions().build();
+        }
+    }
+}
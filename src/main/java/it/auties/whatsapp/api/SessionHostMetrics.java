@@ -0,0 +1,16 @@
+package it.auties.whatsapp.api;
+
+/**
+ * A snapshot of the sessions managed by a {@link SessionHost}
+ *
+ * @param sessions       the number of sessions
+ * @param queued         the number of sessions waiting for their turn to connect
+ * @param connecting     the number of sessions that are connecting
+ * @param active         the number of sessions that are connected and in memory
+ * @param hibernated     the number of sessions that were written to disk and released from memory
+ * @param estimatedBytes the estimated memory used by the sessions in memory
+ * @param outboundDepth  the number of frames waiting to be written by every session
+ */
+public record SessionHostMetrics(int sessions, int queued, int connecting, int active, int hibernated,
+                                 long estimatedBytes, long outboundDepth) {
+}
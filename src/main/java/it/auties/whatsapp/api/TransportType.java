@@ -0,0 +1,18 @@
+package it.auties.whatsapp.api;
+
+/**
+ * The constants of this enumerated type describe the various implementations of the WebSocket used to connect to Whatsapp
+ */
+public enum TransportType {
+    /**
+     * The Jakarta WebSocket client implemented by Tyrus.
+     * This is the default transport.
+     */
+    TYRUS,
+
+    /**
+     * The WebSocket client shipped with the JDK in {@link java.net.http}.
+     * All the sessions that use this transport share the same client and its selector thread.
+     */
+    JDK
+}
@@ -2,6 +2,7 @@ package it.auties.whatsapp.api;
 
 import it.auties.linkpreview.LinkPreview;
 import it.auties.linkpreview.LinkPreviewResult;
+import it.auties.whatsapp.binary.StanzaTemplate;
 import it.auties.whatsapp.controller.Keys;
 import it.auties.whatsapp.controller.Store;
 import it.auties.whatsapp.listener.*;
@@ -26,11 +27,13 @@ import it.auties.whatsapp.model.request.Node;
 import it.auties.whatsapp.model.response.ContactStatusResponse;
 import it.auties.whatsapp.model.response.HasWhatsappResponse;
 import it.auties.whatsapp.model.signal.auth.Version;
+import it.auties.whatsapp.model.signal.session.SkippedMessageKeys;
 import it.auties.whatsapp.model.sync.ActionMessageRangeSync;
 import it.auties.whatsapp.model.sync.ActionValueSync;
 import it.auties.whatsapp.model.sync.DeviceListMetadata;
 import it.auties.whatsapp.model.sync.PatchRequest;
 import it.auties.whatsapp.socket.Socket;
+import it.auties.whatsapp.socket.WritePriority;
 import it.auties.whatsapp.util.*;
 import lombok.Builder;
 import lombok.Builder.Default;
@@ -41,10 +44,12 @@ import lombok.experimental.Accessors;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
 import static it.auties.bytes.Bytes.ofRandom;
@@ -205,7 +210,8 @@ public class Whatsapp {
     }
 
     /**
-     * Returns a stream of all known connections
+     * Returns a stream of all known connections.
+     * The connections are created one by one and aren't connected: to connect many sessions, use {@link SessionHost}.
      *
      * @param options the non-null options
      * @return a non-null Stream
@@ -275,6 +281,27 @@ public class Whatsapp {
         return socket.keys();
     }
 
+    /**
+     * Returns a snapshot of the requests waiting to be written to Whatsapp
+     *
+     * @return a non-null snapshot
+     */
+    public OutboundMetrics outboundMetrics() {
+        return socket.writer()
+                .metrics();
+    }
+
+    /**
+     * Returns a future that completes when there is room for more messages in the outbound queue.
+     * Applications that send many messages at once should wait for this future to avoid failures when the queue is full.
+     *
+     * @return a non-null CompletableFuture
+     */
+    public CompletableFuture<Void> awaitWritable() {
+        return socket.writer()
+                .whenWritable(WritePriority.BULK);
+    }
+
     /**
      * Registers a listener
      *
@@ -737,7 +764,7 @@ public class Whatsapp {
      */
     public CompletableFuture<Whatsapp> connect() {
         return socket.connect()
-                .thenApplyAsync(ignored -> this);
+                .thenApplyAsync(ignored -> this, socket.executor());
     }
 
     /**
@@ -747,7 +774,7 @@ public class Whatsapp {
      */
     public CompletableFuture<Whatsapp> disconnect() {
         return socket.disconnect(false)
-                .thenApplyAsync(ignored -> this);
+                .thenApplyAsync(ignored -> this, socket.executor());
     }
 
     /**
@@ -768,7 +795,7 @@ public class Whatsapp {
      */
     public CompletableFuture<Whatsapp> reconnect() {
         return socket.disconnect(true)
-                .thenApplyAsync(ignored -> this);
+                .thenApplyAsync(ignored -> this, socket.executor());
     }
 
     /**
@@ -782,12 +809,12 @@ public class Whatsapp {
             var metadata = of("jid", keys().companion(), "reason", "user_initiated");
             var device = withAttributes("remove-companion-device", metadata);
             return socket.sendQuery("set", "md", device)
-                    .thenRunAsync(socket::changeKeys)
-                    .thenApplyAsync(ignored -> this);
+                    .thenRunAsync(socket::changeKeys, socket.executor())
+                    .thenApplyAsync(ignored -> this, socket.executor());
         }
 
-        return disconnect().thenRunAsync(socket::changeKeys)
-                .thenApplyAsync(ignored -> this);
+        return disconnect().thenRunAsync(socket::changeKeys, socket.executor())
+                .thenApplyAsync(ignored -> this, socket.executor());
     }
 
     /**
@@ -798,9 +825,8 @@ public class Whatsapp {
      * @return a CompletableFuture
      */
     public <T extends ContactJidProvider> CompletableFuture<T> subscribeToPresence(@NonNull T jid) {
-        var node = withAttributes("presence", of("to", jid.toJid(), "type", "subscribe"));
-        return socket.sendWithNoResponse(node)
-                .thenApplyAsync(ignored -> jid);
+        return socket.sendWithNoResponse(StanzaTemplate.PRESENCE, null, "subscribe", jid.toJid())
+                .thenApplyAsync(ignored -> jid, socket.executor());
     }
 
     /**
@@ -952,7 +978,7 @@ public class Whatsapp {
         parseEphemeralMessage(info);
         fixButtons(info);
         return socket.sendMessage(info)
-                .thenApplyAsync(ignored -> info);
+                .thenApplyAsync(ignored -> info, socket.executor());
     }
 
     // Credit to Baileys
@@ -1089,7 +1115,7 @@ public class Whatsapp {
         return socket.sendInteractiveQuery(with("contact"), withChildren("user", contactNodes))
                 .thenApplyAsync(nodes -> nodes.stream()
                         .map(HasWhatsappResponse::new)
-                        .toList());
+                        .toList(), socket.executor());
     }
 
     /**
@@ -1099,7 +1125,7 @@ public class Whatsapp {
      */
     public CompletableFuture<List<ContactJid>> queryBlockList() {
         return socket.sendQuery("get", "blocklist", (Node) null)
-                .thenApplyAsync(this::parseBlockList);
+                .thenApplyAsync(this::parseBlockList, socket.executor());
     }
 
     private List<ContactJid> parseBlockList(Node result) {
@@ -1123,7 +1149,7 @@ public class Whatsapp {
         var query = with("status");
         var body = withAttributes("user", of("jid", chat.toJid()));
         return socket.sendInteractiveQuery(query, body)
-                .thenApplyAsync(Whatsapp::parseStatus);
+                .thenApplyAsync(Whatsapp::parseStatus, socket.executor());
     }
 
     /**
@@ -1135,7 +1161,7 @@ public class Whatsapp {
     public CompletableFuture<Optional<URI>> queryPicture(@NonNull ContactJidProvider chat) {
         var body = withAttributes("picture", of("query", "url"));
         return socket.sendQuery("get", "w:profile:picture", of("target", chat.toJid()), body)
-                .thenApplyAsync(this::parseChatPicture);
+                .thenApplyAsync(this::parseChatPicture, socket.executor());
     }
 
     private Optional<URI> parseChatPicture(Node result) {
@@ -1164,7 +1190,7 @@ public class Whatsapp {
     public CompletableFuture<Optional<BusinessProfile>> queryBusinessProfile(@NonNull ContactJidProvider contact) {
         return socket.sendQuery("get", "w:biz",
                         withChildren("business_profile", of("v", "116"), withAttributes("profile", of("jid", contact.toJid()))))
-                .thenApplyAsync(this::getBusinessProfile);
+                .thenApplyAsync(this::getBusinessProfile, socket.executor());
     }
 
     private Optional<BusinessProfile> getBusinessProfile(Node result) {
@@ -1182,7 +1208,7 @@ public class Whatsapp {
         return socket.sendQuery("get", "fb:thrift_iq",
                         with("request", of("op", "profile_typeahead", "type", "catkit", "v", "1"),
                                 withChildren("query", List.of())))
-                .thenApplyAsync(Whatsapp::parseBusinessCategories);
+                .thenApplyAsync(Whatsapp::parseBusinessCategories, socket.executor());
     }
 
     /**
@@ -1193,7 +1219,7 @@ public class Whatsapp {
      */
     public CompletableFuture<String> queryGroupInviteCode(@NonNull ContactJidProvider chat) {
         return socket.sendQuery(chat.toJid(), "get", "w:g2", with("invite"))
-                .thenApplyAsync(Whatsapp::parseInviteCode);
+                .thenApplyAsync(Whatsapp::parseInviteCode, socket.executor());
     }
 
     /**
@@ -1204,7 +1230,7 @@ public class Whatsapp {
      */
     public <T extends ContactJidProvider> CompletableFuture<T> revokeGroupInvite(@NonNull T chat) {
         return socket.sendQuery(chat.toJid(), "set", "w:g2", with("invite"))
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1216,7 +1242,7 @@ public class Whatsapp {
     public CompletableFuture<Optional<Chat>> acceptGroupInvite(@NonNull String inviteCode) {
         return socket.sendQuery(ContactJid.GROUP, "set", "w:g2", withAttributes("invite",
                         of("code", inviteCode)))
-                .thenApplyAsync(this::parseAcceptInvite);
+                .thenApplyAsync(this::parseAcceptInvite, socket.executor());
     }
 
     private Optional<Chat> parseAcceptInvite(Node result) {
@@ -1237,9 +1263,8 @@ public class Whatsapp {
         var presence = available ?
                 ContactStatus.AVAILABLE :
                 ContactStatus.UNAVAILABLE;
-        var node = withAttributes("presence", of("type", presence.data()));
-        return socket.sendWithNoResponse(node)
-                .thenApplyAsync(ignored -> available);
+        return socket.sendWithNoResponse(StanzaTemplate.PRESENCE, null, presence.data(), null)
+                .thenApplyAsync(ignored -> available, socket.executor());
     }
 
     /**
@@ -1251,9 +1276,8 @@ public class Whatsapp {
      */
     public <T extends ContactJidProvider> CompletableFuture<T> changePresence(@NonNull T chat,
                                                                               @NonNull ContactStatus presence) {
-        var node = withAttributes("presence", of("to", chat.toJid(), "type", presence.data()));
-        return socket.sendWithNoResponse(node)
-                .thenApplyAsync(ignored -> chat);
+        return socket.sendWithNoResponse(StanzaTemplate.PRESENCE, null, presence.data(), chat.toJid())
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1313,7 +1337,7 @@ public class Whatsapp {
                 .map(innerBody -> withChildren(action.data(), innerBody))
                 .toArray(Node[]::new);
         return socket.sendQuery(group.toJid(), "set", "w:g2", body)
-                .thenApplyAsync(result -> parseGroupActionResponse(result, action));
+                .thenApplyAsync(result -> parseGroupActionResponse(result, action), socket.executor());
     }
 
     private List<ContactJid> parseGroupActionResponse(Node result, GroupAction action) {
@@ -1347,7 +1371,7 @@ public class Whatsapp {
                                                                                   @NonNull String newName) {
         var body = with("subject", newName.getBytes(StandardCharsets.UTF_8));
         return socket.sendQuery(group.toJid(), "set", "w:g2", body)
-                .thenApplyAsync(ignored -> group);
+                .thenApplyAsync(ignored -> group, socket.executor());
     }
 
     /**
@@ -1360,9 +1384,10 @@ public class Whatsapp {
     public <T extends ContactJidProvider> CompletableFuture<T> changeGroupDescription(@NonNull T group,
                                                                                       String description) {
         return socket.queryGroupMetadata(group.toJid())
-                .thenApplyAsync(GroupMetadata::descriptionId)
-                .thenComposeAsync(descriptionId -> changeGroupDescription(group, description, descriptionId))
-                .thenApplyAsync(ignored -> group);
+                .thenApplyAsync(GroupMetadata::descriptionId, socket.executor())
+                .thenComposeAsync(descriptionId -> changeGroupDescription(group, description, descriptionId),
+                        socket.executor())
+                .thenApplyAsync(ignored -> group, socket.executor());
     }
 
     private CompletableFuture<Node> changeGroupDescription(ContactJidProvider group, String description,
@@ -1392,7 +1417,7 @@ public class Whatsapp {
                 "not_announcement" :
                 "announcement");
         return socket.sendQuery(group.toJid(), "set", "w:g2", body)
-                .thenApplyAsync(ignored -> group);
+                .thenApplyAsync(ignored -> group, socket.executor());
     }
 
     /**
@@ -1408,7 +1433,7 @@ public class Whatsapp {
                 "locked" :
                 "unlocked");
         return socket.sendQuery(group.toJid(), "set", "w:g2", body)
-                .thenApplyAsync(ignored -> group);
+                .thenApplyAsync(ignored -> group, socket.executor());
     }
 
     /**
@@ -1435,7 +1460,7 @@ public class Whatsapp {
         var body = with("picture", of("type", "image"), profilePic);
         return socket.sendQuery(group.toJid()
                         .toUserJid(), "set", "w:profile:picture", body)
-                .thenApplyAsync(ignored -> group);
+                .thenApplyAsync(ignored -> group, socket.executor());
     }
 
     /**
@@ -1456,8 +1481,9 @@ public class Whatsapp {
                 .thenApplyAsync(response -> Optional.ofNullable(response)
                         .flatMap(node -> node.findNode("group"))
                         .orElseThrow(() -> new NoSuchElementException(
-                                "Missing group response, something went wrong: %s".formatted(findErrorNode(response)))))
-                .thenApplyAsync(GroupMetadata::of);
+                                "Missing group response, something went wrong: %s".formatted(findErrorNode(response)))),
+                                        socket.executor())
+                .thenApplyAsync(GroupMetadata::of, socket.executor());
     }
 
     /**
@@ -1469,7 +1495,7 @@ public class Whatsapp {
     public <T extends ContactJidProvider> CompletableFuture<T> leaveGroup(@NonNull T group) {
         var body = withChildren("leave", withAttributes("group", of("id", group.toJid())));
         return socket.sendQuery(ContactJid.GROUP, "set", "w:g2", body)
-                .thenApplyAsync(ignored -> group);
+                .thenApplyAsync(ignored -> group, socket.executor());
     }
 
     /**
@@ -1497,7 +1523,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_HIGH, syncAction, SET, 2, chat.toJid()
                 .toString());
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1512,7 +1538,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_HIGH, syncAction, SET, 2, chat.toJid()
                 .toString());
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1524,7 +1550,7 @@ public class Whatsapp {
     public <T extends ContactJidProvider> CompletableFuture<T> block(@NonNull T chat) {
         var body = withAttributes("item", of("action", "block", "jid", chat.toJid()));
         return socket.sendQuery("set", "blocklist", body)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1536,7 +1562,7 @@ public class Whatsapp {
     public <T extends ContactJidProvider> CompletableFuture<T> unblock(@NonNull T chat) {
         var body = withAttributes("item", of("action", "unblock", "jid", chat.toJid()));
         return socket.sendQuery("set", "blocklist", body)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1555,7 +1581,7 @@ public class Whatsapp {
                         .ephemeralExpiration(timer.period()
                                 .toSeconds())
                         .build();
-                yield sendMessage(chat, message).thenApplyAsync(ignored -> chat);
+                yield sendMessage(chat, message).thenApplyAsync(ignored -> chat, socket.executor());
             }
 
             case GROUP -> {
@@ -1564,7 +1590,7 @@ public class Whatsapp {
                         withAttributes("ephemeral", of("expiration", timer.period()
                                 .toSeconds()));
                 yield socket.sendQuery(chat.toJid(), "set", "w:g2", body)
-                        .thenApplyAsync(ignored -> chat);
+                        .thenApplyAsync(ignored -> chat, socket.executor());
             }
 
             default -> throw new IllegalArgumentException(
@@ -1600,7 +1626,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_LOW, syncAction, SET, 3, chat.toJid()
                 .toString());
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1631,7 +1657,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_LOW, syncAction, SET, 5, chat.toJid()
                 .toString());
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1660,7 +1686,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_HIGH, syncAction, SET, 3, info.chatJid()
                 .toString(), info.id(), fromMeToFlag(info), participantToFlag(info));
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> info);
+                .thenApplyAsync(ignored -> info, socket.executor());
     }
 
     /**
@@ -1691,7 +1717,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_LOW, syncAction, SET, 3, chat.toJid()
                 .toString());
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1716,7 +1742,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_HIGH, syncAction, SET, 3, info.chatJid()
                 .toString(), info.id(), fromMeToFlag(info), participantToFlag(info));
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> info);
+                .thenApplyAsync(ignored -> info, socket.executor());
     }
 
     /**
@@ -1733,7 +1759,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_HIGH, syncAction, SET, 6, chat.toJid()
                 .toString(), "1");
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1752,7 +1778,7 @@ public class Whatsapp {
         var request = PatchRequest.of(REGULAR_HIGH, syncAction, SET, 6, chat.toJid()
                 .toString(), booleanToInt(keepStarredMessages), "0");
         return socket.pushPatch(request)
-                .thenApplyAsync(ignored -> chat);
+                .thenApplyAsync(ignored -> chat, socket.executor());
     }
 
     /**
@@ -1795,7 +1821,7 @@ public class Whatsapp {
     public CompletableFuture<List<BusinessCategory>> changeBusinessCategories(List<BusinessCategory> categories) {
         return socket.sendQuery("set", "w:biz", withChildren("business_profile", of("v", "3", "mutation_type", "delta"),
                         withChildren("categories", createCategories(categories))))
-                .thenApplyAsync(ignored -> categories);
+                .thenApplyAsync(ignored -> categories, socket.executor());
     }
 
     private Collection<Node> createCategories(List<BusinessCategory> categories) {
@@ -1817,7 +1843,7 @@ public class Whatsapp {
     public CompletableFuture<List<URI>> changeBusinessWebsites(List<URI> websites) {
         return socket.sendQuery("set", "w:biz",
                         withChildren("business_profile", of("v", "3", "mutation_type", "delta"), createWebsites(websites)))
-                .thenApplyAsync(ignored -> websites);
+                .thenApplyAsync(ignored -> websites, socket.executor());
     }
 
     /**
@@ -1865,7 +1891,7 @@ public class Whatsapp {
                                                 .getBytes(StandardCharsets.UTF_8)),
                                 with("width", "100".getBytes(StandardCharsets.UTF_8)),
                                 with("height", "100".getBytes(StandardCharsets.UTF_8))))
-                .thenApplyAsync(this::parseCatalog);
+                .thenApplyAsync(this::parseCatalog, socket.executor());
     }
 
     private List<BusinessCatalogEntry> parseCatalog(Node result) {
@@ -1923,7 +1949,7 @@ public class Whatsapp {
                                                 .getBytes(StandardCharsets.UTF_8)), with("item_limit", String.valueOf(collectionsLimit)
                                         .getBytes(StandardCharsets.UTF_8)), with("width", "100".getBytes(StandardCharsets.UTF_8)),
                                 with("height", "100".getBytes(StandardCharsets.UTF_8))))
-                .thenApplyAsync(this::parseCollections);
+                .thenApplyAsync(this::parseCollections, socket.executor());
     }
 
     private List<BusinessCollectionEntry> parseCollections(Node result) {
@@ -1939,8 +1965,8 @@ public class Whatsapp {
     private CompletableFuture<String> changeBusinessAttribute(String key, String value) {
         return socket.sendQuery("set", "w:biz", withChildren("business_profile", of("v", "3", "mutation_type", "delta"),
                         with(key, requireNonNullElse(value, "").getBytes(StandardCharsets.UTF_8))))
-                .thenAcceptAsync(result -> checkBusinessAttributeConflict(key, value, result))
-                .thenApplyAsync(ignored -> value);
+                .thenAcceptAsync(result -> checkBusinessAttributeConflict(key, value, result), socket.executor())
+                .thenApplyAsync(ignored -> value, socket.executor());
     }
 
     private void checkBusinessAttributeConflict(String key, String value, Node result) {
@@ -2040,9 +2066,9 @@ public class Whatsapp {
         /**
          * The version of WhatsappWeb to use.
          * If the version is too outdated, the server will refuse to connect.
+         * By default, the latest version, fetched using the http client of {@link Options#runtime()} when the session is created.
          */
-        @Default
-        private final Version version = Version.latest(WHATSAPP_VERSION);
+        private final Version version;
 
         /**
          * The url of the socket
@@ -2051,6 +2077,103 @@ public class Whatsapp {
         @NonNull
         private final String url = "wss://web.whatsapp.com/ws/chat";
 
+        /**
+         * The implementation of the WebSocket used to connect to Whatsapp.
+         * By default, Tyrus.
+         */
+        @Default
+        @NonNull
+        private final TransportType transport = TransportType.TYRUS;
+
+        /**
+         * The maximum number of bytes that can be coalesced into a single WebSocket message.
+         * Frames that are ready while a message is being written are sent together, up to this size.
+         * By default, 64 KB.
+         */
+        @Default
+        private final int writeBatchSize = 64 * 1024;
+
+        /**
+         * How long the socket waits for more frames before writing a message when no other message is being written.
+         * A longer linger coalesces more frames at the cost of latency.
+         * By default, frames are written right away.
+         */
+        @Default
+        @NonNull
+        private final Duration writeLinger = Duration.ZERO;
+
+        /**
+         * The maximum number of queries, and separately of messages and patches, that can wait to be written.
+         * When the limit is reached, new requests fail until the queue drains: use {@link Whatsapp#awaitWritable()} to wait for room.
+         * Acks, receipts, presences and pings are never limited.
+         * By default, 4096.
+         */
+        @Default
+        private final int writeQueueCapacity = 4096;
+
+        /**
+         * How long the keys of the signal messages that were skipped, or didn't arrive yet, are kept.
+         * A message that arrives after its key was evicted can't be decrypted.
+         * By default, thirty days.
+         */
+        @Default
+        @NonNull
+        private final Duration skippedMessageKeysTtl = Duration.ofDays(30);
+
+        /**
+         * The maximum number of keys of the signal messages that were skipped, or didn't arrive yet, kept across every signal session.
+         * When the limit is exceeded, the oldest keys are evicted.
+         * Each chain also keeps at most {@link SkippedMessageKeys#MAX_KEYS} keys.
+         * By default, 50000.
+         */
+        @Default
+        private final int maxSkippedMessageKeys = 50_000;
+
+        /**
+         * The number of one-time pre keys left on Whatsapp's servers below which new pre keys are uploaded.
+         * By default, 5.
+         */
+        @Default
+        private final int preKeysLowWatermark = 5;
+
+        /**
+         * The number of one-time pre keys that Whatsapp's servers should have after new pre keys are uploaded.
+         * This is also the number of key pairs that are generated ahead of time, so that an upload doesn't have to wait for them.
+         * By default, 30.
+         */
+        @Default
+        private final int preKeysHighWatermark = 30;
+
+        /**
+         * The executor that runs the asynchronous stages of the session, like sending messages or handling app state patches.
+         * Some stages block while they wait for a lock or for a response, so this executor should be able to grow or to park its threads cheaply.
+         * By default, a new virtual thread per task if the JVM supports them, otherwise a shared unbounded pool of daemon threads.
+         * In the latter case, every blocked stage holds a platform thread, so the number of threads grows with the number of busy sessions: hosts with many sessions on older JVMs should provide an executor sized for their load.
+         */
+        @Default
+        @NonNull
+        private final Executor executor = VirtualThreads.executor();
+
+        /**
+         * The resources shared with other sessions: listener threads, the scheduler of pings and the I/O resources of the transports.
+         * By default, the runtime shared by every session of the JVM.
+         */
+        @Default
+        @NonNull
+        private final WhatsappRuntime runtime = WhatsappRuntime.shared();
+
+        /**
+         * Returns a copy of these options whose version is resolved.
+         * If no version was specified, the latest one is fetched using the http client of {@link Options#runtime()}.
+         *
+         * @return a non-null options
+         */
+        public Options withLatestVersion() {
+            return version != null ?
+                    this :
+                    withVersion(Version.latest(WHATSAPP_VERSION, runtime.httpClient()));
+        }
+
         /**
          * The description provided to Whatsapp during the authentication process.
          * This should be, for example, the name of your service.
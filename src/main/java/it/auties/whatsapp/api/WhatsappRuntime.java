@@ -0,0 +1,131 @@
+package it.auties.whatsapp.api;
+
+import it.auties.whatsapp.util.DaemonThreadFactory;
+import it.auties.whatsapp.util.SerialExecutor;
+import it.auties.whatsapp.util.TimingWheel;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import org.glassfish.tyrus.client.ClientManager;
+import org.glassfish.tyrus.client.ClientProperties;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.*;
+
+/**
+ * The resources shared by the sessions that run in the same JVM.
+ * A runtime owns a bounded pool for listeners, a single scheduler for pings and other periodic tasks, a timing wheel for the timeouts of requests, an HTTP client and a WebSocket container whose I/O threads are shared by every connection.
+ * Sessions don't own threads: each one gets an ordered lane on the listeners pool, so the number of threads stays the same no matter how many sessions are running.
+ * By default, every session uses {@link WhatsappRuntime#shared()}.
+ * A dedicated runtime can be used to isolate a group of sessions: it should be closed when they are no longer needed.
+ */
+@Getter
+@Accessors(fluent = true)
+public final class WhatsappRuntime implements AutoCloseable {
+    private static final WhatsappRuntime SHARED = new WhatsappRuntime(defaultListenerThreads());
+
+    /**
+     * The non-null pool that calls the listeners of every session
+     */
+    @NonNull
+    private final ExecutorService listeners;
+
+    /**
+     * The non-null scheduler that runs pings and other periodic tasks of every session
+     */
+    @NonNull
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The non-null wheel that times out the requests of every session.
+     * Each session runs its timeouts on its own executor.
+     */
+    @NonNull
+    private final TimingWheel timingWheel;
+
+    /**
+     * The non-null HTTP client used by the JDK transport and for media
+     */
+    @NonNull
+    private final HttpClient httpClient;
+
+    /**
+     * The non-null WebSocket container used by the Tyrus transport
+     */
+    @NonNull
+    private final WebSocketContainer webSocketContainer;
+
+    /**
+     * Constructs a new runtime
+     *
+     * @param listenerThreads the maximum number of threads that call listeners
+     */
+    public WhatsappRuntime(int listenerThreads) {
+        if (listenerThreads <= 0) {
+            throw new IllegalArgumentException("Listener threads must be positive: %s".formatted(listenerThreads));
+        }
+
+        var listeners = new ThreadPoolExecutor(listenerThreads, listenerThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory("whatsapp-listener"));
+        listeners.allowCoreThreadTimeOut(true);
+        this.listeners = listeners;
+        var scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("whatsapp-scheduler"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+        this.timingWheel = new TimingWheel(100, TimeUnit.MILLISECONDS, 512, scheduler);
+        this.httpClient = HttpClient.newHttpClient();
+        this.webSocketContainer = createWebSocketContainer();
+    }
+
+    /**
+     * Returns the runtime shared by every session that doesn't specify one
+     *
+     * @return a non-null runtime
+     */
+    public static WhatsappRuntime shared() {
+        return SHARED;
+    }
+
+    private static int defaultListenerThreads() {
+        return Math.max(4, Runtime.getRuntime()
+                .availableProcessors() * 2);
+    }
+
+    private static WebSocketContainer createWebSocketContainer() {
+        var container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxSessionIdleTimeout(0);
+        if (container instanceof ClientManager manager) {
+            manager.getProperties()
+                    .put(ClientProperties.SHARED_CONTAINER, true);
+        }
+
+        return container;
+    }
+
+    /**
+     * Creates a new lane on the listeners pool.
+     * Tasks submitted to the same lane run one at a time and in order.
+     *
+     * @return a non-null executor
+     */
+    public Executor newListenersLane() {
+        return new SerialExecutor(listeners);
+    }
+
+    /**
+     * Shuts down the pools of this runtime.
+     * The shared runtime cannot be closed.
+     */
+    @Override
+    public void close() {
+        if (this == SHARED) {
+            throw new UnsupportedOperationException("Cannot close the shared runtime");
+        }
+
+        listeners.shutdown();
+        timingWheel.close();
+        scheduler.shutdownNow();
+    }
+}
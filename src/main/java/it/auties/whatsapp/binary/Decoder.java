@@ -1,46 +1,51 @@
 package it.auties.whatsapp.binary;
 
-import it.auties.bytes.Bytes;
 import it.auties.whatsapp.model.contact.ContactJid;
 import it.auties.whatsapp.model.request.Node;
-import it.auties.whatsapp.util.BytesHelper;
+import it.auties.whatsapp.model.request.NodeList;
+import it.auties.whatsapp.util.Attributes;
+import it.auties.whatsapp.util.CompactMap;
+import it.auties.whatsapp.util.Inflaters;
 import it.auties.whatsapp.util.Validate;
 import lombok.NonNull;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.IntStream;
+import java.util.Arrays;
 
 import static it.auties.whatsapp.binary.Tag.*;
 import static it.auties.whatsapp.model.contact.ContactJid.Server.forAddress;
-import static it.auties.whatsapp.model.request.Node.with;
-import static it.auties.whatsapp.model.request.Node.withAttributes;
 
+/**
+ * A decoder for the binary nodes sent by Whatsapp.
+ * Instances hold the read cursor of the frame being decoded, so they are not thread safe: each socket owns its own decoder.
+ * Binary payloads are not copied: they are exposed as read-only slices of the decoded frame.
+ */
 public class Decoder {
-    private Bytes buffer;
-
-    public synchronized Node decode(byte @NonNull [] input) {
-        var buffer = Bytes.of(input);
-        var token = buffer.readByte() & 2;
-        var data = buffer.remaining()
-                .toByteArray();
-        this.buffer = Bytes.of(token == 0 ?
-                data :
-                BytesHelper.deflate(data));
+    private ByteBuffer buffer;
+
+    public Node decode(byte @NonNull [] input) {
+        return decode(ByteBuffer.wrap(input));
+    }
+
+    public Node decode(@NonNull ByteBuffer input) {
+        var token = input.get() & 2;
+        this.buffer = token == 0 ?
+                input.slice() :
+                Inflaters.inflate(input);
         return readNode();
     }
 
     private Node readNode() {
-        var token = buffer.readUnsignedByte();
+        var token = readUnsignedByte();
         var size = readSize(token);
         Validate.isTrue(size != 0, "Cannot decode node with empty body");
         var description = readString();
         var attrs = readAttributes(size);
-        return size % 2 != 0 ?
-                withAttributes(description, attrs) :
-                with(description, attrs, read(false));
+        var content = size % 2 != 0 ?
+                null :
+                read(false);
+        return new Node(description, attrs, content);
     }
 
     public String readString() {
@@ -56,74 +61,70 @@ public class Decoder {
                                 .getName()));
     }
 
-    private List<Node> readList(int size) {
-        return IntStream.range(0, size)
-                .mapToObj(index -> readNode())
-                .toList();
-    }
-
-    private String readString(List<Character> permitted, int start, int end) {
-        var string = new char[2 * end - start];
-        IntStream.iterate(0, index -> index < string.length - 1, n -> n + 2)
-                .forEach(index -> readChar(permitted, string, index));
-        if (start != 0) {
-            string[string.length - 1] = permitted.get(buffer.readUnsignedByte() >>> 4);
+    private NodeList readList(int size) {
+        var nodes = new Node[size];
+        for (var index = 0; index < size; index++) {
+            nodes[index] = readNode();
         }
 
-        return String.valueOf(string);
-    }
-
-    private void readChar(List<Character> permitted, char[] string, int index) {
-        var token = buffer.readUnsignedByte();
-        string[index] = permitted.get(token >>> 4);
-        string[index + 1] = permitted.get(15 & token);
+        return NodeList.of(Arrays.asList(nodes));
     }
 
     private Object read(boolean parseBytes) {
-        var tag = buffer.readUnsignedByte();
+        var tag = readUnsignedByte();
         return switch (forData(tag)) {
             case LIST_EMPTY -> null;
             case COMPANION_JID -> readCompanionJid();
-            case LIST_8 -> readList(buffer.readUnsignedByte());
-            case LIST_16 -> readList(buffer.readUnsignedShort());
+            case LIST_8 -> readList(readUnsignedByte());
+            case LIST_16 -> readList(readUnsignedShort());
             case JID_PAIR -> readJidPair();
-            case HEX_8 -> readHexString();
-            case BINARY_8 -> readString(buffer.readUnsignedByte(), parseBytes);
+            case HEX_8 -> readPacked(HEX_8);
+            case BINARY_8 -> readString(readUnsignedByte(), parseBytes);
             case BINARY_20 -> readString(readString20Length(), parseBytes);
-            case BINARY_32 -> readString(buffer.readUnsignedShort(), parseBytes);
-            case NIBBLE_8 -> readNibble();
+            case BINARY_32 -> readString(buffer.getInt(), parseBytes);
+            case NIBBLE_8 -> readPacked(NIBBLE_8);
             default -> readStringFromToken(tag);
         };
     }
 
     private int readString20Length() {
-        return ((15 & buffer.readUnsignedByte()) << 16) + (buffer.readUnsignedByte() << 8) + buffer.readUnsignedByte();
+        return ((15 & readUnsignedByte()) << 16) + (readUnsignedByte() << 8) + readUnsignedByte();
     }
 
     private String readStringFromToken(int token) {
         if (token < DICTIONARY_0.data() || token > DICTIONARY_3.data()) {
-            return Tokens.SINGLE_BYTE.get(token - 1);
+            return TokenIndex.singleByte(token);
         }
 
-        var delta = (Tokens.DOUBLE_BYTE.size() / 4) * (token - DICTIONARY_0.data());
-        return Tokens.DOUBLE_BYTE.get(buffer.readUnsignedByte() + delta);
+        return TokenIndex.doubleByte(token, readUnsignedByte());
     }
 
-    private String readNibble() {
-        var number = buffer.readUnsignedByte();
-        return readString(Tokens.NUMBERS, number >>> 7, 127 & number);
+    private String readPacked(Tag tag) {
+        return PackedStrings.unpack(buffer, tag, readUnsignedByte());
     }
 
     private Object readString(int size, boolean parseBytes) {
-        var data = buffer.readBytes(size);
-        return parseBytes ?
-                new String(data, StandardCharsets.UTF_8) :
-                data;
+        if (parseBytes) {
+            return readUtf8(size);
+        }
+
+        var slice = buffer.slice(buffer.position(), size)
+                .asReadOnlyBuffer();
+        buffer.position(buffer.position() + size);
+        return slice;
     }
 
-    private String readHexString() {
-        var number = buffer.readUnsignedByte();
-        return readString(Tokens.HEX, number >>> 7, 127 & number);
+    private String readUtf8(int size) {
+        if (!buffer.hasArray()) {
+            var bytes = new byte[size];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        var result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), size,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + size);
+        return result;
     }
 
     private ContactJid readJidPair() {
@@ -135,26 +136,34 @@ public class Decoder {
     }
 
     private ContactJid readCompanionJid() {
-        var agent = buffer.readUnsignedByte();
-        var device = buffer.readUnsignedByte();
+        var agent = readUnsignedByte();
+        var device = readUnsignedByte();
         var user = readString();
         return ContactJid.ofCompanion(user, device, agent);
     }
 
     private int readSize(int token) {
         return LIST_8.contentEquals(token) ?
-                buffer.readUnsignedByte() :
-                buffer.readUnsignedShort();
+                readUnsignedByte() :
+                readUnsignedShort();
     }
 
-    private Map<String, Object> readAttributes(int size) {
-        var map = new HashMap<String, Object>();
+    private Attributes readAttributes(int size) {
+        var map = new CompactMap<String, Object>((size - 1) / 2);
         for (var pair = size - 1; pair > 1; pair -= 2) {
             var key = readString();
             var value = read(true);
             map.put(key, value);
         }
 
-        return map;
+        return new Attributes(map);
+    }
+
+    private int readUnsignedByte() {
+        return Byte.toUnsignedInt(buffer.get());
+    }
+
+    private int readUnsignedShort() {
+        return Short.toUnsignedInt(buffer.getShort());
     }
-}
\ No newline at end of file
+}
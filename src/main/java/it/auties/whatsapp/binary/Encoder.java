@@ -1,162 +1,275 @@
 package it.auties.whatsapp.binary;
 
-import it.auties.bytes.Bytes;
 import it.auties.whatsapp.model.contact.ContactJid;
 import it.auties.whatsapp.model.request.Node;
-import it.auties.whatsapp.util.Nodes;
+import it.auties.whatsapp.model.request.NodeList;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Objects;
 
 import static it.auties.whatsapp.binary.Tag.*;
 
+/**
+ * An encoder for the binary nodes sent to Whatsapp.
+ * Each node is encoded in two passes: the first one only measures the encoded size, the second one writes the node into an array of exactly that size.
+ * Instances hold the write cursor of the node being encoded, so they are not thread safe.
+ */
 public class Encoder {
     private static final int UNSIGNED_BYTE_MAX_VALUE = 256;
     private static final int UNSIGNED_SHORT_MAX_VALUE = 65536;
     private static final int INT_20_MAX_VALUE = 1048576;
 
-    private Bytes buffer;
+    private byte[] buffer;
 
-    public synchronized byte[] encode(Node node) {
-        this.buffer = Bytes.newBuffer();
-        var encoded = writeNode(node);
-        var result = new byte[1 + encoded.length];
-        result[0] = 0;
-        System.arraycopy(encoded, 0, result, 1, encoded.length);
+    private int index;
+
+    public byte[] encode(Node node) {
+        return encode(node, 0);
+    }
+
+    /**
+     * Encodes a node leaving {@code headerSize} empty bytes before the encoded payload
+     *
+     * @param node       the non-null node to encode
+     * @param headerSize the number of bytes to reserve at the start of the result
+     * @return a non-null array whose size is exactly {@code headerSize} plus the size of the encoded node
+     */
+    public byte[] encode(Node node, int headerSize) {
+        this.buffer = null;
+        this.index = headerSize;
+        writeByte(0);
+        writeNode(node);
+        this.buffer = new byte[index];
+        this.index = headerSize;
+        writeByte(0);
+        writeNode(node);
+        var result = buffer;
+        this.buffer = null;
         return result;
     }
 
-    private void writeString(String input, Tag token) {
-        this.buffer = buffer.append(token.data());
-        writeStringLength(input);
+    /**
+     * Encodes a stanza using a template
+     *
+     * @param template the non-null template of the stanza
+     * @param id       the non-null id of the stanza
+     * @param values   the values of the slots of the template
+     * @return a non-null array
+     */
+    byte[] encode(StanzaTemplate template, String id, Object[] values) {
+        this.buffer = null;
+        this.index = 0;
+        writeTemplate(template, id, values);
+        this.buffer = new byte[index];
+        this.index = 0;
+        writeTemplate(template, id, values);
+        var result = buffer;
+        this.buffer = null;
+        return result;
+    }
 
-        for (int charCode = 0, index = 0; index < input.length(); index++) {
-            var stringCodePoint = Character.codePointAt(input, index);
-            var binaryCodePoint = getStringCodePoint(token, stringCodePoint);
+    /**
+     * Encodes a sequence of values without any header, so that they can be copied into a stanza later
+     *
+     * @param values the values to encode
+     * @return a non-null array
+     */
+    byte[] encodeValues(Object... values) {
+        this.buffer = null;
+        this.index = 0;
+        writeValues(values);
+        this.buffer = new byte[index];
+        this.index = 0;
+        writeValues(values);
+        var result = buffer;
+        this.buffer = null;
+        return result;
+    }
 
-            if (index % 2 != 0) {
-                this.buffer = buffer.append(charCode |= binaryCodePoint);
+    private void writeTemplate(StanzaTemplate template, String id, Object[] values) {
+        writeByte(0);
+        writeInt(template.size(values));
+        writeBytes(template.prefix());
+        writeBytes(template.idKey());
+        writeString(id);
+        for (var index = 0; index < values.length; index++) {
+            if (values[index] == null) {
                 continue;
             }
 
-            charCode = binaryCodePoint << 4;
-            if (index != input.length() - 1) {
-                continue;
-            }
+            writeBytes(template.slotKey(index));
+            write(values[index]);
+        }
 
-            this.buffer = buffer.append(charCode |= 15);
+        if (template.encodedContent() != null) {
+            writeBytes(template.encodedContent());
         }
     }
 
-    private int getStringCodePoint(Tag token, int codePoint) {
-        if (codePoint >= 48 && codePoint <= 57) {
-            return codePoint - 48;
+    private void writeValues(Object[] values) {
+        for (var value : values) {
+            write(value);
         }
+    }
 
-        if (token == NIBBLE_8 && codePoint == 45) {
-            return 10;
+    private void writeByte(int input) {
+        if (buffer != null) {
+            buffer[index] = (byte) input;
         }
 
-        if (token == NIBBLE_8 && codePoint == 46) {
-            return 11;
+        index++;
+    }
+
+    private void writeBytes(byte[] input) {
+        if (buffer != null) {
+            System.arraycopy(input, 0, buffer, index, input.length);
         }
 
-        if (token == HEX_8 && codePoint >= 65 && codePoint <= 70) {
-            return codePoint - 55;
+        index += input.length;
+    }
+
+    private void writeBytes(ByteBuffer input) {
+        if (buffer != null) {
+            input.duplicate()
+                    .get(buffer, index, input.remaining());
         }
 
-        throw new IllegalArgumentException("Cannot parse codepoint %s with token %s".formatted(codePoint, token));
+        index += input.remaining();
     }
 
-    private void writeStringLength(String input) {
-        var roundedLength = (int) Math.ceil(input.length() / 2F);
-        if (input.length() % 2 == 1) {
-            this.buffer = buffer.append(roundedLength | 128);
-            return;
+    private void writeString(String input, Tag token) {
+        writeByte(token.data());
+        writeByte(PackedStrings.header(input));
+        if (buffer != null) {
+            PackedStrings.pack(input, token, buffer, index);
         }
 
-        this.buffer = buffer.append(roundedLength);
+        index += PackedStrings.packedLength(input);
     }
 
     private void writeLong(long input) {
         if (input < UNSIGNED_BYTE_MAX_VALUE) {
-            this.buffer = buffer.append(BINARY_8.data());
-            this.buffer = buffer.append((int) input);
+            writeByte(BINARY_8.data());
+            writeByte((int) input);
             return;
         }
 
         if (input < INT_20_MAX_VALUE) {
-            this.buffer = buffer.append(BINARY_20.data());
-            this.buffer = buffer.append((int) ((input >>> 16) & 255));
-            this.buffer = buffer.append((int) ((input >>> 8) & 255));
-            this.buffer = buffer.append((int) (255 & input));
+            writeByte(BINARY_20.data());
+            writeByte((int) ((input >>> 16) & 255));
+            writeByte((int) ((input >>> 8) & 255));
+            writeByte((int) (255 & input));
             return;
         }
 
-        this.buffer = buffer.append(BINARY_32.data());
-        buffer.appendLong(input);
+        writeByte(BINARY_32.data());
+        writeByte((int) ((input >>> 24) & 255));
+        writeByte((int) ((input >>> 16) & 255));
+        writeByte((int) ((input >>> 8) & 255));
+        writeByte((int) (255 & input));
     }
 
     private void writeString(String input) {
         if (input.isEmpty()) {
-            this.buffer = buffer.append(BINARY_8.data());
-            this.buffer = buffer.append(LIST_EMPTY.data());
+            writeByte(BINARY_8.data());
+            writeByte(LIST_EMPTY.data());
             return;
         }
 
-        var tokenIndex = Tokens.SINGLE_BYTE.indexOf(input);
-        if (tokenIndex != -1) {
-            this.buffer = buffer.append(tokenIndex + 1);
+        var token = TokenIndex.find(input);
+        if (token != TokenIndex.NO_TOKEN) {
+            writeToken(token);
             return;
         }
 
-        if (writeDoubleByteString(input)) {
+        var packed = PackedStrings.classify(input);
+        if (packed != UNKNOWN) {
+            writeString(input, packed);
             return;
         }
 
-        var length = length(input);
-        if (length < 128 && !Tokens.anyMatch(input, Tokens.NUMBERS_REGEX)) {
-            writeString(input, NIBBLE_8);
-            return;
-        }
+        writeLong(utf8Length(input));
+        writeUtf8(input);
+    }
 
-        if (length < 128 && !Tokens.anyMatch(input, Tokens.HEX_REGEX)) {
-            writeString(input, HEX_8);
+    private void writeUtf8(String input) {
+        if (buffer == null) {
+            index += utf8Length(input);
             return;
         }
 
-        writeLong(length);
-        this.buffer = buffer.append(input.getBytes(StandardCharsets.UTF_8));
+        for (var i = 0; i < input.length(); i++) {
+            var c = input.charAt(i);
+            if (c < 0x80) {
+                buffer[index++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[index++] = (byte) (0xC0 | (c >> 6));
+                buffer[index++] = (byte) (0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(input, i)) {
+                var codePoint = Character.toCodePoint(c, input.charAt(++i));
+                buffer[index++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[index++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[index++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[index++] = '?';
+            } else {
+                buffer[index++] = (byte) (0xE0 | (c >> 12));
+                buffer[index++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[index++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
     }
 
-    private boolean writeDoubleByteString(String input) {
-        if (!Tokens.DOUBLE_BYTE.contains(input)) {
-            return false;
+    /**
+     * Returns the length of a string encoded as UTF-8 without encoding it.
+     * Unpaired surrogates count as one byte, as {@link String#getBytes(java.nio.charset.Charset)} replaces them with '?'.
+     *
+     * @param input the non-null string to measure
+     * @return the number of bytes
+     */
+    static int utf8Length(String input) {
+        var length = input.length();
+        for (var i = 0; i < input.length(); i++) {
+            var c = input.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+
+            if (c < 0x800) {
+                length++;
+            } else if (isSurrogatePair(input, i)) {
+                length += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            }
         }
 
-        var index = Tokens.DOUBLE_BYTE.indexOf(input);
-        this.buffer = buffer.append(doubleByteStringTag(index).data());
-        this.buffer = buffer.append(index % (Tokens.DOUBLE_BYTE.size() / 4));
-        return true;
+        return length;
     }
 
-    private Tag doubleByteStringTag(int index) {
-        return switch (index / (Tokens.DOUBLE_BYTE.size() / 4)) {
-            case 0 -> DICTIONARY_0;
-            case 1 -> DICTIONARY_1;
-            case 2 -> DICTIONARY_2;
-            case 3 -> DICTIONARY_3;
-            default -> throw new IllegalArgumentException("Cannot find tag for quadrant %s".formatted(index));
-        };
+    private static boolean isSurrogatePair(String input, int index) {
+        return Character.isHighSurrogate(input.charAt(index))
+                && index + 1 < input.length()
+                && Character.isLowSurrogate(input.charAt(index + 1));
     }
 
-    private byte[] writeNode(Node input) {
+    private void writeToken(int token) {
+        if (token > 255) {
+            writeByte(token >>> 8);
+        }
+
+        writeByte(token & 255);
+    }
+
+    private void writeNode(Node input) {
         if (input.description()
                 .equals("0")) {
-            this.buffer = buffer.append(LIST_8.data());
-            this.buffer = buffer.append(LIST_EMPTY.data());
-            return buffer.toByteArray();
+            writeByte(LIST_8.data());
+            writeByte(LIST_EMPTY.data());
+            return;
         }
 
         writeInt(input.size());
@@ -165,8 +278,6 @@ public class Encoder {
         if (input.hasContent()) {
             write(input.content());
         }
-
-        return buffer.toByteArray();
     }
 
     private void writeAttributes(Node input) {
@@ -180,14 +291,16 @@ public class Encoder {
 
     private void writeInt(int size) {
         if (size < UNSIGNED_BYTE_MAX_VALUE) {
-            this.buffer = buffer.append(LIST_8.data());
-            this.buffer = buffer.append(size);
+            writeByte(LIST_8.data());
+            writeByte(size);
             return;
         }
 
         if (size < UNSIGNED_SHORT_MAX_VALUE) {
-            this.buffer = buffer.append(LIST_16.data());
-            buffer.appendShort(size);
+            writeByte(LIST_16.data());
+            writeByte(size >>> 8);
+            writeByte(size & 255);
+            return;
         }
 
         throw new IllegalArgumentException("Cannot write int %s: overflow".formatted(size));
@@ -195,11 +308,12 @@ public class Encoder {
 
     private void write(Object input) {
         switch (input) {
-            case null -> this.buffer = buffer.append(LIST_EMPTY.data());
+            case null -> writeByte(LIST_EMPTY.data());
             case String str -> writeString(str);
             case Boolean bool -> writeString(Boolean.toString(bool));
             case Number number -> writeString(number.toString());
-            case byte[] bytes -> writeBytes(bytes);
+            case byte[] bytes -> writeBinary(bytes);
+            case ByteBuffer bytes -> writeBinary(bytes);
             case ContactJid jid -> writeJid(jid);
             case Collection<?> collection -> writeList(collection);
             case Enum<?> serializable -> writeString(Objects.toString(serializable));
@@ -211,26 +325,33 @@ public class Encoder {
     }
 
     private void writeList(Collection<?> collection) {
-        writeInt(collection.size());
-        Nodes.findAll(collection)
-                .forEach(this::writeNode);
+        var nodes = NodeList.of(collection);
+        writeInt(nodes.size());
+        for (var node : nodes) {
+            writeNode(node);
+        }
     }
 
-    private void writeBytes(byte[] bytes) {
+    private void writeBinary(byte[] bytes) {
         writeLong(bytes.length);
-        this.buffer = buffer.append(bytes);
+        writeBytes(bytes);
+    }
+
+    private void writeBinary(ByteBuffer bytes) {
+        writeLong(bytes.remaining());
+        writeBytes(bytes);
     }
 
     private void writeJid(ContactJid jid) {
         if (jid.isCompanion()) {
-            this.buffer = buffer.append(COMPANION_JID.data());
-            this.buffer = buffer.append(jid.agent());
-            this.buffer = buffer.append(jid.device());
+            writeByte(COMPANION_JID.data());
+            writeByte(jid.agent());
+            writeByte(jid.device());
             writeString(jid.user());
             return;
         }
 
-        this.buffer = buffer.append(JID_PAIR.data());
+        writeByte(JID_PAIR.data());
         if (jid.user() != null) {
             writeString(jid.user());
             writeString(jid.server()
@@ -238,12 +359,8 @@ public class Encoder {
             return;
         }
 
-        this.buffer = buffer.append(LIST_EMPTY.data());
+        writeByte(LIST_EMPTY.data());
         writeString(jid.server()
                 .address());
     }
-
-    private int length(String input) {
-        return input.getBytes(StandardCharsets.UTF_8).length;
-    }
-}
\ No newline at end of file
+}
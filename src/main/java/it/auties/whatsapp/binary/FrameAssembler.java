@@ -0,0 +1,121 @@
+package it.auties.whatsapp.binary;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Splits the binary messages sent by Whatsapp into length-prefixed frames.
+ * Websocket messages may be delivered in fragments and a frame may span more than one fragment: the bytes of an incomplete frame are kept until its length is satisfied.
+ * Complete frames inside a fragment are passed on as slices of the fragment, so only the frames that span fragments are copied.
+ * Instances hold the state of the frame being assembled, so they are not thread safe: each socket owns its own assembler.
+ */
+public class FrameAssembler {
+    private static final int LENGTH_SIZE = 3;
+
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private final byte[] header;
+
+    private int headerLength;
+
+    private byte[] pending;
+
+    private int frameLength;
+
+    private int framePosition;
+
+    public FrameAssembler() {
+        this.header = new byte[LENGTH_SIZE];
+        this.pending = new byte[0];
+        this.frameLength = -1;
+    }
+
+    /**
+     * Appends a fragment of a websocket message and passes every frame that it completes to a consumer.
+     * Frames are only valid until the consumer returns: they may point to a buffer that is reused for the next frames.
+     *
+     * @param fragment the non-null fragment to append, its position is not changed
+     * @param consumer the non-null consumer of the complete frames
+     */
+    public void append(@NonNull ByteBuffer fragment, @NonNull Consumer<ByteBuffer> consumer) {
+        var buffer = fragment.duplicate();
+        if (hasPartialFrame() && !fillPartialFrame(buffer, consumer)) {
+            return;
+        }
+
+        while (buffer.remaining() >= LENGTH_SIZE) {
+            var position = buffer.position();
+            var length = decodeLength(buffer.get(position), buffer.get(position + 1), buffer.get(position + 2));
+            if (buffer.remaining() < LENGTH_SIZE + length) {
+                break;
+            }
+
+            consumer.accept(buffer.slice(position + LENGTH_SIZE, length));
+            buffer.position(position + LENGTH_SIZE + length);
+        }
+
+        if (buffer.hasRemaining()) {
+            fillPartialFrame(buffer, consumer);
+        }
+    }
+
+    /**
+     * Returns whether some bytes of an incomplete frame are waiting for the next fragment
+     *
+     * @return a boolean
+     */
+    public boolean hasPartialFrame() {
+        return headerLength != 0;
+    }
+
+    /**
+     * Drops the incomplete frame, if any.
+     * This should be called when the connection is reset.
+     */
+    public void clear() {
+        this.headerLength = 0;
+        this.frameLength = -1;
+        this.framePosition = 0;
+        if (pending.length > MAX_RETAINED_SIZE) {
+            this.pending = new byte[0];
+        }
+    }
+
+    private boolean fillPartialFrame(ByteBuffer buffer, Consumer<ByteBuffer> consumer) {
+        while (headerLength < LENGTH_SIZE && buffer.hasRemaining()) {
+            header[headerLength++] = buffer.get();
+        }
+
+        if (headerLength < LENGTH_SIZE) {
+            return false;
+        }
+
+        if (frameLength == -1) {
+            this.frameLength = decodeLength(header[0], header[1], header[2]);
+            if (pending.length < frameLength) {
+                this.pending = new byte[frameLength];
+            }
+        }
+
+        var count = Math.min(buffer.remaining(), frameLength - framePosition);
+        buffer.get(pending, framePosition, count);
+        this.framePosition += count;
+        if (framePosition < frameLength) {
+            return false;
+        }
+
+        try {
+            consumer.accept(ByteBuffer.wrap(pending, 0, frameLength));
+        } finally {
+            clear();
+        }
+
+        return true;
+    }
+
+    private int decodeLength(byte first, byte second, byte third) {
+        return Byte.toUnsignedInt(first) << 16 | Byte.toUnsignedInt(second) << 8 | Byte.toUnsignedInt(third);
+    }
+}
@@ -1,57 +1,47 @@
 package it.auties.whatsapp.binary;
 
-import it.auties.bytes.Bytes;
 import it.auties.whatsapp.controller.Keys;
-import it.auties.whatsapp.crypto.AesGmc;
 import it.auties.whatsapp.model.request.Node;
 import lombok.NonNull;
 import lombok.Value;
 import lombok.experimental.Accessors;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * A binary message sent by Whatsapp that is already complete, split into its frames.
+ * The socket assembles frames incrementally using {@link FrameAssembler}: this class is only useful when the whole message is available.
+ * A trailing incomplete frame is ignored.
+ */
 @Value
 @Accessors(fluent = true)
 public class MessageWrapper {
-    private static final Decoder DECODER = new Decoder();
+    @NonNull ByteBuffer raw;
 
-    @NonNull Bytes raw;
+    @NonNull LinkedList<ByteBuffer> decoded;
 
-    @NonNull LinkedList<Bytes> decoded;
-
-    public MessageWrapper(@NonNull Bytes raw) {
+    public MessageWrapper(@NonNull ByteBuffer raw) {
         this.raw = raw;
-        var decoded = new LinkedList<Bytes>();
-        while (raw.readableBytes() >= 3) {
-            var length = decodeLength(raw);
-            if (length < 0) {
-                continue;
-            }
-
-            decoded.add(raw.readBuffer(length));
-        }
-
+        var decoded = new LinkedList<ByteBuffer>();
+        new FrameAssembler().append(raw, decoded::add);
         this.decoded = decoded;
     }
 
     public MessageWrapper(byte @NonNull [] array) {
-        this(Bytes.of(array));
-    }
-
-    private int decodeLength(Bytes buffer) {
-        return (buffer.readByte() << 16) | buffer.readUnsignedShort();
+        this(ByteBuffer.wrap(array));
     }
 
-    public List<Node> toNodes(@NonNull Keys keys) {
+    public List<Node> toNodes(@NonNull Keys keys, @NonNull Decoder decoder) {
         return decoded.stream()
-                .map(encoded -> toNode(encoded, keys))
+                .map(encoded -> toNode(encoded, keys, decoder))
                 .toList();
     }
 
-    private Node toNode(Bytes encoded, Keys keys) {
-        var plainText = AesGmc.of(keys.readKey(), keys.readCounter(true), false)
-                .encrypt(encoded.toByteArray());
-        return DECODER.decode(plainText);
+    private Node toNode(ByteBuffer encoded, Keys keys, Decoder decoder) {
+        var plainText = keys.readCipher()
+                .decrypt(keys.readCounter(true), encoded);
+        return decoder.decode(plainText);
     }
 }
@@ -0,0 +1,180 @@
+package it.auties.whatsapp.binary;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static it.auties.whatsapp.binary.Tag.*;
+
+/**
+ * A table driven codec for strings packed as {@link Tag#NIBBLE_8} or {@link Tag#HEX_8}.
+ * Every character of a packed string takes four bits: two characters are stored in each byte and odd strings are padded with 15.
+ * The header byte stores the number of bytes in the lower seven bits and whether the string is odd in the highest bit.
+ */
+@UtilityClass
+class PackedStrings {
+    private final int MAX_LENGTH = 128;
+
+    private final int PADDING = 15;
+
+    private final int NIBBLE_CLASS = 1;
+
+    private final int HEX_CLASS = 2;
+
+    private final String NIBBLE_ALPHABET = "0123456789-.";
+
+    private final String HEX_ALPHABET = "0123456789ABCDEF";
+
+    private final byte[] CLASSES = createClasses();
+
+    private final byte[] NIBBLE_CODES = createCodes(NIBBLE_ALPHABET);
+
+    private final byte[] HEX_CODES = createCodes(HEX_ALPHABET);
+
+    private final char[] NIBBLE_CHARS = createChars(Tokens.NUMBERS);
+
+    private final char[] HEX_CHARS = createChars(Tokens.HEX);
+
+    /**
+     * Classifies a string in a single pass
+     *
+     * @param input the non-null string to classify
+     * @return {@link Tag#NIBBLE_8} or {@link Tag#HEX_8} if the input can be packed, {@link Tag#UNKNOWN} otherwise
+     */
+    Tag classify(@NonNull String input) {
+        var length = input.length();
+        if (length == 0 || length >= MAX_LENGTH) {
+            return UNKNOWN;
+        }
+
+        var classes = NIBBLE_CLASS | HEX_CLASS;
+        for (var index = 0; index < length; index++) {
+            var character = input.charAt(index);
+            if (character >= CLASSES.length) {
+                return UNKNOWN;
+            }
+
+            classes &= CLASSES[character];
+            if (classes == 0) {
+                return UNKNOWN;
+            }
+        }
+
+        return (classes & NIBBLE_CLASS) != 0 ?
+                NIBBLE_8 :
+                HEX_8;
+    }
+
+    /**
+     * Returns the header byte of a packed string
+     *
+     * @param input the non-null string to pack
+     * @return an unsigned byte
+     */
+    int header(@NonNull String input) {
+        return packedLength(input) | (input.length() % 2) << 7;
+    }
+
+    /**
+     * Returns the number of bytes needed to pack a string, header excluded
+     *
+     * @param input the non-null string to pack
+     * @return a positive number
+     */
+    int packedLength(@NonNull String input) {
+        return (input.length() + 1) / 2;
+    }
+
+    /**
+     * Packs a string classified as {@code tag} into {@code output}, header excluded
+     *
+     * @param input  the non-null string to pack
+     * @param tag    the class of the string
+     * @param output the array to write
+     * @param offset the index of the first byte to write
+     */
+    void pack(@NonNull String input, @NonNull Tag tag, byte @NonNull [] output, int offset) {
+        var codes = codes(tag);
+        var length = input.length();
+        var index = 0;
+        for (; index + 1 < length; index += 2) {
+            output[offset++] = (byte) (codes[input.charAt(index)] << 4 | codes[input.charAt(index + 1)]);
+        }
+
+        if (index < length) {
+            output[offset] = (byte) (codes[input.charAt(index)] << 4 | PADDING);
+        }
+    }
+
+    /**
+     * Reads a packed string from {@code input}, header excluded
+     *
+     * @param input  the buffer to read
+     * @param tag    the class of the string
+     * @param header the header of the string
+     * @return a non-null string
+     */
+    String unpack(@NonNull ByteBuffer input, @NonNull Tag tag, int header) {
+        var chars = chars(tag);
+        var odd = header >>> 7;
+        var size = header & 127;
+        var result = new char[2 * size - odd];
+        var index = 0;
+        for (; index + 1 < result.length; index += 2) {
+            var token = Byte.toUnsignedInt(input.get());
+            result[index] = chars[token >>> 4];
+            result[index + 1] = chars[token & 15];
+        }
+
+        if (odd != 0) {
+            result[index] = chars[Byte.toUnsignedInt(input.get()) >>> 4];
+        }
+
+        return String.valueOf(result);
+    }
+
+    private byte[] codes(Tag tag) {
+        return switch (tag) {
+            case NIBBLE_8 -> NIBBLE_CODES;
+            case HEX_8 -> HEX_CODES;
+            default -> throw new IllegalArgumentException("Cannot pack string with token %s".formatted(tag));
+        };
+    }
+
+    private char[] chars(Tag tag) {
+        return switch (tag) {
+            case NIBBLE_8 -> NIBBLE_CHARS;
+            case HEX_8 -> HEX_CHARS;
+            default -> throw new IllegalArgumentException("Cannot unpack string with token %s".formatted(tag));
+        };
+    }
+
+    private byte[] createClasses() {
+        var result = new byte[128];
+        NIBBLE_ALPHABET.chars()
+                .forEach(character -> result[character] |= NIBBLE_CLASS);
+        HEX_ALPHABET.chars()
+                .forEach(character -> result[character] |= HEX_CLASS);
+        return result;
+    }
+
+    private byte[] createCodes(String alphabet) {
+        var result = new byte[128];
+        for (var index = 0; index < alphabet.length(); index++) {
+            result[alphabet.charAt(index)] = (byte) index;
+        }
+
+        return result;
+    }
+
+    private char[] createChars(List<Character> alphabet) {
+        var result = new char[alphabet.size()];
+        for (var index = 0; index < result.length; index++) {
+            result[index] = alphabet.get(index);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+package it.auties.whatsapp.binary;
+
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.model.request.NodeList;
+import it.auties.whatsapp.util.Attributes;
+import it.auties.whatsapp.util.CompactMap;
+import lombok.NonNull;
+
+import java.util.*;
+
+import static it.auties.whatsapp.model.request.Node.with;
+
+/**
+ * A precompiled shape for stanzas that are sent very often.
+ * The description, the constant attributes and the constant content of a template are encoded once when the template is created.
+ * When a stanza is sent, only the id and the values of the slots are encoded and the constant parts are copied as they are.
+ * A slot whose value is null is omitted from the stanza.
+ * The encoded result is the same that {@link Encoder} produces for the node returned by {@link StanzaTemplate#toNode(String, Object...)}.
+ */
+public final class StanzaTemplate {
+    /**
+     * A receipt for a single message.
+     * Slots: type, to, participant, t.
+     */
+    public static final StanzaTemplate RECEIPT = new StanzaTemplate("receipt", List.of("type", "to", "participant", "t"),
+            Map.of(), null);
+
+    /**
+     * An ack for a stanza sent by Whatsapp.
+     * Slots: class, type, to, participant, from.
+     */
+    public static final StanzaTemplate ACK = new StanzaTemplate("ack", List.of("class", "type", "to", "participant",
+            "from"), Map.of(), null);
+
+    /**
+     * A ping that keeps the connection alive.
+     * Slots: none.
+     */
+    public static final StanzaTemplate PING = new StanzaTemplate("iq", List.of(), createQuery("get", "w:p"),
+            List.of(with("ping")));
+
+    /**
+     * A presence update or subscription.
+     * Slots: type, to.
+     */
+    public static final StanzaTemplate PRESENCE = new StanzaTemplate("presence", List.of("type", "to"), Map.of(),
+            null);
+
+    private static final String ID = "id";
+
+    private final String description;
+
+    private final List<String> slots;
+
+    private final Map<String, Object> constants;
+
+    private final NodeList content;
+
+    private final byte[] prefix;
+
+    private final byte[] idKey;
+
+    private final byte[][] slotKeys;
+
+    private final byte[] encodedContent;
+
+    /**
+     * Constructs a new template
+     *
+     * @param description the non-null description of the stanza
+     * @param slots       the non-null names of the attributes that change every time, the id excluded
+     * @param constants   the non-null attributes that never change
+     * @param content     the nullable children that never change
+     */
+    public StanzaTemplate(@NonNull String description, @NonNull List<String> slots, @NonNull Map<String, Object> constants,
+                          List<Node> content) {
+        this.description = description;
+        this.slots = List.copyOf(slots);
+        this.constants = Collections.unmodifiableMap(new CompactMap<>(constants));
+        this.content = content == null ?
+                null :
+                NodeList.of(content);
+        var encoder = new Encoder();
+        var prefix = new ArrayList<>();
+        prefix.add(description);
+        this.constants.forEach((key, value) -> {
+            prefix.add(key);
+            prefix.add(value);
+        });
+        this.prefix = encoder.encodeValues(prefix.toArray());
+        this.idKey = encoder.encodeValues(ID);
+        this.slotKeys = this.slots.stream()
+                .map(encoder::encodeValues)
+                .toArray(byte[][]::new);
+        this.encodedContent = this.content == null ?
+                null :
+                encoder.encodeValues(this.content);
+    }
+
+    private static Map<String, Object> createQuery(String method, String category) {
+        var result = new CompactMap<String, Object>();
+        result.put("type", method);
+        result.put("to", ContactJid.WHATSAPP);
+        result.put("xmlns", category);
+        return result;
+    }
+
+    /**
+     * Encodes a stanza with this shape
+     *
+     * @param id     the non-null id of the stanza
+     * @param values the nullable values of the slots, in the same order as the slots
+     * @return a non-null array, flag byte included
+     */
+    public byte[] encode(@NonNull String id, Object... values) {
+        checkValues(values);
+        return new Encoder().encode(this, id, values);
+    }
+
+    /**
+     * Builds the node that this template encodes for the provided values
+     *
+     * @param id     the non-null id of the stanza
+     * @param values the nullable values of the slots, in the same order as the slots
+     * @return a non-null node
+     */
+    public Node toNode(@NonNull String id, Object... values) {
+        checkValues(values);
+        var attributes = new CompactMap<String, Object>(constants.size() + values.length + 1);
+        attributes.putAll(constants);
+        attributes.put(ID, id);
+        for (var index = 0; index < values.length; index++) {
+            if (values[index] != null) {
+                attributes.put(slots.get(index), values[index]);
+            }
+        }
+
+        return new Node(description, new Attributes(attributes), content);
+    }
+
+    private void checkValues(Object[] values) {
+        if (values.length != slots.size()) {
+            throw new IllegalArgumentException("Expected %s values for %s, got %s".formatted(slots.size(), slots,
+                    values.length));
+        }
+    }
+
+    int size(Object[] values) {
+        var attributes = constants.size() + 1;
+        for (var value : values) {
+            if (value != null) {
+                attributes++;
+            }
+        }
+
+        return 1 + 2 * attributes + (encodedContent != null ?
+                1 :
+                0);
+    }
+
+    byte[] prefix() {
+        return prefix;
+    }
+
+    byte[] idKey() {
+        return idKey;
+    }
+
+    byte[] slotKey(int index) {
+        return slotKeys[index];
+    }
+
+    byte[] encodedContent() {
+        return encodedContent;
+    }
+}
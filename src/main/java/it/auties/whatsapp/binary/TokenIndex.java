@@ -0,0 +1,175 @@
+package it.auties.whatsapp.binary;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static it.auties.whatsapp.binary.Tag.DICTIONARY_0;
+
+/**
+ * A collision-free hash index over {@link Tokens#SINGLE_BYTE} and {@link Tokens#DOUBLE_BYTE}.
+ * The table is built once using hash and displace: keys are grouped into buckets and every bucket gets the first seed that moves all of its keys into free slots.
+ * This way a lookup always hashes the input once and compares it with a single candidate.
+ * The value of each token is its binary representation: one byte for single byte tokens, a dictionary tag followed by the index in that dictionary for double byte tokens.
+ * This class lives outside {@link Tokens} as the latter is regenerated from Whatsapp Web's source.
+ */
+@UtilityClass
+class TokenIndex {
+    /**
+     * The value returned when a string is not a token
+     */
+    final int NO_TOKEN = -1;
+
+    private final int BUCKET_SIZE = 4;
+
+    private final int MAX_SEED = 1 << 24;
+
+    private final String[] SINGLE_BYTE = Tokens.SINGLE_BYTE.toArray(String[]::new);
+
+    private final String[] DOUBLE_BYTE = Tokens.DOUBLE_BYTE.toArray(String[]::new);
+
+    private final int DICTIONARY_SIZE = DOUBLE_BYTE.length / 4;
+
+    private final String[] KEYS = new String[tableSize(SINGLE_BYTE.length + DOUBLE_BYTE.length)];
+
+    private final int[] VALUES = new int[KEYS.length];
+
+    private final int[] SEEDS = createSeeds();
+
+    /**
+     * Returns the binary representation of a token
+     *
+     * @param input the string to look up
+     * @return {@link TokenIndex#NO_TOKEN} if the input is not a token, a value smaller than 256 for single byte tokens, otherwise the dictionary tag shifted by 8 bits followed by the index
+     */
+    int find(@NonNull String input) {
+        var hash = input.hashCode();
+        var slot = mix(hash, SEEDS[mix(hash, 0) & (SEEDS.length - 1)]) & (KEYS.length - 1);
+        return input.equals(KEYS[slot]) ?
+                VALUES[slot] :
+                NO_TOKEN;
+    }
+
+    /**
+     * Returns the single byte token with the provided value
+     *
+     * @param token the encoded token
+     * @return a non-null string
+     */
+    String singleByte(int token) {
+        return SINGLE_BYTE[token - 1];
+    }
+
+    /**
+     * Returns the double byte token with the provided dictionary tag and index
+     *
+     * @param dictionary the dictionary tag
+     * @param index      the index inside the dictionary
+     * @return a non-null string
+     */
+    String doubleByte(int dictionary, int index) {
+        return DOUBLE_BYTE[(dictionary - DICTIONARY_0.data()) * DICTIONARY_SIZE + index];
+    }
+
+    private int tableSize(int keys) {
+        return Integer.highestOneBit(keys) << 1;
+    }
+
+    private int mix(int hash, int seed) {
+        var result = (hash ^ seed) * 0x9E3779B9;
+        return result ^ (result >>> 16);
+    }
+
+    private int[] createSeeds() {
+        var seeds = new int[tableSize(KEYS.length / BUCKET_SIZE)];
+        var buckets = createBuckets(seeds.length);
+        buckets.sort(Comparator.comparingInt(List<Integer>::size)
+                .reversed());
+        for (var bucket : buckets) {
+            if (bucket.isEmpty()) {
+                break;
+            }
+
+            var bucketIndex = mix(tokenKey(bucket.get(0)).hashCode(), 0) & (seeds.length - 1);
+            seeds[bucketIndex] = placeBucket(bucket);
+        }
+
+        return seeds;
+    }
+
+    private List<List<Integer>> createBuckets(int size) {
+        var buckets = IntStream.range(0, size)
+                .mapToObj(ignored -> (List<Integer>) new ArrayList<Integer>())
+                .toList();
+        var known = new HashSet<String>();
+        for (var token = 0; token < SINGLE_BYTE.length + DOUBLE_BYTE.length; token++) {
+            var key = tokenKey(token);
+            if (!known.add(key)) {
+                continue;
+            }
+
+            buckets.get(mix(key.hashCode(), 0) & (size - 1))
+                    .add(token);
+        }
+
+        return new ArrayList<>(buckets);
+    }
+
+    private int placeBucket(List<Integer> bucket) {
+        var slots = new int[bucket.size()];
+        for (var seed = 1; seed < MAX_SEED; seed++) {
+            if (!findSlots(bucket, seed, slots)) {
+                continue;
+            }
+
+            for (var index = 0; index < slots.length; index++) {
+                var token = bucket.get(index);
+                KEYS[slots[index]] = tokenKey(token);
+                VALUES[slots[index]] = tokenValue(token);
+            }
+
+            return seed;
+        }
+
+        throw new IllegalStateException("Cannot build token index: no seed found");
+    }
+
+    private boolean findSlots(List<Integer> bucket, int seed, int[] slots) {
+        for (var index = 0; index < slots.length; index++) {
+            var slot = mix(tokenKey(bucket.get(index)).hashCode(), seed) & (KEYS.length - 1);
+            if (KEYS[slot] != null) {
+                return false;
+            }
+
+            for (var previous = 0; previous < index; previous++) {
+                if (slots[previous] == slot) {
+                    return false;
+                }
+            }
+
+            slots[index] = slot;
+        }
+
+        return true;
+    }
+
+    private String tokenKey(int token) {
+        return token < SINGLE_BYTE.length ?
+                SINGLE_BYTE[token] :
+                DOUBLE_BYTE[token - SINGLE_BYTE.length];
+    }
+
+    private int tokenValue(int token) {
+        if (token < SINGLE_BYTE.length) {
+            return token + 1;
+        }
+
+        var index = token - SINGLE_BYTE.length;
+        return (DICTIONARY_0.data() + index / DICTIONARY_SIZE) << 8 | index % DICTIONARY_SIZE;
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import it.auties.bytes.Bytes;
 import it.auties.whatsapp.binary.PatchType;
+import it.auties.whatsapp.crypto.TransportCipher;
 import it.auties.whatsapp.model.contact.ContactJid;
 import it.auties.whatsapp.model.signal.auth.SignedDeviceIdentity;
 import it.auties.whatsapp.model.signal.auth.SignedDeviceIdentityHMAC;
@@ -14,6 +15,7 @@ import it.auties.whatsapp.model.signal.sender.SenderKeyName;
 import it.auties.whatsapp.model.signal.sender.SenderKeyRecord;
 import it.auties.whatsapp.model.signal.session.Session;
 import it.auties.whatsapp.model.signal.session.SessionAddress;
+import it.auties.whatsapp.model.signal.session.SkippedMessageKeys;
 import it.auties.whatsapp.model.sync.AppStateSyncKey;
 import it.auties.whatsapp.model.sync.LTHashState;
 import it.auties.whatsapp.util.Preferences;
@@ -22,6 +24,7 @@ import lombok.Builder.Default;
 import lombok.experimental.Accessors;
 import lombok.extern.jackson.Jacksonized;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
@@ -82,6 +85,12 @@ public final class Keys implements Controller<Keys> {
     @NonNull
     private ConcurrentLinkedDeque<SignalPreKeyPair> preKeys = new ConcurrentLinkedDeque<>();
 
+    /**
+     * The pre keys indexed by id, built from the pre keys the first time a pre key is looked up
+     */
+    @JsonIgnore
+    private volatile Map<Integer, SignalPreKeyPair> preKeysById;
+
     /**
      * The user using these keys
      */
@@ -151,9 +160,15 @@ public final class Keys implements Controller<Keys> {
      */
     @JsonIgnore
     @Getter
-    @Setter
     private Bytes writeKey, readKey;
 
+    /**
+     * The ciphers of the session dependent keys, created when the keys are set
+     */
+    @JsonIgnore
+    @Getter
+    private TransportCipher writeCipher, readCipher;
+
     @JsonIgnore
     @Getter
     @Setter
@@ -195,12 +210,40 @@ public final class Keys implements Controller<Keys> {
      */
     @Override
     public void clear() {
-        this.readKey = null;
-        this.writeKey = null;
+        readKey(null);
+        writeKey(null);
         this.writeCounter.set(0);
         this.readCounter.set(0);
     }
 
+    /**
+     * Sets the key used to write cyphered messages and creates its cipher
+     *
+     * @param writeKey the nullable key
+     * @return the same instance
+     */
+    public Keys writeKey(Bytes writeKey) {
+        this.writeKey = writeKey;
+        this.writeCipher = writeKey == null ?
+                null :
+                new TransportCipher(writeKey);
+        return this;
+    }
+
+    /**
+     * Sets the key used to read cyphered messages and creates its cipher
+     *
+     * @param readKey the nullable key
+     * @return the same instance
+     */
+    public Keys readKey(Bytes readKey) {
+        this.readKey = readKey;
+        this.readCipher = readKey == null ?
+                null :
+                new TransportCipher(readKey);
+        return this;
+    }
+
     /**
      * Checks if the serverToken and clientToken are not null
      *
@@ -265,9 +308,24 @@ public final class Keys implements Controller<Keys> {
     public Optional<SignalPreKeyPair> findPreKeyById(Integer id) {
         return id == null ?
                 Optional.empty() :
-                preKeys.stream()
-                        .filter(preKey -> preKey.id() == id)
-                        .findFirst();
+                Optional.ofNullable(preKeysById().get(id));
+    }
+
+    private Map<Integer, SignalPreKeyPair> preKeysById() {
+        var result = preKeysById;
+        if (result != null) {
+            return result;
+        }
+
+        synchronized (preKeys) {
+            if (preKeysById == null) {
+                var index = new ConcurrentHashMap<Integer, SignalPreKeyPair>();
+                preKeys.forEach(preKey -> index.put(preKey.id(), preKey));
+                this.preKeysById = index;
+            }
+
+            return preKeysById;
+        }
     }
 
     /**
@@ -360,7 +418,19 @@ public final class Keys implements Controller<Keys> {
      * @return this
      */
     public Keys addPreKey(SignalPreKeyPair preKey) {
-        preKeys.add(preKey);
+        return addPreKeys(List.of(preKey));
+    }
+
+    /**
+     * Adds the provided pre keys to the pre keys, serializing these keys only once
+     *
+     * @param preKeys the non-null keys to add, ordered by id
+     * @return this
+     */
+    public Keys addPreKeys(@NonNull Collection<SignalPreKeyPair> preKeys) {
+        this.preKeys.addAll(preKeys);
+        var index = preKeysById();
+        preKeys.forEach(preKey -> index.put(preKey.id(), preKey));
         serialize();
         return this;
     }
@@ -401,6 +471,88 @@ public final class Keys implements Controller<Keys> {
                         .id();
     }
 
+    /**
+     * Returns the number of signal sessions held by these keys
+     *
+     * @return a non-negative int
+     */
+    public int sessionsCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of sender keys held by these keys
+     *
+     * @return a non-negative int
+     */
+    public int senderKeysCount() {
+        return senderKeys.size();
+    }
+
+    /**
+     * Returns the number of pre keys held by these keys
+     *
+     * @return a non-negative int
+     */
+    public int preKeysCount() {
+        return preKeys.size();
+    }
+
+    /**
+     * Returns the number of skipped message keys held by the signal sessions of these keys
+     *
+     * @return a non-negative int
+     */
+    public int skippedMessageKeysCount() {
+        return sessions.values()
+                .stream()
+                .flatMap(Session::skippedMessageKeys)
+                .mapToInt(SkippedMessageKeys::size)
+                .sum();
+    }
+
+    /**
+     * Evicts the skipped message keys of the signal sessions that are older than an age, then the oldest ones until at most a number of keys is left.
+     * A message whose key was evicted can't be decrypted anymore, so both limits should be generous.
+     *
+     * @param maxAge  the non-null maximum age of a key
+     * @param maxKeys the maximum number of keys across every session
+     * @return the number of evicted keys
+     */
+    public int evictSkippedMessageKeys(@NonNull Duration maxAge, int maxKeys) {
+        var stores = sessions.values()
+                .stream()
+                .flatMap(Session::skippedMessageKeys)
+                .toList();
+        var threshold = System.currentTimeMillis() - maxAge.toMillis();
+        var evicted = stores.stream()
+                .mapToInt(store -> store.evictOlderThan(threshold))
+                .sum();
+        var excess = stores.stream()
+                .mapToInt(SkippedMessageKeys::size)
+                .sum() - Math.max(maxKeys, 0);
+        if (excess <= 0) {
+            return evicted;
+        }
+
+        var oldest = new PriorityQueue<>(Comparator.comparingLong(SkippedMessageKeys::oldestTimestamp));
+        stores.stream()
+                .filter(store -> store.size() != 0)
+                .forEach(oldest::add);
+        for (; excess > 0 && !oldest.isEmpty(); excess--) {
+            var store = oldest.poll();
+            if (store.evictOldest()) {
+                evicted++;
+            }
+
+            if (store.size() != 0) {
+                oldest.add(store);
+            }
+        }
+
+        return evicted;
+    }
+
     /**
      * Get any available app key
      *
@@ -18,11 +18,13 @@ import it.auties.whatsapp.util.Clock;
 import it.auties.whatsapp.util.ConcurrentSet;
 import it.auties.whatsapp.util.InitializationLock;
 import it.auties.whatsapp.util.Preferences;
+import it.auties.whatsapp.util.TimingWheel;
 import lombok.*;
 import lombok.Builder.Default;
 import lombok.experimental.Accessors;
 import lombok.extern.jackson.Jacksonized;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -31,8 +33,6 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.concurrent.CompletableFuture.runAsync;
-import static java.util.concurrent.Executors.newScheduledThreadPool;
-import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 
 /**
  * This controller holds the user-related data regarding a WhatsappWeb session
@@ -44,10 +44,11 @@ import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 @SuppressWarnings({"unused", "UnusedReturnValue"})
 public final class Store implements Controller<Store> {
     /**
-     * All the known stores
+     * All the known stores, indexed by their id.
+     * Stores are weakly referenced so that a session that was released, for example because it was hibernated, can be collected.
      */
     @JsonIgnore
-    private static ConcurrentSet<Store> stores = new ConcurrentSet<>();
+    private static final ConcurrentHashMap<Integer, WeakReference<Store>> stores = new ConcurrentHashMap<>();
 
     /**
      * The session id of this store
@@ -92,12 +93,12 @@ public final class Store implements Controller<Store> {
     private boolean unarchiveChats;
 
     /**
-     * The non-null list of requests that are waiting for a response from Whatsapp
+     * The non-null map of requests that are waiting for a response from Whatsapp, indexed by their id
      */
     @NonNull
     @JsonIgnore
     @Default
-    private ConcurrentLinkedDeque<Request> pendingRequests = new ConcurrentLinkedDeque<>();
+    private ConcurrentHashMap<String, Request> pendingRequests = new ConcurrentHashMap<>();
 
     /**
      * The non-null list of listeners
@@ -135,13 +136,29 @@ public final class Store implements Controller<Store> {
     private long initializationTimeStamp = Clock.now();
 
     /**
-     * The non-null service used to call listeners.
+     * The service used to call listeners, set by the socket from the runtime of the session.
      * This is needed in order to not block the socket.
+     * Listeners are called one at a time and in order, on threads shared with the other sessions.
      */
-    @NonNull
     @JsonIgnore
-    @Default
-    private ScheduledExecutorService requestsService = newScheduledThreadPool(10);
+    @Setter
+    private Executor requestsService;
+
+    /**
+     * The wheel that times out the requests of this session, set by the socket from its runtime
+     */
+    @JsonIgnore
+    @Getter
+    @Setter
+    private TimingWheel timingWheel;
+
+    /**
+     * The executor that runs the timeouts of the requests of this session, set by the socket
+     */
+    @JsonIgnore
+    @Getter
+    @Setter
+    private Executor timeoutsExecutor;
 
     /**
      * The media connection associated with this store
@@ -167,8 +184,7 @@ public final class Store implements Controller<Store> {
                 .id(id)
                 .useDefaultSerializer(useDefaultSerializer)
                 .build();
-        stores.add(result);
-        return result;
+        return register(result);
     }
 
     /**
@@ -181,21 +197,33 @@ public final class Store implements Controller<Store> {
     public static Store of(int id, boolean useDefaultSerializer) {
         var preferences = Preferences.of("%s/store.gzip", id);
         return Optional.ofNullable(preferences.readJson(Store.class))
-                .map(store -> store.useDefaultSerializer(useDefaultSerializer))
+                .map(store -> register(store.useDefaultSerializer(useDefaultSerializer)))
                 .orElseGet(() -> random(id, useDefaultSerializer));
     }
 
+    private static Store register(Store store) {
+        stores.put(store.id(), new WeakReference<>(store));
+        return store;
+    }
+
     /**
-     * Queries the first store whose id is equal to {@code id}
+     * Queries the store whose id is equal to {@code id}
      *
      * @param id the id to search
-     * @return a non-empty Optional containing the first result if any is found otherwise an empty Optional
+     * @return a non-empty Optional containing the result if it's still in memory otherwise an empty Optional
      */
     public static Optional<Store> findStoreById(int id) {
-        return Collections.synchronizedSet(stores)
-                .parallelStream()
-                .filter(entry -> entry.id() == id)
-                .findFirst();
+        var reference = stores.get(id);
+        if (reference == null) {
+            return Optional.empty();
+        }
+
+        var result = reference.get();
+        if (result == null) {
+            stores.remove(id, reference);
+        }
+
+        return Optional.ofNullable(result);
     }
 
     /**
@@ -328,9 +356,7 @@ public final class Store implements Controller<Store> {
     public Optional<Request> findPendingRequest(String id) {
         return id == null ?
                 Optional.empty() :
-                pendingRequests.parallelStream()
-                        .filter(request -> Objects.equals(request.id(), id))
-                        .findAny();
+                Optional.ofNullable(pendingRequests.get(id));
     }
 
     /**
@@ -455,33 +481,27 @@ public final class Store implements Controller<Store> {
         contacts.clear();
         status.clear();
         listeners.clear();
-        pendingRequests.forEach(request -> request.complete(null, false));
+        var requests = new ArrayList<>(pendingRequests.values());
         pendingRequests.clear();
+        requests.forEach(request -> request.complete(null, false));
     }
 
     public void dispose() {
-        requestsService.shutdownNow();
         serialize();
     }
 
     /**
-     * Executes an operation on every registered listener on the listener thread
-     * This should be used to be sure that when a listener should be called it's called on a thread that is not the WebSocket's.
-     * If this condition isn't met, if the thread is put on hold to wait for a response for a pending request, the WebSocket will freeze.
+     * Executes an operation on every registered listener on the listener thread, returning a future that completes when every listener was called.
+     * The calling thread never waits for the listeners: the thread of the WebSocket must keep reading, as a listener may be waiting for the response to a request that it would deliver.
      *
      * @param consumer the operation to execute
+     * @return a non-null future
      */
-    @SneakyThrows
-    public void invokeListeners(Consumer<Listener> consumer) {
-        if (requestsService.isShutdown()) {
-            this.requestsService = newSingleThreadScheduledExecutor();
-        }
-
+    public CompletableFuture<Void> invokeListeners(Consumer<Listener> consumer) {
         var futures = listeners.stream()
                 .map(listener -> runAsync(() -> consumer.accept(listener), requestsService))
                 .toArray(CompletableFuture[]::new);
-        CompletableFuture.allOf(futures)
-                .get();
+        return CompletableFuture.allOf(futures);
     }
 
     /**
@@ -496,15 +516,11 @@ public final class Store implements Controller<Store> {
     }
 
     private void callListener(Consumer<Listener> consumer, Listener listener) {
-        if (requestsService.isShutdown()) {
-            this.requestsService = newSingleThreadScheduledExecutor();
-        }
-
         requestsService.execute(() -> consumer.accept(listener));
     }
 
     private Request deleteAndComplete(Node response, Request request, boolean exceptionally) {
-        pendingRequests.remove(request);
+        pendingRequests.remove(request.id(), request);
         request.complete(response, exceptionally);
         return request;
     }
@@ -578,13 +594,21 @@ public final class Store implements Controller<Store> {
     }
 
     /**
-     * Add a pending request to this store
+     * Add a pending request to this store.
+     * The request is removed when it's completed, even if it times out.
+     * Requests without an id cannot be matched with a response, so they are ignored.
      *
      * @param request the non-null status to add
      * @return the same instance
      */
     public Store addPendingRequest(@NonNull Request request) {
-        pendingRequests.add(request);
+        if (request.id() == null) {
+            return this;
+        }
+
+        pendingRequests.put(request.id(), request);
+        request.future()
+                .whenComplete((ignored, throwable) -> pendingRequests.remove(request.id(), request));
         return this;
     }
 
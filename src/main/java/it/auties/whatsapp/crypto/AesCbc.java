@@ -1,8 +1,7 @@
 package it.auties.whatsapp.crypto;
 
-import it.auties.bytes.Bytes;
+import it.auties.whatsapp.util.BoundedPool;
 import it.auties.whatsapp.util.Validate;
-import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
 import javax.crypto.Cipher;
@@ -17,37 +16,85 @@ public class AesCbc {
     private final String AES = "AES";
     private final int AES_BLOCK_SIZE = 16;
 
+    private final BoundedPool<Cipher> ENGINES = new BoundedPool<>(() -> Cipher.getInstance(AES_CBC));
+
     public byte[] encryptAndPrefix(byte[] plaintext, byte[] key) {
-        var iv = ofRandom(AES_BLOCK_SIZE);
-        var encrypted = encrypt(iv.toByteArray(), plaintext, key);
-        return iv.append(encrypted)
-                .toByteArray();
+        var iv = ofRandom(AES_BLOCK_SIZE).toByteArray();
+        var result = new byte[AES_BLOCK_SIZE + outputSize(plaintext.length)];
+        System.arraycopy(iv, 0, result, 0, AES_BLOCK_SIZE);
+        encrypt(iv, plaintext, key, result, AES_BLOCK_SIZE);
+        return result;
     }
 
-    @SneakyThrows
     public byte[] encrypt(byte[] iv, byte[] plaintext, byte[] key) {
-        var cipher = Cipher.getInstance(AES_CBC);
-        var keySpec = new SecretKeySpec(key, AES);
-        cipher.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(iv));
-        return cipher.doFinal(plaintext);
+        return ENGINES.use(cipher -> {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, AES), new IvParameterSpec(iv));
+            return cipher.doFinal(plaintext);
+        });
+    }
+
+    /**
+     * Encrypts a message into a buffer
+     *
+     * @param iv        the iv
+     * @param plaintext the message
+     * @param key       the key
+     * @param output    the buffer, it needs {@link AesCbc#outputSize(int)} bytes after the offset
+     * @param offset    the offset in the buffer
+     * @return the number of bytes written
+     */
+    public int encrypt(byte[] iv, byte[] plaintext, byte[] key, byte[] output, int offset) {
+        return ENGINES.use(cipher -> {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, AES), new IvParameterSpec(iv));
+            return cipher.doFinal(plaintext, 0, plaintext.length, output, offset);
+        });
+    }
+
+    /**
+     * Returns the size of the encrypted message for a message of the given length
+     *
+     * @param length the length of the message
+     * @return a positive int
+     */
+    public int outputSize(int length) {
+        return (length / AES_BLOCK_SIZE + 1) * AES_BLOCK_SIZE;
     }
 
     public byte[] decrypt(byte[] encrypted, byte[] key) {
-        var binary = Bytes.of(encrypted);
-        var iv = binary.cut(16)
-                .toByteArray();
-        var encryptedNoIv = binary.slice(16)
-                .toByteArray();
-        return decrypt(iv, encryptedNoIv, key);
+        Validate.isTrue(encrypted.length >= AES_BLOCK_SIZE, "Invalid encrypted size");
+        var iv = new IvParameterSpec(encrypted, 0, AES_BLOCK_SIZE);
+        return decrypt(iv, encrypted, AES_BLOCK_SIZE, encrypted.length - AES_BLOCK_SIZE, key);
     }
 
-    @SneakyThrows
     public byte[] decrypt(byte[] iv, byte[] encrypted, byte[] key) {
+        Validate.isTrue(iv.length == AES_BLOCK_SIZE, "Invalid iv size: expected %s, got %s", AES_BLOCK_SIZE, iv.length);
+        return decrypt(new IvParameterSpec(iv), encrypted, 0, encrypted.length, key);
+    }
+
+    /**
+     * Decrypts a message into a buffer
+     *
+     * @param iv        the iv
+     * @param encrypted the encrypted message
+     * @param key       the key
+     * @param output    the buffer, it needs as many bytes as the encrypted message after the offset
+     * @param offset    the offset in the buffer
+     * @return the number of bytes written
+     */
+    public int decrypt(byte[] iv, byte[] encrypted, byte[] key, byte[] output, int offset) {
         Validate.isTrue(iv.length == AES_BLOCK_SIZE, "Invalid iv size: expected %s, got %s", AES_BLOCK_SIZE, iv.length);
         Validate.isTrue(encrypted.length % AES_BLOCK_SIZE == 0, "Invalid encrypted size");
-        var cipher = Cipher.getInstance(AES_CBC);
-        var keySpec = new SecretKeySpec(key, AES);
-        cipher.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(iv));
-        return cipher.doFinal(encrypted);
+        return ENGINES.use(cipher -> {
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, AES), new IvParameterSpec(iv));
+            return cipher.doFinal(encrypted, 0, encrypted.length, output, offset);
+        });
+    }
+
+    private byte[] decrypt(IvParameterSpec iv, byte[] encrypted, int offset, int length, byte[] key) {
+        Validate.isTrue(length % AES_BLOCK_SIZE == 0, "Invalid encrypted size");
+        return ENGINES.use(cipher -> {
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, AES), iv);
+            return cipher.doFinal(encrypted, offset, length);
+        });
     }
 }
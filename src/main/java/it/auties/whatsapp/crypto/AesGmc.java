@@ -1,6 +1,7 @@
 package it.auties.whatsapp.crypto;
 
 import it.auties.bytes.Bytes;
+import it.auties.whatsapp.util.BytesHelper;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import org.bouncycastle.crypto.engines.AESEngine;
@@ -8,6 +9,8 @@ import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 
+import java.nio.ByteBuffer;
+
 public record AesGmc(@NonNull GCMBlockCipher cipher) {
     private static final int NONCE = 128;
 
@@ -29,12 +32,31 @@ public record AesGmc(@NonNull GCMBlockCipher cipher) {
                 .toByteArray();
     }
 
-    @SneakyThrows
     public byte[] encrypt(byte[] bytes) {
-        var outputLength = cipher.getOutputSize(bytes.length);
-        var output = new byte[outputLength];
-        var outputOffset = cipher.processBytes(bytes, 0, bytes.length, output, 0);
-        cipher.doFinal(output, outputOffset);
+        return encrypt(bytes, 0, bytes.length);
+    }
+
+    public byte[] encrypt(byte[] bytes, int offset, int length) {
+        var output = new byte[outputSize(length)];
+        encrypt(bytes, offset, length, output, 0);
         return output;
     }
+
+    @SneakyThrows
+    public int encrypt(byte[] bytes, int offset, int length, byte[] output, int outputOffset) {
+        var written = cipher.processBytes(bytes, offset, length, output, outputOffset);
+        return written + cipher.doFinal(output, outputOffset + written);
+    }
+
+    public int outputSize(int length) {
+        return cipher.getOutputSize(length);
+    }
+
+    public byte[] encrypt(@NonNull ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return encrypt(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        return encrypt(BytesHelper.bufferToBytes(buffer));
+    }
 }
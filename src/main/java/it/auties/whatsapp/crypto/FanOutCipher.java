@@ -0,0 +1,75 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.util.StripedLock;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static it.auties.whatsapp.model.request.Node.withChildren;
+import static java.util.Map.of;
+
+/**
+ * Encrypts the same message for many devices, like the devices of a conversation or the participants of a group.
+ * Devices are split in chunks that are encrypted in parallel, while the ratchet of each device is advanced while holding the lock of its address.
+ * The result always follows the order of the devices, so the participants node is the same regardless of how the chunks are scheduled.
+ *
+ * @param keys     the non-null keys of the session
+ * @param locks    the non-null locks of the signal addresses
+ * @param executor the non-null executor that encrypts the chunks
+ */
+public record FanOutCipher(@NonNull Keys keys, @NonNull StripedLock locks, @NonNull Executor executor) {
+    private static final int MIN_CHUNK_SIZE = 16;
+
+    /**
+     * Encrypts a message for every device
+     *
+     * @param devices the non-null devices, each of them needs a session
+     * @param message the non-null message
+     * @return a future that completes with a "to" node for each device, in the same order as the devices
+     */
+    public CompletableFuture<List<Node>> encrypt(@NonNull List<ContactJid> devices, byte @NonNull [] message) {
+        var parallelism = Runtime.getRuntime()
+                .availableProcessors();
+        if (devices.size() <= MIN_CHUNK_SIZE || parallelism == 1) {
+            return CompletableFuture.completedFuture(encryptChunk(devices, message));
+        }
+
+        var chunkSize = Math.max(MIN_CHUNK_SIZE, (devices.size() + parallelism - 1) / parallelism);
+        var chunks = new ArrayList<CompletableFuture<List<Node>>>();
+        for (var start = 0; start < devices.size(); start += chunkSize) {
+            var chunk = devices.subList(start, Math.min(start + chunkSize, devices.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> encryptChunk(chunk, message), executor));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> join(chunks, devices.size()));
+    }
+
+    private List<Node> encryptChunk(List<ContactJid> devices, byte[] message) {
+        var results = new ArrayList<Node>(devices.size());
+        for (var device : devices) {
+            results.add(encrypt(device, message));
+        }
+
+        return results;
+    }
+
+    private Node encrypt(ContactJid device, byte[] message) {
+        var address = device.toSignalAddress();
+        var cipher = new SessionCipher(address, keys);
+        var encrypted = locks.lock(address, () -> cipher.encrypt(message));
+        return withChildren("to", of("jid", device), encrypted);
+    }
+
+    private List<Node> join(List<CompletableFuture<List<Node>>> chunks, int size) {
+        var results = new ArrayList<Node>(size);
+        chunks.forEach(chunk -> results.addAll(chunk.join()));
+        return results;
+    }
+}
@@ -10,6 +10,9 @@ import it.auties.whatsapp.util.SignalSpecification;
 import it.auties.whatsapp.util.Validate;
 import lombok.NonNull;
 
+import java.util.ArrayList;
+
+import static it.auties.whatsapp.model.signal.sender.SenderKeyState.MAX_MESSAGE_KEYS;
 import static it.auties.whatsapp.model.request.Node.with;
 import static java.util.Map.of;
 
@@ -43,23 +46,25 @@ public record GroupCipher(@NonNull SenderKeyName name, @NonNull Keys keys) imple
     private SenderMessageKey getSenderKey(SenderKeyState senderKeyState, int iteration) {
         if (senderKeyState.chainKey()
                 .iteration() > iteration) {
-            Validate.isTrue(senderKeyState.hasSenderMessageKey(iteration), "Received message with old counter: %s, %s",
-                    senderKeyState.chainKey()
-                            .iteration(), iteration);
-            return senderKeyState.removeSenderMessageKey(iteration);
+            var senderKey = senderKeyState.removeSenderMessageKey(iteration);
+            Validate.isTrue(senderKey != null, "Received message with old counter: %s, %s", senderKeyState.chainKey()
+                    .iteration(), iteration);
+            return senderKey;
         }
 
-        Validate.isTrue(senderKeyState.chainKey()
-                        .iteration() - iteration <= 2000, "Message overflow: expected <= 2000, got %s",
-                senderKeyState.chainKey()
-                        .iteration() - iteration);
+        Validate.isTrue(iteration - senderKeyState.chainKey()
+                        .iteration() <= MAX_MESSAGE_KEYS, "Message overflow: expected <= %s, got %s", MAX_MESSAGE_KEYS,
+                iteration - senderKeyState.chainKey()
+                        .iteration());
 
+        var skippedKeys = new ArrayList<SenderMessageKey>();
         var lastChainKey = senderKeyState.chainKey();
         while (lastChainKey.iteration() < iteration) {
-            senderKeyState.addSenderMessageKey(lastChainKey.toMessageKey());
+            skippedKeys.add(lastChainKey.toMessageKey());
             lastChainKey = lastChainKey.next();
         }
 
+        senderKeyState.addSenderMessageKeys(skippedKeys);
         senderKeyState.chainKey(lastChainKey.next());
         return lastChainKey.toMessageKey();
     }
@@ -1,14 +1,10 @@
 package it.auties.whatsapp.crypto;
 
-import it.auties.bytes.Bytes;
 import it.auties.whatsapp.util.SignalSpecification;
 import it.auties.whatsapp.util.Validate;
-import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
-import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.ByteArrayOutputStream;
 
 @UtilityClass
 public class Hkdf implements SignalSpecification {
@@ -28,37 +24,26 @@ public class Hkdf implements SignalSpecification {
         return deriveSecrets(input, salt, info, 3);
     }
 
-    @SneakyThrows
     public byte[][] deriveSecrets(byte[] input, byte[] salt, byte[] info, int chunks) {
         Validate.isTrue(salt.length == KEY_LENGTH, "Incorrect salt length: %s", salt.length);
         Validate.isTrue(chunks >= 1 && chunks <= 3, "Incorrect number of chunks: %s", chunks);
+        return Hmac.SHA_256_ENGINES.use(mac -> {
+            mac.init(new SecretKeySpec(salt, HMAC_SHA_256));
+            var prk = mac.doFinal(input);
+            mac.init(new SecretKeySpec(prk, HMAC_SHA_256));
+            var signed = new byte[chunks][];
+            for (var index = 0; index < chunks; index++) {
+                if (index != 0) {
+                    mac.update(signed[index - 1]);
+                }
 
-        var prk = Hmac.calculateSha256(input, salt);
-        var result = Bytes.newBuffer(KEY_LENGTH)
-                .append(info)
-                .append(1)
-                .toByteArray();
-
-        var signed = new byte[chunks][];
-        var key = Bytes.of(result)
-                .slice(KEY_LENGTH)
-                .toByteArray();
-        var first = Hmac.calculateSha256(key, prk);
-        signed[0] = first;
-
-        if (chunks > 1) {
-            System.arraycopy(first, 0, result, 0, first.length);
-            result[result.length - 1] = 2;
-            signed[1] = Hmac.calculateSha256(result, prk);
-        }
-
-        if (chunks > 2) {
-            System.arraycopy(signed[1], 0, result, 0, signed[1].length);
-            result[result.length - 1] = 3;
-            signed[2] = Hmac.calculateSha256(result, prk);
-        }
+                mac.update(info);
+                mac.update((byte) (index + 1));
+                signed[index] = mac.doFinal();
+            }
 
-        return signed;
+            return signed;
+        });
     }
 
     public byte[] extractAndExpand(byte[] inputKeyMaterial, byte[] info, int outputLength) {
@@ -70,34 +55,35 @@ public class Hkdf implements SignalSpecification {
         return expand(prk, info, outputLength);
     }
 
-    @SneakyThrows
     private byte[] extract(byte[] salt, byte[] inputKeyMaterial) {
-        var mac = Mac.getInstance(HMAC_SHA_256);
-        mac.init(new SecretKeySpec(salt, HMAC_SHA_256));
-        return mac.doFinal(inputKeyMaterial);
+        return Hmac.SHA_256_ENGINES.use(mac -> {
+            mac.init(new SecretKeySpec(salt, HMAC_SHA_256));
+            return mac.doFinal(inputKeyMaterial);
+        });
     }
 
-    @SneakyThrows
     private byte[] expand(byte[] prk, byte[] info, int outputSize) {
-        var iterations = (int) Math.ceil((double) outputSize / (double) HASH_OUTPUT_SIZE);
-        var mixin = new byte[0];
-        var results = new ByteArrayOutputStream();
-        for (var index = ITERATION_START_OFFSET; index < iterations + ITERATION_START_OFFSET; index++) {
-            var mac = Mac.getInstance(HMAC_SHA_256);
+        return Hmac.SHA_256_ENGINES.use(mac -> {
             mac.init(new SecretKeySpec(prk, HMAC_SHA_256));
-            mac.update(mixin);
-            if (info != null)
-                mac.update(info);
-            mac.update((byte) index);
-
-            var stepResult = mac.doFinal();
-            var stepSize = Math.min(outputSize, stepResult.length);
-            results.write(stepResult, 0, stepSize);
-
-            mixin = stepResult;
-            outputSize -= stepSize;
-        }
-
-        return results.toByteArray();
+            var result = new byte[outputSize];
+            var mixin = new byte[HASH_OUTPUT_SIZE];
+            var mixinLength = 0;
+            var offset = 0;
+            for (var index = ITERATION_START_OFFSET; offset < outputSize; index++) {
+                mac.update(mixin, 0, mixinLength);
+                if (info != null) {
+                    mac.update(info);
+                }
+
+                mac.update((byte) index);
+                mac.doFinal(mixin, 0);
+                mixinLength = HASH_OUTPUT_SIZE;
+                var stepSize = Math.min(outputSize - offset, HASH_OUTPUT_SIZE);
+                System.arraycopy(mixin, 0, result, offset, stepSize);
+                offset += stepSize;
+            }
+
+            return result;
+        });
     }
 }
@@ -1,7 +1,7 @@
 package it.auties.whatsapp.crypto;
 
+import it.auties.whatsapp.util.BoundedPool;
 import lombok.NonNull;
-import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
 import javax.crypto.Mac;
@@ -12,18 +12,42 @@ public class Hmac {
     private final String HMAC_SHA_256 = "HmacSHA256";
     private final String HMAC_SHA_512 = "HmacSHA512";
 
+    final BoundedPool<Mac> SHA_256_ENGINES = new BoundedPool<>(() -> Mac.getInstance(HMAC_SHA_256));
+    private final BoundedPool<Mac> SHA_512_ENGINES = new BoundedPool<>(() -> Mac.getInstance(HMAC_SHA_512));
+
     public byte[] calculateSha256(byte @NonNull [] plain, byte @NonNull [] key) {
-        return calculate(HMAC_SHA_256, plain, key);
+        return calculate(SHA_256_ENGINES, HMAC_SHA_256, plain, key);
+    }
+
+    /**
+     * Calculates the sha256 hmac of a message into a buffer
+     *
+     * @param plain  the non-null message
+     * @param key    the non-null key
+     * @param output the non-null buffer, it needs 32 bytes after the offset
+     * @param offset the offset in the buffer
+     */
+    public void calculateSha256(byte @NonNull [] plain, byte @NonNull [] key, byte @NonNull [] output, int offset) {
+        calculate(SHA_256_ENGINES, HMAC_SHA_256, plain, key, output, offset);
     }
 
     public byte[] calculateSha512(byte @NonNull [] plain, byte @NonNull [] key) {
-        return calculate(HMAC_SHA_512, plain, key);
+        return calculate(SHA_512_ENGINES, HMAC_SHA_512, plain, key);
+    }
+
+    private byte[] calculate(BoundedPool<Mac> engines, String algorithm, byte[] plain, byte[] key) {
+        return engines.use(mac -> {
+            mac.init(new SecretKeySpec(key, algorithm));
+            return mac.doFinal(plain);
+        });
     }
 
-    @SneakyThrows
-    private byte[] calculate(String algorithm, byte[] plain, byte[] key) {
-        var localMac = Mac.getInstance(algorithm);
-        localMac.init(new SecretKeySpec(key, algorithm));
-        return localMac.doFinal(plain);
+    private void calculate(BoundedPool<Mac> engines, String algorithm, byte[] plain, byte[] key, byte[] output, int offset) {
+        engines.use(mac -> {
+            mac.init(new SecretKeySpec(key, algorithm));
+            mac.update(plain);
+            mac.doFinal(output, offset);
+            return null;
+        });
     }
 }
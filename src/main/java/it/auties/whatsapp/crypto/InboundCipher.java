@@ -0,0 +1,80 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.signal.message.SignalMessage;
+import it.auties.whatsapp.model.signal.message.SignalPreKeyMessage;
+import it.auties.whatsapp.model.signal.sender.SenderKeyName;
+import it.auties.whatsapp.util.StripedLock;
+import lombok.NonNull;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Decrypts the enc nodes of incoming messages.
+ * The session or sender key of each message is locked by its address or name while its ratchet is advanced, so messages from unrelated senders can be decrypted in parallel.
+ *
+ * @param keys  the non-null keys of the session
+ * @param locks the non-null locks of the signal addresses
+ */
+public record InboundCipher(@NonNull Keys keys, @NonNull StripedLock locks) {
+    /**
+     * The type of messages encrypted with a sender key
+     */
+    public static final String SKMSG = "skmsg";
+
+    /**
+     * The type of messages that establish a session
+     */
+    public static final String PKMSG = "pkmsg";
+
+    /**
+     * The type of messages encrypted with an established session
+     */
+    public static final String MSG = "msg";
+
+    /**
+     * Decrypts the content of an enc node
+     *
+     * @param from        the non-null jid that sent the message, a user or a group
+     * @param participant the jid of the sender if the message was sent in a group, otherwise null
+     * @param encrypted   the non-null content of the enc node
+     * @param type        the non-null type of the enc node
+     * @return the decrypted message, or an empty optional if a pkmsg was already decrypted
+     */
+    public Optional<byte[]> decrypt(@NonNull ContactJid from, ContactJid participant, byte @NonNull [] encrypted,
+                                    @NonNull String type) {
+        return switch (type) {
+            case SKMSG -> {
+                Objects.requireNonNull(participant, "Cannot decipher skmsg without participant");
+                var senderName = new SenderKeyName(from.toString(), participant.toSignalAddress());
+                var cipher = new GroupCipher(senderName, keys);
+                yield Optional.ofNullable(locks.lock(senderName, () -> cipher.decrypt(encrypted)));
+            }
+
+            case PKMSG -> {
+                var address = sender(from, participant, type).toSignalAddress();
+                var cipher = new SessionCipher(address, keys);
+                var preKey = SignalPreKeyMessage.ofSerialized(encrypted);
+                yield locks.lock(address, () -> cipher.decrypt(preKey));
+            }
+
+            case MSG -> {
+                var address = sender(from, participant, type).toSignalAddress();
+                var cipher = new SessionCipher(address, keys);
+                var message = SignalMessage.ofSerialized(encrypted);
+                yield Optional.ofNullable(locks.lock(address, () -> cipher.decrypt(message)));
+            }
+
+            default -> throw new IllegalArgumentException("Unsupported encoded message type: %s".formatted(type));
+        };
+    }
+
+    private ContactJid sender(ContactJid from, ContactJid participant, String type) {
+        var user = from.hasServer(ContactJid.Server.WHATSAPP) ?
+                from :
+                participant;
+        return Objects.requireNonNull(user, "Cannot decipher %s without user".formatted(type));
+    }
+}
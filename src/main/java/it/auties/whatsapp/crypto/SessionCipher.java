@@ -16,6 +16,7 @@ import it.auties.whatsapp.util.SignalSpecification;
 import it.auties.whatsapp.util.Validate;
 import lombok.NonNull;
 
+import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
@@ -25,9 +26,18 @@ import java.util.function.Supplier;
 import static it.auties.curve25519.Curve25519.sharedKey;
 import static it.auties.whatsapp.model.request.Node.with;
 import static java.util.Map.of;
+import static it.auties.whatsapp.model.signal.session.SkippedMessageKeys.MAX_KEYS;
 import static java.util.Objects.requireNonNull;
 
 public record SessionCipher(@NonNull SessionAddress address, @NonNull Keys keys) implements SignalSpecification {
+    private static final byte[] MESSAGE_KEYS_INFO = "WhisperMessageKeys".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] MESSAGE_KEY_SEED = {1};
+
+    private static final byte[] CHAIN_KEY_SEED = {2};
+
+    private static final String HMAC_SHA_256 = "HmacSHA256";
+
     public Node encrypt(byte @NonNull [] data) {
         var currentState = loadSession().currentState();
         Validate.isTrue(keys.hasTrust(address, currentState.remoteIdentityKey()), "Untrusted key",
@@ -39,14 +49,10 @@ public record SessionCipher(@NonNull SessionAddress address, @NonNull Keys keys)
         fillMessageKeys(chain, chain.counter() + 1);
 
         var currentKey = chain.messageKeys()
-                .get(chain.counter());
-        var secrets = Hkdf.deriveSecrets(currentKey, "WhisperMessageKeys".getBytes(StandardCharsets.UTF_8));
-        chain.messageKeys()
                 .remove(chain.counter());
+        var secrets = Hkdf.deriveSecrets(currentKey, MESSAGE_KEYS_INFO);
 
-        var iv = Bytes.of(secrets[2])
-                .cut(IV_LENGTH)
-                .toByteArray();
+        var iv = Arrays.copyOf(secrets[2], IV_LENGTH);
         var encrypted = AesCbc.encrypt(iv, data, secrets[0]);
 
         var encryptedMessageType = getMessageType(currentState);
@@ -86,9 +92,7 @@ public record SessionCipher(@NonNull SessionAddress address, @NonNull Keys keys)
                 .append(encodedMessage)
                 .assertSize(encodedMessage.length + 33 + 33)
                 .toByteArray();
-        return Bytes.of(Hmac.calculateSha256(macInput, key))
-                .cut(MAC_LENGTH)
-                .toByteArray();
+        return Arrays.copyOf(Hmac.calculateSha256(macInput, key), MAC_LENGTH);
     }
 
     private void fillMessageKeys(SessionChain chain, int counter) {
@@ -96,19 +100,22 @@ public record SessionCipher(@NonNull SessionAddress address, @NonNull Keys keys)
             return;
         }
 
-        Validate.isTrue(counter - chain.counter() <= 2000, "Message overflow: expected <= 2000, got %s",
+        Validate.isTrue(counter - chain.counter() <= MAX_KEYS, "Message overflow: expected <= %s, got %s", MAX_KEYS,
                 counter - chain.counter());
         Validate.isTrue(chain.key() != null, "Closed chain");
-
-        var messagesHmac = Hmac.calculateSha256(new byte[]{1}, chain.key());
-        chain.messageKeys()
-                .put(chain.counter() + 1, messagesHmac);
-
-        var keyHmac = Hmac.calculateSha256(new byte[]{2}, chain.key());
-        chain.key(keyHmac);
-
-        chain.incrementCounter();
-        fillMessageKeys(chain, counter);
+        var chainKey = Hmac.SHA_256_ENGINES.use(mac -> {
+            var currentKey = chain.key();
+            for (var next = chain.counter() + 1; next <= counter; next++) {
+                mac.init(new SecretKeySpec(currentKey, HMAC_SHA_256));
+                chain.messageKeys()
+                        .put(next, mac.doFinal(MESSAGE_KEY_SEED));
+                currentKey = mac.doFinal(CHAIN_KEY_SEED);
+            }
+
+            return currentKey;
+        });
+        chain.key(chainKey);
+        chain.counter(counter);
     }
 
     public Optional<byte[]> decrypt(SignalPreKeyMessage message) {
@@ -152,16 +159,13 @@ public record SessionCipher(@NonNull SessionAddress address, @NonNull Keys keys)
         var chain = state.findChain(message.ephemeralPublicKey())
                 .orElseThrow(() -> new NoSuchElementException("Invalid chain"));
         fillMessageKeys(chain, message.counter());
-        if(!chain.hasMessageKey(message.counter())){
-            return Optional.empty();
-        }
-
         var messageKey = chain.messageKeys()
-                .get(message.counter());
-        chain.messageKeys()
                 .remove(message.counter());
+        if (messageKey == null) {
+            return Optional.empty();
+        }
 
-        var secrets = Hkdf.deriveSecrets(messageKey, "WhisperMessageKeys".getBytes(StandardCharsets.UTF_8));
+        var secrets = Hkdf.deriveSecrets(messageKey, MESSAGE_KEYS_INFO);
 
         var hmacInput = Bytes.of(state.remoteIdentityKey())
                 .append(keys.identityKeyPair()
@@ -169,14 +173,10 @@ public record SessionCipher(@NonNull SessionAddress address, @NonNull Keys keys)
                 .append(message.serialized())
                 .cut(-MAC_LENGTH)
                 .toByteArray();
-        var hmac = Bytes.of(Hmac.calculateSha256(hmacInput, secrets[1]))
-                .cut(MAC_LENGTH)
-                .toByteArray();
+        var hmac = Arrays.copyOf(Hmac.calculateSha256(hmacInput, secrets[1]), MAC_LENGTH);
         Validate.isTrue(Arrays.equals(message.signature(), hmac), "message_decryption", HmacValidationException.class);
 
-        var iv = Bytes.of(secrets[2])
-                .cut(IV_LENGTH)
-                .toByteArray();
+        var iv = Arrays.copyOf(secrets[2], IV_LENGTH);
         var plaintext = AesCbc.decrypt(iv, message.ciphertext(), secrets[0]);
         state.pendingPreKey(null);
         return Optional.of(plaintext);
@@ -1,7 +1,7 @@
 package it.auties.whatsapp.crypto;
 
+import it.auties.whatsapp.util.BoundedPool;
 import lombok.NonNull;
-import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
 import java.security.MessageDigest;
@@ -9,11 +9,29 @@ import java.security.MessageDigest;
 @UtilityClass
 public class Sha256 {
     private final String SHA_256 = "SHA-256";
+    private final int SHA_256_LENGTH = 32;
+
+    private final BoundedPool<MessageDigest> ENGINES = new BoundedPool<>(() -> MessageDigest.getInstance(SHA_256));
 
-    @SneakyThrows
     public byte[] calculate(byte @NonNull [] data) {
-        var digest = MessageDigest.getInstance(SHA_256);
-        digest.update(data);
-        return digest.digest();
+        return ENGINES.use(digest -> {
+            digest.reset();
+            return digest.digest(data);
+        });
+    }
+
+    /**
+     * Calculates the sha256 hash of some data into a buffer
+     *
+     * @param data   the non-null data
+     * @param output the non-null buffer, it needs 32 bytes after the offset
+     * @param offset the offset in the buffer
+     */
+    public void calculate(byte @NonNull [] data, byte @NonNull [] output, int offset) {
+        ENGINES.use(digest -> {
+            digest.reset();
+            digest.update(data);
+            return digest.digest(output, offset, SHA_256_LENGTH);
+        });
     }
 }
@@ -0,0 +1,113 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import it.auties.whatsapp.util.BytesHelper;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+
+/**
+ * The AES-GCM cipher of one direction of the noise transport.
+ * The JDK cipher is created once per key, so its key schedule is reused by every frame and only the nonce changes, and it uses the AES and GHASH intrinsics of the CPU when available.
+ * The nonce of a frame is its counter, big endian, in the last eight bytes of a twelve bytes array.
+ * This class isn't thread safe: each direction is used by a single thread at a time, the writer holding the lock of the socket or the reader of the transport.
+ */
+public final class TransportCipher {
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+
+    private static final String AES = "AES";
+
+    private static final int TAG_LENGTH = 16;
+
+    private static final int IV_LENGTH = 12;
+
+    private final SecretKeySpec key;
+
+    private final Cipher cipher;
+
+    private final byte[] iv;
+
+    /**
+     * Constructs a new cipher
+     *
+     * @param key the non-null key of the direction
+     */
+    @SneakyThrows
+    public TransportCipher(@NonNull Bytes key) {
+        this.key = new SecretKeySpec(key.toByteArray(), AES);
+        this.cipher = Cipher.getInstance(AES_GCM);
+        this.iv = new byte[IV_LENGTH];
+    }
+
+    /**
+     * Returns the size of a frame after it's encrypted
+     *
+     * @param length the length of the plain frame
+     * @return a positive int
+     */
+    public int outputSize(int length) {
+        return length + TAG_LENGTH;
+    }
+
+    /**
+     * Encrypts a frame into a buffer provided by the caller
+     *
+     * @param counter      the counter of the frame
+     * @param input        the non-null array that holds the plain frame
+     * @param offset       the offset of the plain frame
+     * @param length       the length of the plain frame
+     * @param output       the non-null array where the encrypted frame should be written, it can be the input array
+     * @param outputOffset the offset where the encrypted frame should be written
+     * @return the number of bytes written
+     */
+    @SneakyThrows
+    public int encrypt(long counter, byte @NonNull [] input, int offset, int length, byte @NonNull [] output,
+                       int outputOffset) {
+        init(Cipher.ENCRYPT_MODE, counter);
+        return cipher.doFinal(input, offset, length, output, outputOffset);
+    }
+
+    /**
+     * Decrypts a frame.
+     * The result is always a new array, as the nodes decoded from it reference it.
+     *
+     * @param counter the counter of the frame
+     * @param input   the non-null encrypted frame, consumed by this call
+     * @return a non-null array
+     * @throws javax.crypto.AEADBadTagException if the frame wasn't authenticated
+     */
+    @SneakyThrows
+    public byte[] decrypt(long counter, @NonNull ByteBuffer input) {
+        if (input.remaining() < TAG_LENGTH) {
+            throw new IllegalArgumentException("Cannot decrypt frame: expected at least %s bytes, got %s".formatted(
+                    TAG_LENGTH, input.remaining()));
+        }
+
+        init(Cipher.DECRYPT_MODE, counter);
+        var output = new byte[input.remaining() - TAG_LENGTH];
+        // The array overload is much faster than the buffer one in the GCM implementation of the JDK, so direct buffers are copied
+        if (!input.hasArray()) {
+            var encrypted = BytesHelper.bufferToBytes(input);
+            input.position(input.limit());
+            cipher.doFinal(encrypted, 0, encrypted.length, output, 0);
+            return output;
+        }
+
+        cipher.doFinal(input.array(), input.arrayOffset() + input.position(), input.remaining(), output, 0);
+        input.position(input.limit());
+        return output;
+    }
+
+    private void init(int mode, long counter) throws Exception {
+        for (var index = IV_LENGTH - 1; index >= IV_LENGTH - Long.BYTES; index--) {
+            iv[index] = (byte) counter;
+            counter >>>= 8;
+        }
+
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+    }
+}
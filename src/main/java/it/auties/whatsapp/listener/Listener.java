@@ -21,6 +21,9 @@ import java.util.Map;
  * A listener can be registered manually using {@link Whatsapp#addListener(Listener)}.
  * Otherwise, it can be registered by annotating it with the {@link RegisterListener} annotation.
  * To disable the latter, check out {@link it.auties.whatsapp.api.Whatsapp.Options#autodetectListeners()}.
+ * The listeners of a session are called one at a time, in the order of the events, on threads shared with the other sessions of the same {@link it.auties.whatsapp.api.WhatsappRuntime}.
+ * For this reason, a listener shouldn't block, for example waiting for the response to a request: the events of its session would be delayed and a shared thread would be held.
+ * Long operations should be chained on the returned futures or moved to another executor instead.
  */
 @SuppressWarnings("unused")
 public interface Listener {
@@ -9,6 +9,7 @@ import lombok.NonNull;
 import lombok.Value;
 import lombok.experimental.Accessors;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.util.*;
@@ -120,6 +121,8 @@ public class GroupMetadata implements ProtobufMessage {
             case null -> null;
             case String string -> string;
             case byte[] bytes -> new String(bytes, StandardCharsets.UTF_8);
+            case ByteBuffer buffer -> StandardCharsets.UTF_8.decode(buffer.duplicate())
+                    .toString();
             default -> throw new IllegalArgumentException("Illegal body type: %s".formatted(wrapper.content()
                     .getClass()
                     .getName()));
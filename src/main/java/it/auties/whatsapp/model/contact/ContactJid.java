@@ -2,6 +2,8 @@ package it.auties.whatsapp.model.contact;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import it.auties.protobuf.api.exception.ProtobufSerializationException;
 import it.auties.protobuf.api.model.ProtobufConverter;
 import it.auties.protobuf.api.model.ProtobufMessage;
@@ -15,16 +17,37 @@ import lombok.experimental.Accessors;
 
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * A model class that represents a jid.
  * This class is only a model, this means that changing its values will have no real effect on WhatsappWeb's servers.
  * This class also offers a builder, accessible using {@link ContactJid#builder()}.
+ * Jids created by the static factories of this class are canonical instances taken from a bounded cache, so equal jids are usually the same object.
  */
 @Builder
 @ProtobufValue
 public record ContactJid(String user, @NonNull Server server, int device, int agent)
         implements ProtobufMessage, ContactJidProvider {
+    /**
+     * The maximum number of entries held by each jid cache
+     */
+    private static final int CACHE_SIZE = 16384;
+
+    /**
+     * The canonical instance of each jid
+     */
+    private static final Cache<ContactJid, ContactJid> CANONICAL = Caffeine.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build();
+
+    /**
+     * The canonical jid of each parsed string
+     */
+    private static final Cache<String, ContactJid> PARSED = Caffeine.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build();
+
     /**
      * The official business account address
      */
@@ -53,7 +76,7 @@ public record ContactJid(String user, @NonNull Server server, int device, int ag
      */
     @JsonCreator
     public static ContactJid of(@NonNull String jid) {
-        return of(jid, Server.forAddress(jid));
+        return PARSED.get(jid, key -> of(key, Server.forAddress(key)));
     }
 
     /**
@@ -66,28 +89,23 @@ public record ContactJid(String user, @NonNull Server server, int device, int ag
     public static ContactJid of(String jid, @NonNull Server server) {
         var complexUser = withoutServer(jid);
         if (complexUser == null) {
-            return new ContactJid(null, server, 0, 0);
-        }
-
-        if (complexUser.contains(":")) {
-            var simpleUser = complexUser.split(":", 2);
-            var user = simpleUser[0];
-            var device = Integer.parseUnsignedInt(simpleUser[1]);
-            if (user.contains("_")) {
-                var simpleUserAgent = user.split("_", 2);
-                var agent = Integer.parseUnsignedInt(simpleUserAgent[1]);
-                return new ContactJid(simpleUserAgent[0], server, device, agent);
-            }
-
-            return new ContactJid(user, server, device, 0);
+            return canonical(new ContactJid(null, server, 0, 0));
         }
 
-        if (!complexUser.contains("_")) {
-            return new ContactJid(complexUser, server, 0, 0);
+        var deviceIndex = complexUser.indexOf(':');
+        var user = deviceIndex == -1 ?
+                complexUser :
+                complexUser.substring(0, deviceIndex);
+        var device = deviceIndex == -1 ?
+                0 :
+                Integer.parseUnsignedInt(complexUser, deviceIndex + 1, complexUser.length(), 10);
+        var agentIndex = user.indexOf('_');
+        if (agentIndex == -1) {
+            return canonical(new ContactJid(user, server, device, 0));
         }
 
-        var simpleUserAgent = complexUser.split("_", 2);
-        return new ContactJid(simpleUserAgent[0], server, 0, Integer.parseUnsignedInt(simpleUserAgent[1]));
+        var agent = Integer.parseUnsignedInt(user, agentIndex + 1, user.length(), 10);
+        return canonical(new ContactJid(user.substring(0, agentIndex), server, device, agent));
     }
 
     /**
@@ -109,7 +127,7 @@ public record ContactJid(String user, @NonNull Server server, int device, int ag
      * @return a non-null contact jid
      */
     public static ContactJid ofCompanion(String jid, int device, int agent) {
-        return new ContactJid(withoutServer(jid), Server.WHATSAPP, device, agent);
+        return canonical(new ContactJid(withoutServer(jid), Server.WHATSAPP, device, agent));
     }
 
     /**
@@ -120,7 +138,11 @@ public record ContactJid(String user, @NonNull Server server, int device, int ag
      * @return a non-null contact jid
      */
     public static ContactJid ofDevice(String jid, int device) {
-        return new ContactJid(withoutServer(jid), Server.WHATSAPP, device, 0);
+        return canonical(new ContactJid(withoutServer(jid), Server.WHATSAPP, device, 0));
+    }
+
+    private static ContactJid canonical(ContactJid jid) {
+        return CANONICAL.get(jid, Function.identity());
     }
 
     /**
@@ -134,8 +156,12 @@ public record ContactJid(String user, @NonNull Server server, int device, int ag
             return null;
         }
 
+        if (jid.indexOf('@') == -1) {
+            return jid;
+        }
+
         for (var server : Server.values()) {
-            jid = jid.replaceAll("@%s".formatted(server), "");
+            jid = jid.replace("@" + server.address(), "");
         }
 
         return jid;
@@ -222,6 +248,19 @@ public record ContactJid(String user, @NonNull Server server, int device, int ag
         return device() != 0;
     }
 
+    /**
+     * Checks if this jid is equal to another.
+     * Canonical jids are compared by identity first.
+     *
+     * @param other the reference object with which to compare
+     * @return whether {@code other} is equal to this object
+     */
+    @Override
+    public boolean equals(Object other) {
+        return this == other || other instanceof ContactJid that && device == that.device() && agent == that.agent() && server == that.server() && Objects.equals(
+                user, that.user());
+    }
+
     /**
      * Converts this jid to a String
      *
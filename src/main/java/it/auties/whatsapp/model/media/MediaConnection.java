@@ -1,13 +1,30 @@
 package it.auties.whatsapp.model.media;
 
+import it.auties.whatsapp.api.WhatsappRuntime;
 import it.auties.whatsapp.model.request.Node;
 import lombok.NonNull;
 
+import java.net.http.HttpClient;
 import java.util.List;
 
+/**
+ * A media connection, used to upload media.
+ * The connection remembers the http client of the session that created it, so that uploads use the resources of the runtime of that session.
+ */
 public record MediaConnection(@NonNull String auth, int ttl, int maxBuckets, long timestamp,
-                              @NonNull List<@NonNull String> hosts) {
+                              @NonNull List<@NonNull String> hosts, @NonNull HttpClient httpClient) {
+    public MediaConnection(@NonNull String auth, int ttl, int maxBuckets, long timestamp,
+                           @NonNull List<@NonNull String> hosts) {
+        this(auth, ttl, maxBuckets, timestamp, hosts, WhatsappRuntime.shared()
+                .httpClient());
+    }
+
     public static MediaConnection of(Node node) {
+        return of(node, WhatsappRuntime.shared()
+                .httpClient());
+    }
+
+    public static MediaConnection of(Node node, @NonNull HttpClient httpClient) {
         var mediaConnection = node.findNode("media_conn")
                 .orElse(node);
         var auth = mediaConnection.attributes()
@@ -22,6 +39,6 @@ public record MediaConnection(@NonNull String auth, int ttl, int maxBuckets, lon
                 .map(Node::attributes)
                 .map(attributes -> attributes.getString("hostname"))
                 .toList();
-        return new MediaConnection(auth, ttl, maxBuckets, timestamp, hosts);
+        return new MediaConnection(auth, ttl, maxBuckets, timestamp, hosts, httpClient);
     }
 }
@@ -1,9 +1,11 @@
 package it.auties.whatsapp.model.request;
 
 import it.auties.whatsapp.util.Attributes;
+import it.auties.whatsapp.util.BytesHelper;
 import it.auties.whatsapp.util.Nodes;
 import lombok.NonNull;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -14,9 +16,17 @@ import static java.util.Objects.requireNonNull;
  *
  * @param description a non-null String that describes the content of this node
  * @param attributes  a non-null Map that describes the metadata of this object
- * @param content     a nullable object: a List of {@link Node}, a {@link String} or a {@link Number}
+ * @param content     a nullable object: a List of {@link Node}, a {@link String}, a {@link Number}, an array of bytes or,
+ *                    for decoded nodes, a read-only {@link ByteBuffer} slice of the frame.
+ *                    Lists of nodes are copied into a {@link NodeList} when the node is created.
  */
 public record Node(@NonNull String description, @NonNull Attributes attributes, Object content) {
+    public Node {
+        if (content instanceof Collection<?> collection) {
+            content = NodeList.of(collection);
+        }
+    }
+
     /**
      * Constructs a Node that only provides a non-null tag
      *
@@ -129,19 +139,38 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
         return Optional.ofNullable(switch (content) {
             case String string -> string;
             case byte[] bytes -> new String(bytes, StandardCharsets.UTF_8);
+            case ByteBuffer buffer -> StandardCharsets.UTF_8.decode(buffer.duplicate())
+                    .toString();
             case null, default -> null;
         });
     }
 
     /**
-     * Returns the content of this object as bytes
+     * Returns the content of this object as bytes.
+     * If the content is a slice of a decoded frame, it's copied into a new array.
      *
      * @return an optional
      */
     public Optional<byte[]> contentAsBytes() {
-        return content instanceof byte[] bytes ?
-                Optional.of(bytes) :
-                Optional.empty();
+        return Optional.ofNullable(switch (content) {
+            case byte[] bytes -> bytes;
+            case ByteBuffer buffer -> BytesHelper.bufferToBytes(buffer);
+            case null, default -> null;
+        });
+    }
+
+    /**
+     * Returns the content of this object as a read-only buffer without copying it
+     *
+     * @return an optional
+     */
+    public Optional<ByteBuffer> contentAsBuffer() {
+        return Optional.ofNullable(switch (content) {
+            case byte[] bytes -> ByteBuffer.wrap(bytes)
+                    .asReadOnlyBuffer();
+            case ByteBuffer buffer -> buffer.duplicate();
+            case null, default -> null;
+        });
     }
 
     /**
@@ -167,12 +196,14 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
     }
 
     /**
-     * Returns a non-null list of children of this node
+     * Returns a non-null immutable list of children of this node
      *
      * @return a non-null list
      */
-    public LinkedList<Node> children() {
-        return Nodes.findAll(content);
+    public NodeList children() {
+        return content instanceof NodeList children ?
+                children :
+                NodeList.empty();
     }
 
     /**
@@ -181,8 +212,7 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
      * @return true if a child node with the given description exists
      */
     public boolean hasNode(String description) {
-        return children().stream()
-                .anyMatch(node -> Objects.equals(node.description(), description));
+        return children().findFirst(description) != null;
     }
 
     /**
@@ -191,8 +221,10 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
      * @return an optional
      */
     public Optional<Node> findNode() {
-        return children().stream()
-                .findFirst();
+        var children = children();
+        return children.isEmpty() ?
+                Optional.empty() :
+                Optional.of(children.get(0));
     }
 
     /**
@@ -201,9 +233,7 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
      * @return an optional
      */
     public Optional<Node> findNode(String description) {
-        return children().stream()
-                .filter(node -> Objects.equals(node.description(), description))
-                .findFirst();
+        return Optional.ofNullable(children().findFirst(description));
     }
 
     /**
@@ -212,9 +242,7 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
      * @return an optional body, present if a result was found
      */
     public List<Node> findNodes(String description) {
-        return children().stream()
-                .filter(node -> Objects.equals(node.description(), description))
-                .toList();
+        return children().findAll(description);
     }
 
     /**
@@ -268,8 +296,12 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
     public boolean equals(Object other) {
         return other instanceof Node that && Objects.equals(this.description(), that.description()) && Objects.equals(
                 this.attributes(), that.attributes()) && (Objects.equals(this.content(),
-                that.content()) || this.content() instanceof byte[] theseBytes && that.content() instanceof byte[] thoseBytes && Arrays.equals(
-                theseBytes, thoseBytes));
+                that.content()) || isBinary() && that.isBinary() && Objects.equals(this.contentAsBuffer(),
+                that.contentAsBuffer()));
+    }
+
+    private boolean isBinary() {
+        return content instanceof byte[] || content instanceof ByteBuffer;
     }
 
     /**
@@ -288,8 +320,8 @@ public record Node(@NonNull String description, @NonNull Attributes attributes,
                 ", attributes=%s".formatted(this.attributes.map());
         var content = this.content == null ?
                 "" :
-                ", content=%s".formatted(this.content instanceof byte[] bytes ?
-                        Arrays.toString(bytes) :
+                ", content=%s".formatted(isBinary() ?
+                        Arrays.toString(contentAsBytes().orElseThrow()) :
                         this.content);
         return "Node[%s%s%s]".formatted(description, attributes, content);
     }
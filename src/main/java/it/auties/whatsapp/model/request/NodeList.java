@@ -0,0 +1,133 @@
+package it.auties.whatsapp.model.request;
+
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * An immutable list that holds the children of a {@link Node}.
+ * Children are stored in an array that is materialized once when the node is created.
+ * Nodes with many children also index them by description, so that lookups by description don't need to scan the list.
+ */
+public final class NodeList extends AbstractList<Node> implements RandomAccess {
+    private static final NodeList EMPTY = new NodeList(new Node[0]);
+
+    private static final int INDEX_THRESHOLD = 8;
+
+    private final Node[] nodes;
+
+    private final Map<String, List<Node>> index;
+
+    private NodeList(Node[] nodes) {
+        this.nodes = nodes;
+        this.index = nodes.length >= INDEX_THRESHOLD ?
+                createIndex(nodes) :
+                null;
+    }
+
+    /**
+     * Returns an empty list
+     *
+     * @return a non-null list
+     */
+    public static NodeList empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a list containing the nodes in a collection.
+     * Entries that are not nodes are ignored.
+     *
+     * @param collection the non-null collection to copy
+     * @return a non-null list
+     */
+    public static NodeList of(@NonNull Collection<?> collection) {
+        if (collection instanceof NodeList nodeList) {
+            return nodeList;
+        }
+
+        var nodes = new Node[collection.size()];
+        var size = 0;
+        for (var entry : collection) {
+            if (entry instanceof Node node) {
+                nodes[size++] = node;
+            }
+        }
+
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        return new NodeList(size == nodes.length ?
+                nodes :
+                Arrays.copyOf(nodes, size));
+    }
+
+    private static Map<String, List<Node>> createIndex(Node[] nodes) {
+        var groups = new HashMap<String, List<Node>>();
+        for (var node : nodes) {
+            groups.computeIfAbsent(node.description(), ignored -> new ArrayList<>())
+                    .add(node);
+        }
+
+        var result = new HashMap<String, List<Node>>(groups.size() * 2);
+        groups.forEach((description, group) -> result.put(description, List.copyOf(group)));
+        return result;
+    }
+
+    @Override
+    public Node get(int index) {
+        return nodes[index];
+    }
+
+    @Override
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the first node with the provided description
+     *
+     * @param description the description to look for
+     * @return the first matching node or null
+     */
+    public Node findFirst(String description) {
+        if (index != null) {
+            var group = index.get(description);
+            return group == null ?
+                    null :
+                    group.get(0);
+        }
+
+        for (var node : nodes) {
+            if (Objects.equals(node.description(), description)) {
+                return node;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns all the nodes with the provided description
+     *
+     * @param description the description to look for
+     * @return a non-null immutable list
+     */
+    public List<Node> findAll(String description) {
+        if (index != null) {
+            return index.getOrDefault(description, List.of());
+        }
+
+        var results = new ArrayList<Node>(nodes.length);
+        for (var node : nodes) {
+            if (Objects.equals(node.description(), description)) {
+                results.add(node);
+            }
+        }
+
+        return results.isEmpty() ?
+                List.of() :
+                Collections.unmodifiableList(results);
+    }
+}
@@ -1,22 +1,20 @@
 package it.auties.whatsapp.model.request;
 
-import it.auties.bytes.Bytes;
 import it.auties.whatsapp.binary.Encoder;
 import it.auties.whatsapp.controller.Keys;
 import it.auties.whatsapp.controller.Store;
-import it.auties.whatsapp.crypto.AesGmc;
 import it.auties.whatsapp.exception.ErroneousNodeException;
 import it.auties.whatsapp.exception.Exceptions;
 import it.auties.whatsapp.util.JacksonProvider;
-import jakarta.websocket.SendResult;
-import jakarta.websocket.Session;
+import it.auties.whatsapp.socket.FrameWriter;
+import it.auties.whatsapp.socket.WritePriority;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
 import static it.auties.whatsapp.crypto.Handshake.PROLOGUE;
-import static java.util.concurrent.CompletableFuture.delayedExecutor;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
@@ -26,9 +24,9 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 public record Request(String id, @NonNull Object body, @NonNull CompletableFuture<Node> future, Throwable caller)
         implements JacksonProvider {
     /**
-     * The binary encoder, used to encode requests that take as a parameter a node
+     * The size of the length prefix of a frame
      */
-    private static final Encoder ENCODER = new Encoder();
+    private static final int FRAME_LENGTH_SIZE = 3;
 
     /**
      * The timeout in endTimeStamp before a Request wrapping a Node fails
@@ -37,7 +35,6 @@ public record Request(String id, @NonNull Object body, @NonNull CompletableFutur
 
     private Request(String id, @NonNull Object body) {
         this(id, body, new CompletableFuture<>(), Exceptions.current());
-        delayedExecutor(TIMEOUT, SECONDS).execute(this::cancelTimedFuture);
     }
 
     /**
@@ -47,6 +44,16 @@ public record Request(String id, @NonNull Object body, @NonNull CompletableFutur
         return new Request(body.id(), body);
     }
 
+    /**
+     * Constructs a new request from a node that was already encoded, for example using a {@link it.auties.whatsapp.binary.StanzaTemplate}
+     *
+     * @param id      the non-null id of the encoded node
+     * @param encoded the non-null encoded node, flag byte included
+     */
+    public static Request withEncoded(@NonNull String id, byte @NonNull [] encoded) {
+        return new Request(id, encoded);
+    }
+
     /**
      * Constructs a new request with the provided body expecting a response
      */
@@ -55,6 +62,13 @@ public record Request(String id, @NonNull Object body, @NonNull CompletableFutur
         return new Request(null, PROTOBUF.writeValueAsBytes(body));
     }
 
+    private void scheduleTimeout(Store store) {
+        var wheel = Objects.requireNonNull(store.timingWheel(), "Missing timing wheel");
+        var executor = Objects.requireNonNull(store.timeoutsExecutor(), "Missing timeouts executor");
+        var timeout = wheel.schedule(this::cancelTimedFuture, TIMEOUT, SECONDS, executor);
+        future.whenComplete((ignored, throwable) -> timeout.cancel());
+    }
+
     private void cancelTimedFuture() {
         if (future.isDone()) {
             return;
@@ -65,62 +79,59 @@ public record Request(String id, @NonNull Object body, @NonNull CompletableFutur
     }
 
     /**
-     * Sends a request to the WebSocket linked to {@code session}.
+     * Sends a request to the WebSocket written by {@code writer}.
      *
-     * @param session the WhatsappWeb's WebSocket session
-     * @param store   the store
+     * @param writer    the writer of the WhatsappWeb's WebSocket
+     * @param store     the store
      */
-    public CompletableFuture<Node> sendWithPrologue(@NonNull Session session, @NonNull Keys keys,
+    public CompletableFuture<Node> sendWithPrologue(@NonNull FrameWriter writer, @NonNull Keys keys,
                                                     @NonNull Store store) {
-        return send(session, keys, store, true, false);
+        return send(writer, keys, store, true, false);
     }
 
     /**
-     * Sends a request to the WebSocket linked to {@code session}.
+     * Sends a request to the WebSocket written by {@code writer}.
      *
-     * @param store   the store
-     * @param session the WhatsappWeb's WebSocket session
+     * @param store     the store
+     * @param writer    the writer of the WhatsappWeb's WebSocket
      * @return this request
      */
-    public CompletableFuture<Node> send(@NonNull Session session, @NonNull Keys keys, @NonNull Store store) {
-        return send(session, keys, store, false, true);
+    public CompletableFuture<Node> send(@NonNull FrameWriter writer, @NonNull Keys keys, @NonNull Store store) {
+        return send(writer, keys, store, false, true);
     }
 
     /**
-     * Sends a request to the WebSocket linked to {@code session}.
+     * Sends a request to the WebSocket written by {@code writer}.
      *
-     * @param store   the store
-     * @param session the WhatsappWeb's WebSocket session
+     * @param store     the store
+     * @param writer    the writer of the WhatsappWeb's WebSocket
      * @return this request
      */
-    public CompletableFuture<Void> sendWithNoResponse(@NonNull Session session, @NonNull Keys keys,
+    public CompletableFuture<Void> sendWithNoResponse(@NonNull FrameWriter writer, @NonNull Keys keys,
                                                       @NonNull Store store) {
-        return send(session, keys, store, false, false).thenRunAsync(() -> {
+        return send(writer, keys, store, false, false).thenRun(() -> {
         });
     }
 
     /**
-     * Sends a request to the WebSocket linked to {@code session}.
+     * Sends a request to the WebSocket written by {@code writer}.
      *
-     * @param store    the store
-     * @param session  the WhatsappWeb's WebSocket session
-     * @param prologue whether the prologue should be prepended to the request
-     * @param response whether the request expects a response
+     * @param store     the store
+     * @param writer    the writer of the WhatsappWeb's WebSocket
+     * @param prologue  whether the prologue should be prepended to the request
+     * @param response  whether the request expects a response, in which case it's registered before it's written so that the response can't arrive before the request is known
      * @return this request
      */
-    public CompletableFuture<Node> send(@NonNull Session session, @NonNull Keys keys, @NonNull Store store,
+    public CompletableFuture<Node> send(@NonNull FrameWriter writer, @NonNull Keys keys, @NonNull Store store,
                                         boolean prologue, boolean response) {
+        scheduleTimeout(store);
+        if (response) {
+            store.addPendingRequest(this);
+        }
+
         try {
-            var ciphered = encryptMessage(keys);
-            var buffer = Bytes.of(prologue ?
-                            PROLOGUE :
-                            new byte[0])
-                    .appendInt(ciphered.length >> 16)
-                    .appendShort(65535 & ciphered.length)
-                    .append(ciphered)
-                    .toNioBuffer();
-            session.getAsyncRemote()
-                    .sendBinary(buffer, result -> handleSendResult(store, result, response));
+            writer.write(priority(), () -> createFrame(keys, prologue))
+                    .whenComplete((ignored, throwable) -> handleSendResult(throwable, response));
         } catch (Exception exception) {
             future.completeExceptionally(new RequestException("Cannot send %s".formatted(this), exception));
         }
@@ -149,6 +160,12 @@ public record Request(String id, @NonNull Object body, @NonNull CompletableFutur
         future.complete(response);
     }
 
+    private WritePriority priority() {
+        return body instanceof Node node ?
+                WritePriority.of(node) :
+                WritePriority.CONTROL;
+    }
+
     private boolean isErroneousNode(Node response) {
         return response.attributes()
                 .getOptionalString("type")
@@ -156,36 +173,55 @@ public record Request(String id, @NonNull Object body, @NonNull CompletableFutur
                 .isPresent();
     }
 
-    private void handleSendResult(Store store, SendResult result, boolean response) {
-        if (!result.isOK()) {
+    private void handleSendResult(Throwable throwable, boolean response) {
+        if (throwable != null) {
             future.completeExceptionally(
-                    new RequestException(("Cannot send request %s, erroneous send result: %s".formatted(this, result)),
-                            result.getException()));
+                    new RequestException("Cannot send request %s".formatted(this), throwable));
             return;
         }
 
         if (!response) {
             future.complete(null);
-            return;
         }
+    }
 
-        store.addPendingRequest(this);
+    private byte[] createFrame(Keys keys, boolean prologue) {
+        var headerSize = (prologue ? PROLOGUE.length : 0) + FRAME_LENGTH_SIZE;
+        var frame = keys.writeKey() == null ?
+                createPlainFrame(headerSize) :
+                createEncryptedFrame(keys, headerSize);
+        if (prologue) {
+            System.arraycopy(PROLOGUE, 0, frame, 0, PROLOGUE.length);
+        }
+
+        var length = frame.length - headerSize;
+        frame[headerSize - 3] = (byte) (length >> 16);
+        frame[headerSize - 2] = (byte) (length >> 8);
+        frame[headerSize - 1] = (byte) length;
+        return frame;
     }
 
-    private byte[] encryptMessage(Keys keys) {
-        var encodedBody = body();
-        var body = switch (encodedBody) {
-            case byte[] bytes -> bytes;
-            case Node node -> ENCODER.encode(node);
-            default -> throw new IllegalArgumentException(
-                    "Cannot create request, illegal body: %s".formatted(encodedBody));
+    private byte[] createPlainFrame(int headerSize) {
+        return switch (body) {
+            case byte[] bytes -> {
+                var frame = new byte[headerSize + bytes.length];
+                System.arraycopy(bytes, 0, frame, headerSize, bytes.length);
+                yield frame;
+            }
+            case Node node -> new Encoder().encode(node, headerSize);
+            default -> throw new IllegalArgumentException("Cannot create request, illegal body: %s".formatted(body));
         };
+    }
 
-        if (keys.writeKey() == null) {
-            return body;
-        }
-
-        return AesGmc.of(keys.writeKey(), keys.writeCounter(true), true)
-                .encrypt(body);
+    private byte[] createEncryptedFrame(Keys keys, int headerSize) {
+        var plainText = switch (body) {
+            case byte[] bytes -> bytes;
+            case Node node -> new Encoder().encode(node);
+            default -> throw new IllegalArgumentException("Cannot create request, illegal body: %s".formatted(body));
+        };
+        var cipher = keys.writeCipher();
+        var frame = new byte[headerSize + cipher.outputSize(plainText.length)];
+        cipher.encrypt(keys.writeCounter(true), plainText, 0, plainText.length, frame, headerSize);
+        return frame;
     }
 }
@@ -2,6 +2,7 @@ package it.auties.whatsapp.model.signal.auth;
 
 import it.auties.protobuf.api.model.ProtobufMessage;
 import it.auties.protobuf.api.model.ProtobufProperty;
+import it.auties.whatsapp.api.WhatsappRuntime;
 import it.auties.whatsapp.model.response.AppVersionResponse;
 import it.auties.whatsapp.util.JacksonProvider;
 import it.auties.whatsapp.util.Validate;
@@ -78,8 +79,12 @@ public class Version implements ProtobufMessage, JacksonProvider {
     }
 
     public static Version latest(@NonNull Version defaultValue) {
+        return latest(defaultValue, WhatsappRuntime.shared()
+                .httpClient());
+    }
+
+    public static Version latest(@NonNull Version defaultValue, @NonNull HttpClient client) {
         try {
-            var client = HttpClient.newHttpClient();
             var request = HttpRequest.newBuilder()
                     .GET()
                     .uri(URI.create(
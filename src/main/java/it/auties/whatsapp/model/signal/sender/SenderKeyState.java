@@ -7,9 +7,11 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Builder.Default;
 import lombok.Data;
+import lombok.NonNull;
 import lombok.experimental.Accessors;
 import lombok.extern.jackson.Jacksonized;
 
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -22,6 +24,11 @@ import static it.auties.protobuf.api.model.ProtobufProperty.Type.UINT32;
 @Jacksonized
 @Accessors(fluent = true)
 public class SenderKeyState implements ProtobufMessage {
+    /**
+     * The maximum number of message keys that a state keeps, which is also the maximum number of messages that can be skipped at once
+     */
+    public static final int MAX_MESSAGE_KEYS = 2000;
+
     @ProtobufProperty(index = 1, type = UINT32)
     private Integer id;
 
@@ -48,21 +55,38 @@ public class SenderKeyState implements ProtobufMessage {
     }
 
     public void addSenderMessageKey(SenderMessageKey senderMessageKey) {
-        messageKeys.add(senderMessageKey);
-        if (messageKeys.size() <= 2000) {
+        addSenderMessageKeys(List.of(senderMessageKey));
+    }
+
+    /**
+     * Adds some message keys, evicting the oldest ones if there are more than {@link SenderKeyState#MAX_MESSAGE_KEYS}.
+     * The backing list is copied on write, so the keys are added, and the excess is evicted, with a single copy each.
+     *
+     * @param senderMessageKeys the non-null keys to add, ordered by iteration
+     */
+    public void addSenderMessageKeys(@NonNull List<SenderMessageKey> senderMessageKeys) {
+        if (senderMessageKeys.isEmpty()) {
+            return;
+        }
+
+        messageKeys.addAll(senderMessageKeys);
+        var excess = messageKeys.size() - MAX_MESSAGE_KEYS;
+        if (excess <= 0) {
             return;
         }
 
-        messageKeys.remove(0);
+        messageKeys.subList(0, excess)
+                .clear();
     }
 
     public SenderMessageKey removeSenderMessageKey(int iteration) {
-        return messageKeys.stream()
-                .filter(key -> key.iteration() == iteration)
-                .mapToInt(messageKeys::indexOf)
-                .mapToObj(messageKeys::remove)
-                .findFirst()
-                .orElse(null);
+        for (var key : messageKeys) {
+            if (key.iteration() == iteration && messageKeys.remove(key)) {
+                return key;
+            }
+        }
+
+        return null;
     }
 
     public void nextChainKey() {
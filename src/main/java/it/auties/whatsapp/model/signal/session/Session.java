@@ -4,6 +4,7 @@ import lombok.NonNull;
 
 import java.util.Optional;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.stream.Stream;
 
 public record Session(ConcurrentLinkedDeque<@NonNull SessionState> states) {
     public Session() {
@@ -40,4 +41,27 @@ public record Session(ConcurrentLinkedDeque<@NonNull SessionState> states) {
     public void addState(SessionState state) {
         states.add(state);
     }
+
+    /**
+     * Returns the skipped message keys of every chain of every state
+     *
+     * @return a non-null stream
+     */
+    public Stream<SkippedMessageKeys> skippedMessageKeys() {
+        return states.stream()
+                .flatMap(state -> state.chains()
+                        .values()
+                        .stream())
+                .map(SessionChain::messageKeys);
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the skipped message keys of this session
+     *
+     * @return a non-negative long
+     */
+    public long skippedMessageKeysBytes() {
+        return skippedMessageKeys().mapToLong(SkippedMessageKeys::estimatedBytes)
+                .sum();
+    }
 }
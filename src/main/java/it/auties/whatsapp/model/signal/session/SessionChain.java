@@ -7,8 +7,6 @@ import lombok.NonNull;
 import lombok.experimental.Accessors;
 import lombok.extern.jackson.Jacksonized;
 
-import java.util.concurrent.ConcurrentHashMap;
-
 @AllArgsConstructor
 @Builder
 @Jacksonized
@@ -20,14 +18,14 @@ public class SessionChain {
     private byte[] key;
 
     @NonNull
-    private ConcurrentHashMap<Integer, byte[]> messageKeys;
+    private SkippedMessageKeys messageKeys;
 
     public SessionChain(int counter, byte @NonNull [] key) {
-        this(counter, key, new ConcurrentHashMap<>());
+        this(counter, key, new SkippedMessageKeys());
     }
 
     public boolean hasMessageKey(int counter) {
-        return messageKeys.containsKey(counter);
+        return messageKeys.contains(counter);
     }
 
     public void incrementCounter() {
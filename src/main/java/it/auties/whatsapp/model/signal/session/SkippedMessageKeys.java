@@ -0,0 +1,314 @@
+package it.auties.whatsapp.model.signal.session;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import lombok.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The message keys of a {@link SessionChain} that were derived but not used yet, because the messages they belong to were skipped or didn't arrive yet.
+ * Keys are derived in the order of their counter, so they are stored in a ring buffer indexed by counter: looking up, adding and removing a key are O(1) and counters aren't boxed.
+ * A chain keeps at most {@link SkippedMessageKeys#MAX_KEYS} keys: when a new key doesn't fit, the oldest ones are evicted.
+ * Each key remembers when it was added, so that keys older than a given age can be evicted as well.
+ * When serialized, only the keys are saved, so keys that are deserialized are considered as added at that moment.
+ */
+public final class SkippedMessageKeys {
+    /**
+     * The maximum number of keys that a chain keeps, which is also the maximum number of messages that can be skipped at once
+     */
+    public static final int MAX_KEYS = 2000;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final long BASE_SIZE = 64;
+
+    private static final long SLOT_SIZE = 8 + Long.BYTES;
+
+    private static final long KEY_SIZE = 16 + 32;
+
+    private byte[][] keys;
+
+    private long[] timestamps;
+
+    private int head;
+
+    private int first;
+
+    private int length;
+
+    private int size;
+
+    /**
+     * Constructs an empty store
+     */
+    public SkippedMessageKeys() {
+        this.keys = new byte[0][];
+        this.timestamps = new long[0];
+    }
+
+    /**
+     * Constructs a store from the serialized keys, ordered by counter
+     *
+     * @param keys the non-null keys
+     * @return a non-null store
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static SkippedMessageKeys of(@NonNull Map<Integer, byte[]> keys) {
+        var result = new SkippedMessageKeys();
+        var now = System.currentTimeMillis();
+        keys.entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue(), now));
+        return result;
+    }
+
+    /**
+     * Returns whether a key is stored for a counter
+     *
+     * @param counter the counter of the message
+     * @return a boolean
+     */
+    public synchronized boolean contains(int counter) {
+        return indexOf(counter) != -1;
+    }
+
+    /**
+     * Returns the key stored for a counter without removing it
+     *
+     * @param counter the counter of the message
+     * @return the key, or null if none is stored
+     */
+    public synchronized byte[] get(int counter) {
+        var index = indexOf(counter);
+        return index == -1 ?
+                null :
+                keys[index];
+    }
+
+    /**
+     * Adds the key of a counter.
+     * If the counter is older than every stored key that was evicted, the key is ignored.
+     *
+     * @param counter the counter of the message
+     * @param key     the non-null key
+     */
+    public void put(int counter, byte @NonNull [] key) {
+        put(counter, key, System.currentTimeMillis());
+    }
+
+    private synchronized void put(int counter, byte[] key, long timestamp) {
+        if (size == 0) {
+            clear();
+            this.first = counter;
+        }
+
+        if (counter < first) {
+            return;
+        }
+
+        var offset = counter - first;
+        if (offset >= MAX_KEYS) {
+            evict(offset - MAX_KEYS + 1);
+            if (size == 0) {
+                clear();
+                this.first = counter;
+            }
+
+            offset = counter - first;
+        }
+
+        if (offset >= length) {
+            ensureCapacity(offset + 1);
+            this.length = offset + 1;
+        }
+
+        var index = slot(offset);
+        if (keys[index] == null) {
+            this.size++;
+        }
+
+        keys[index] = key;
+        timestamps[index] = timestamp;
+    }
+
+    /**
+     * Removes the key of a counter
+     *
+     * @param counter the counter of the message
+     * @return the removed key, or null if none was stored
+     */
+    public synchronized byte[] remove(int counter) {
+        var index = indexOf(counter);
+        if (index == -1) {
+            return null;
+        }
+
+        var result = keys[index];
+        keys[index] = null;
+        this.size--;
+        trim();
+        return result;
+    }
+
+    /**
+     * Removes the keys that were added before a moment
+     *
+     * @param timestamp the moment, in milliseconds since the epoch
+     * @return the number of removed keys
+     */
+    public synchronized int evictOlderThan(long timestamp) {
+        var evicted = 0;
+        for (var offset = 0; offset < length; offset++) {
+            var index = slot(offset);
+            if (keys[index] != null && timestamps[index] < timestamp) {
+                keys[index] = null;
+                evicted++;
+            }
+        }
+
+        this.size -= evicted;
+        trim();
+        return evicted;
+    }
+
+    /**
+     * Removes the key with the lowest counter
+     *
+     * @return whether a key was removed
+     */
+    public synchronized boolean evictOldest() {
+        if (size == 0) {
+            return false;
+        }
+
+        keys[head] = null;
+        this.size--;
+        trim();
+        return true;
+    }
+
+    /**
+     * Returns when the key with the lowest counter was added
+     *
+     * @return a timestamp in milliseconds since the epoch, or {@link Long#MAX_VALUE} if no key is stored
+     */
+    public synchronized long oldestTimestamp() {
+        return size == 0 ?
+                Long.MAX_VALUE :
+                timestamps[head];
+    }
+
+    /**
+     * Returns the number of stored keys
+     *
+     * @return a non-negative int
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the estimated number of bytes used by this store
+     *
+     * @return a non-negative long
+     */
+    public synchronized long estimatedBytes() {
+        return BASE_SIZE + keys.length * SLOT_SIZE + size * KEY_SIZE;
+    }
+
+    /**
+     * Returns the stored keys, ordered by counter
+     *
+     * @return a non-null map
+     */
+    @JsonValue
+    public synchronized Map<Integer, byte[]> toMap() {
+        var result = new LinkedHashMap<Integer, byte[]>();
+        for (var offset = 0; offset < length; offset++) {
+            var key = keys[slot(offset)];
+            if (key != null) {
+                result.put(first + offset, key);
+            }
+        }
+
+        return result;
+    }
+
+    private int indexOf(int counter) {
+        var offset = counter - first;
+        if (size == 0 || offset < 0 || offset >= length) {
+            return -1;
+        }
+
+        var index = slot(offset);
+        return keys[index] != null ?
+                index :
+                -1;
+    }
+
+    private int slot(int offset) {
+        return (head + offset) & (keys.length - 1);
+    }
+
+    private void evict(int count) {
+        for (var evicted = 0; evicted < count && length > 0; evicted++) {
+            if (keys[head] != null) {
+                keys[head] = null;
+                this.size--;
+            }
+
+            advance();
+        }
+
+        trim();
+    }
+
+    private void trim() {
+        while (length > 0 && keys[head] == null) {
+            advance();
+        }
+    }
+
+    private void advance() {
+        this.head = (head + 1) & (keys.length - 1);
+        this.first++;
+        this.length--;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) {
+            return;
+        }
+
+        var newCapacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(capacity - 1) << 1);
+        var newKeys = new byte[newCapacity][];
+        var newTimestamps = new long[newCapacity];
+        for (var offset = 0; offset < length; offset++) {
+            var index = slot(offset);
+            newKeys[offset] = keys[index];
+            newTimestamps[offset] = timestamps[index];
+        }
+
+        this.keys = newKeys;
+        this.timestamps = newTimestamps;
+        this.head = 0;
+    }
+
+    private void clear() {
+        if (keys.length > INITIAL_CAPACITY) {
+            this.keys = new byte[0][];
+            this.timestamps = new long[0];
+        }
+
+        this.head = 0;
+        this.length = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SkippedMessageKeys[size=%s, first=%s]".formatted(size, first);
+    }
+}
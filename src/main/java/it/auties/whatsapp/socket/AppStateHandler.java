@@ -48,12 +48,12 @@ class AppStateHandler implements JacksonProvider {
     }
 
     protected CompletableFuture<Void> push(@NonNull PatchRequest patch) {
-        return CompletableFuture.runAsync(() -> tryLock(true))
-                .thenComposeAsync(result -> sendPullRequest(patch.type()))
-                .thenApplyAsync(result -> createPushRequest(patch, result))
-                .thenComposeAsync(this::sendPush)
-                .thenRunAsync(lock::release)
-                .exceptionallyAsync(this::handlePushError);
+        return CompletableFuture.runAsync(() -> tryLock(true), socket.executor())
+                .thenComposeAsync(result -> sendPullRequest(patch.type()), socket.executor())
+                .thenApplyAsync(result -> createPushRequest(patch, result), socket.executor())
+                .thenComposeAsync(this::sendPush, socket.executor())
+                .thenRunAsync(lock::release, socket.executor())
+                .exceptionallyAsync(this::handlePushError, socket.executor());
     }
 
     private Void handlePushError(Throwable throwable) {
@@ -140,10 +140,11 @@ class AppStateHandler implements JacksonProvider {
                     of("name", request.patch().type(), "version", request.newState().version() - 1, "return_snapshot", false),
                     with("patch", PROTOBUF.writeValueAsBytes(request.sync())));
             return socket.sendQuery("set", "w:sync:app:state", withChildren("sync", body))
-                    .thenAcceptAsync(this::parseSyncRequest)
+                    .thenAcceptAsync(this::parseSyncRequest, socket.executor())
                     .thenRunAsync(() -> socket.keys()
-                            .putState(request.patch().type(), request.newState()))
-                    .thenRunAsync(() -> handleSyncRequest(request.patch().type(), request.sync(), request.oldState(), request.newState().version()));
+                            .putState(request.patch().type(), request.newState()), socket.executor())
+                    .thenRunAsync(() -> handleSyncRequest(request.patch().type(), request.sync(), request.oldState(), request.newState().version()),
+                            socket.executor());
         }catch (Throwable throwable) {
             throw new RuntimeException("Cannot send push request", throwable);
         }
@@ -156,10 +157,10 @@ class AppStateHandler implements JacksonProvider {
 
     @SuppressWarnings("UnusedReturnValue")
     protected CompletableFuture<Boolean> pull(boolean initial, PatchType... patchTypes) {
-        return CompletableFuture.runAsync(() -> tryLock(!initial))
-                .thenComposeAsync(ignored -> sendPullRequest(patchTypes))
-                .thenApplyAsync(this::onPull)
-                .exceptionallyAsync(exception -> handlePullError(initial, exception));
+        return CompletableFuture.runAsync(() -> tryLock(!initial), socket.executor())
+                .thenComposeAsync(ignored -> sendPullRequest(patchTypes), socket.executor())
+                .thenApplyAsync(this::onPull, socket.executor())
+                .exceptionallyAsync(exception -> handlePullError(initial, exception), socket.executor());
     }
 
     private Boolean onPull(Boolean result) {
@@ -196,12 +197,12 @@ class AppStateHandler implements JacksonProvider {
                 .map(LTHashState::toNode)
                 .toList();
         return socket.sendQuery("set", "w:sync:app:state", withChildren("sync", nodes))
-                .thenApplyAsync(this::parseSyncRequest)
-                .thenApplyAsync(records -> decodeSyncs(versions, attempts, tempStates, records))
+                .thenApplyAsync(this::parseSyncRequest, socket.executor())
+                .thenApplyAsync(records -> decodeSyncs(versions, attempts, tempStates, records), socket.executor())
                 .thenComposeAsync(remaining -> remaining.isEmpty() ?
                         completedFuture(null) :
-                        pull(remaining, versions, attempts))
-                .thenApplyAsync(ignored -> true);
+                        pull(remaining, versions, attempts), socket.executor())
+                .thenApplyAsync(ignored -> true, socket.executor());
     }
 
     private List<PatchType> decodeSyncs(Map<PatchType, Long> versions, Map<PatchType, Integer> attempts,
@@ -8,7 +8,6 @@ import it.auties.whatsapp.model.signal.auth.*;
 import it.auties.whatsapp.util.BytesHelper;
 import it.auties.whatsapp.util.JacksonProvider;
 import it.auties.whatsapp.util.SignalSpecification;
-import jakarta.websocket.Session;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 
@@ -30,7 +29,7 @@ class AuthHandler implements JacksonProvider {
     }
 
     @SneakyThrows
-    protected CompletableFuture<Void> login(Session session, byte[] message) {
+    protected CompletableFuture<Void> login(FrameWriter writer, byte[] message) {
         var serverHello = PROTOBUF.readMessage(message, HandshakeMessage.class)
                 .serverHello();
         handshake.updateHash(serverHello.ephemeral());
@@ -58,9 +57,9 @@ class AuthHandler implements JacksonProvider {
         var clientFinish = new ClientFinish(encodedKey, encodedPayload);
         var handshakeMessage = new HandshakeMessage(clientFinish);
         return Request.with(handshakeMessage)
-                .sendWithNoResponse(session, socket.keys(), socket.store())
-                .thenRunAsync(socket.keys()::clear)
-                .thenRunAsync(handshake::finish);
+                .sendWithNoResponse(writer, socket.keys(), socket.store())
+                .thenRunAsync(socket.keys()::clear, socket.executor())
+                .thenRunAsync(handshake::finish, socket.executor());
     }
 
     @SneakyThrows
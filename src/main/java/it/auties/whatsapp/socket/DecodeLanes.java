@@ -0,0 +1,56 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.util.SerialExecutor;
+import it.auties.whatsapp.util.StripedLock;
+import lombok.NonNull;
+
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * The ordered lanes that decode incoming messages off the thread of the socket.
+ * Signal sessions belong to the sender of a message, not to its chat: a session can be set up by a pkmsg in a group and then used by a msg in a conversation.
+ * For this reason the lane of a message is chosen by its sender, the participant for group messages and the chat otherwise, so that the ratchet of each sender always advances in the order in which its messages were received.
+ * Messages of different senders are decoded in parallel.
+ */
+final class DecodeLanes {
+    private final StripedLock locks;
+
+    private final SerialExecutor[] lanes;
+
+    DecodeLanes(@NonNull StripedLock locks, @NonNull Executor executor) {
+        this.locks = locks;
+        this.lanes = new SerialExecutor[locks.size()];
+        for (var index = 0; index < lanes.length; index++) {
+            lanes[index] = new SerialExecutor(executor);
+        }
+    }
+
+    /**
+     * Runs a task on the lane of the sender of a message node
+     *
+     * @param node the non-null message node
+     * @param task the non-null task
+     */
+    void execute(@NonNull Node node, @NonNull Runnable task) {
+        var lane = sender(node).map(locks::stripe)
+                .orElse(0);
+        lanes[lane].execute(task);
+    }
+
+    /**
+     * Returns the user that sent a message node
+     *
+     * @param node the non-null message node
+     * @return a non-null optional
+     */
+    static Optional<ContactJid> sender(@NonNull Node node) {
+        return node.attributes()
+                .getJid("participant")
+                .or(() -> node.attributes()
+                        .getJid("from"))
+                .map(ContactJid::toUserJid);
+    }
+}
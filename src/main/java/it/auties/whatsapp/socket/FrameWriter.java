@@ -0,0 +1,371 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.api.OutboundMetrics;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Writes length-prefixed frames to a {@link Transport}, coalescing the frames that are ready at the same time into a single binary message.
+ * Whatsapp splits every binary message into frames using their length prefix, so a message can carry any number of frames.
+ * At most one message is in flight: the frames that are queued while a message is being written are sent together as soon as the write completes.
+ * A message never exceeds the batch size, unless a single frame is bigger than it.
+ * Frames are queued in the lane of their {@link WritePriority} and taken from the most important lane first.
+ * The interactive and the bulk lanes are bounded: when a lane is full, new frames are rejected until it drains, and producers can wait for room using {@link FrameWriter#whenWritable(WritePriority)}.
+ * Frames are only created, and so encrypted, when they are taken from their lane while holding the lock of the writer: this way the order on the wire always matches the order of the write counter, even if a frame overtakes another one queued before it.
+ * Messages are sent, and the futures of their frames and of the producers waiting for room are completed, outside the lock: the next message is flushed on an executor once the previous one was written, never on the thread of the transport.
+ */
+public class FrameWriter {
+    private static final WritePriority[] PRIORITIES = WritePriority.values();
+
+    private final Transport transport;
+
+    private final Executor executor;
+
+    private final int batchSize;
+
+    private final long lingerNanos;
+
+    private final int capacity;
+
+    private final ArrayDeque<PendingFrame>[] lanes;
+
+    private final List<CompletableFuture<Void>>[] waiters;
+
+    private EncodedFrame carry;
+
+    private boolean inFlight;
+
+    private boolean lingering;
+
+    private long generation;
+
+    private long writtenFrames;
+
+    private long writtenMessages;
+
+    private long rejectedFrames;
+
+    /**
+     * Constructs a new writer
+     *
+     * @param transport the non-null transport to write to
+     * @param batchSize the maximum number of bytes coalesced into a message
+     * @param linger    the non-null time to wait for more frames before writing a message when no message is in flight, zero to write right away
+     * @param capacity  the maximum number of frames that the interactive and the bulk lanes can hold each
+     * @param executor  the non-null executor that flushes the next message when a message was written or when the linger ends
+     */
+    @SuppressWarnings("unchecked")
+    public FrameWriter(@NonNull Transport transport, int batchSize, @NonNull Duration linger, int capacity,
+                       @NonNull Executor executor) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: %s".formatted(batchSize));
+        }
+
+        if (linger.isNegative()) {
+            throw new IllegalArgumentException("Linger must not be negative: %s".formatted(linger));
+        }
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: %s".formatted(capacity));
+        }
+
+        this.transport = transport;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.capacity = capacity;
+        this.lanes = new ArrayDeque[PRIORITIES.length];
+        this.waiters = new List[PRIORITIES.length];
+        for (var priority : PRIORITIES) {
+            lanes[priority.ordinal()] = new ArrayDeque<>();
+            waiters[priority.ordinal()] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Queues a frame to be written.
+     * The supplier is called while holding the lock of this writer, right before the frame is written, so it's the right place to encrypt the frame.
+     * If the supplier throws an exception, the returned future completes with it.
+     *
+     * @param priority the non-null lane of the frame
+     * @param frame    the non-null supplier of the frame, length prefix included
+     * @return a future that completes when the message that carries the frame was written, or with a {@link RejectedExecutionException} if the lane is full
+     */
+    public CompletableFuture<Void> write(@NonNull WritePriority priority, @NonNull Supplier<byte[]> frame) {
+        var future = new CompletableFuture<Void>();
+        var completions = new ArrayList<Runnable>();
+        Batch batch = null;
+        synchronized (this) {
+            var lane = lanes[priority.ordinal()];
+            if (isFull(priority)) {
+                this.rejectedFrames++;
+                return failedFuture(new RejectedExecutionException(
+                        "Cannot write frame: the %s lane is full".formatted(priority.name()
+                                .toLowerCase())));
+            }
+
+            lane.add(new PendingFrame(frame, future));
+            if (inFlight) {
+                return future;
+            }
+
+            if (lingerNanos == 0) {
+                batch = flush(completions);
+            } else if (!lingering) {
+                this.lingering = true;
+                var scheduledGeneration = generation;
+                delayedExecutor(lingerNanos, NANOSECONDS, executor).execute(() -> onLingerEnd(scheduledGeneration));
+            }
+        }
+
+        send(batch, completions);
+        return future;
+    }
+
+    /**
+     * Returns a future that completes when a lane can accept a frame.
+     * The future completes right away if the lane isn't full.
+     * As other producers may fill the lane again, a write after this future completes can still be rejected.
+     * The future is completed on the executor of this writer, so the continuations of the producers don't run on a shared pool.
+     *
+     * @param priority the non-null lane
+     * @return a non-null future
+     */
+    public synchronized CompletableFuture<Void> whenWritable(@NonNull WritePriority priority) {
+        if (!isFull(priority)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var future = new CompletableFuture<Void>();
+        waiters[priority.ordinal()].add(future);
+        return future;
+    }
+
+    /**
+     * Returns whether a lane can accept a frame
+     *
+     * @param priority the non-null lane
+     * @return a boolean
+     */
+    public synchronized boolean isWritable(@NonNull WritePriority priority) {
+        return !isFull(priority);
+    }
+
+    /**
+     * Returns a snapshot of the lanes and of the counters of this writer
+     *
+     * @return a non-null snapshot
+     */
+    public synchronized OutboundMetrics metrics() {
+        return new OutboundMetrics(depth(WritePriority.CONTROL), depth(WritePriority.INTERACTIVE),
+                depth(WritePriority.BULK), capacity, writtenFrames, writtenMessages, rejectedFrames);
+    }
+
+    /**
+     * Returns the number of frames that are waiting to be written in every lane
+     *
+     * @return a non-negative int
+     */
+    public synchronized int pendingFrames() {
+        var result = carry != null ?
+                1 :
+                0;
+        for (var lane : lanes) {
+            result += lane.size();
+        }
+
+        return result;
+    }
+
+    /**
+     * Fails every frame that wasn't written yet and forgets the message in flight.
+     * This should be called when the connection is reset, as the frames would be encrypted for the previous connection.
+     */
+    public void clear() {
+        var dropped = new ArrayList<CompletableFuture<Void>>();
+        var completions = new ArrayList<Runnable>();
+        synchronized (this) {
+            if (carry != null) {
+                dropped.add(carry.future());
+                this.carry = null;
+            }
+
+            for (var lane : lanes) {
+                lane.forEach(entry -> dropped.add(entry.future()));
+                lane.clear();
+            }
+
+            this.inFlight = false;
+            this.lingering = false;
+            this.generation++;
+            notifyWaiters(completions);
+        }
+
+        var exception = new IllegalStateException("Cannot write frame: the connection was reset");
+        dropped.forEach(future -> future.completeExceptionally(exception));
+        completions.forEach(Runnable::run);
+    }
+
+    private boolean isFull(WritePriority priority) {
+        return priority != WritePriority.CONTROL && lanes[priority.ordinal()].size() >= capacity;
+    }
+
+    private int depth(WritePriority priority) {
+        return lanes[priority.ordinal()].size();
+    }
+
+    private void onLingerEnd(long scheduledGeneration) {
+        var completions = new ArrayList<Runnable>();
+        Batch batch;
+        synchronized (this) {
+            if (scheduledGeneration != generation || !lingering) {
+                return;
+            }
+
+            this.lingering = false;
+            if (inFlight) {
+                return;
+            }
+
+            batch = flush(completions);
+        }
+
+        send(batch, completions);
+    }
+
+    private Batch flush(List<Runnable> completions) {
+        this.lingering = false;
+        var batch = new ArrayList<EncodedFrame>();
+        var size = 0;
+        for (var next = nextFrame(completions); next != null; next = nextFrame(completions)) {
+            if (!batch.isEmpty() && size + next.bytes().length > batchSize) {
+                this.carry = next;
+                break;
+            }
+
+            batch.add(next);
+            size += next.bytes().length;
+        }
+
+        notifyWaiters(completions);
+        if (batch.isEmpty()) {
+            this.inFlight = false;
+            return null;
+        }
+
+        this.inFlight = true;
+        this.writtenFrames += batch.size();
+        this.writtenMessages++;
+        return new Batch(batch, createMessage(batch, size), generation);
+    }
+
+    private void send(Batch batch, List<Runnable> completions) {
+        completions.forEach(Runnable::run);
+        if (batch == null) {
+            return;
+        }
+
+        CompletableFuture<Void> result;
+        try {
+            result = transport.send(batch.message());
+        } catch (Throwable throwable) {
+            result = failedFuture(throwable);
+        }
+
+        result.whenCompleteAsync((ignored, throwable) -> onWritten(batch, throwable), executor);
+    }
+
+    private EncodedFrame nextFrame(List<Runnable> completions) {
+        if (carry != null) {
+            var result = carry;
+            this.carry = null;
+            return result;
+        }
+
+        for (var lane : lanes) {
+            while (!lane.isEmpty()) {
+                var next = lane.poll();
+                try {
+                    return new EncodedFrame(next.frame()
+                            .get(), next.future());
+                } catch (Throwable throwable) {
+                    completions.add(() -> next.future()
+                            .completeExceptionally(throwable));
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void notifyWaiters(List<Runnable> completions) {
+        for (var priority : PRIORITIES) {
+            var pending = waiters[priority.ordinal()];
+            if (pending.isEmpty() || isFull(priority)) {
+                continue;
+            }
+
+            waiters[priority.ordinal()] = new ArrayList<>();
+            pending.forEach(waiter -> completions.add(() -> waiter.completeAsync(() -> null, executor)));
+        }
+    }
+
+    private ByteBuffer createMessage(List<EncodedFrame> batch, int size) {
+        if (batch.size() == 1) {
+            return ByteBuffer.wrap(batch.get(0)
+                    .bytes());
+        }
+
+        var message = ByteBuffer.allocate(size);
+        batch.forEach(entry -> message.put(entry.bytes()));
+        return message.flip();
+    }
+
+    private void onWritten(Batch batch, Throwable throwable) {
+        batch.frames()
+                .forEach(entry -> complete(entry.future(), throwable));
+        var completions = new ArrayList<Runnable>();
+        Batch next;
+        synchronized (this) {
+            if (batch.generation() != generation) {
+                return;
+            }
+
+            this.inFlight = false;
+            next = flush(completions);
+        }
+
+        send(next, completions);
+    }
+
+    private void complete(CompletableFuture<Void> future, Throwable throwable) {
+        if (throwable != null) {
+            future.completeExceptionally(throwable);
+            return;
+        }
+
+        future.complete(null);
+    }
+
+    private record PendingFrame(Supplier<byte[]> frame, CompletableFuture<Void> future) {
+    }
+
+    private record EncodedFrame(byte[] bytes, CompletableFuture<Void> future) {
+    }
+
+    private record Batch(List<EncodedFrame> frames, ByteBuffer message, long generation) {
+    }
+}
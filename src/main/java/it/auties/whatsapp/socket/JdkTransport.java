@@ -0,0 +1,155 @@
+package it.auties.whatsapp.socket;
+
+import lombok.NonNull;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * A transport that uses the WebSocket client shipped with the JDK.
+ * The client is provided by the runtime of the session, so all the connections of a runtime are served by a single selector thread instead of a set of threads per connection.
+ * The JDK client allows only one outstanding send at a time, so messages are chained and written in the order they were sent.
+ */
+public class JdkTransport implements Transport {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final int CLOSE_TIMEOUT = 10;
+
+    private final HttpClient client;
+
+    private Handler handler;
+
+    private CompletableFuture<?> lastSend;
+
+    JdkTransport(HttpClient client) {
+        this.client = client;
+        this.lastSend = completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> connect(@NonNull URI uri, @NonNull Listener listener) {
+        var handler = new Handler(listener);
+        this.handler = handler;
+        synchronized (this) {
+            this.lastSend = completedFuture(null);
+        }
+
+        return client.newWebSocketBuilder()
+                .header("Origin", ORIGIN)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .buildAsync(uri, handler)
+                .thenRun(() -> {
+                });
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> send(@NonNull ByteBuffer message) {
+        var webSocket = handler == null ?
+                null :
+                handler.webSocket;
+        if (webSocket == null) {
+            return failedFuture(new IllegalStateException("Cannot send message: the transport is not connected"));
+        }
+
+        var result = lastSend.handle((ignored, throwable) -> null)
+                .thenCompose(ignored -> webSocket.sendBinary(message, true))
+                .<Void>thenApply(ignored -> null);
+        this.lastSend = result;
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> close() {
+        var handler = this.handler;
+        if (handler == null || handler.webSocket == null || handler.notified.get()) {
+            return completedFuture(null);
+        }
+
+        synchronized (this) {
+            this.lastSend = lastSend.handle((ignored, throwable) -> null)
+                    .thenCompose(ignored -> handler.webSocket.sendClose(WebSocket.NORMAL_CLOSURE, ""));
+        }
+
+        return handler.closed.completeOnTimeout(null, CLOSE_TIMEOUT, SECONDS)
+                .thenRun(handler::abort);
+    }
+
+    @Override
+    public boolean isOpen() {
+        var handler = this.handler;
+        return handler != null && handler.webSocket != null && !handler.webSocket.isInputClosed()
+                && !handler.webSocket.isOutputClosed();
+    }
+
+    private static class Handler implements WebSocket.Listener {
+        private final Listener listener;
+
+        private final CompletableFuture<Void> closed;
+
+        private final AtomicBoolean notified;
+
+        private volatile WebSocket webSocket;
+
+        private Handler(Listener listener) {
+            this.listener = listener;
+            this.closed = new CompletableFuture<>();
+            this.notified = new AtomicBoolean();
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            this.webSocket = webSocket;
+            listener.onOpen();
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            listener.onMessage(data);
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            notifyClose();
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            listener.onError(error);
+            notifyClose();
+        }
+
+        private void abort() {
+            if (!webSocket.isInputClosed() || !webSocket.isOutputClosed()) {
+                webSocket.abort();
+            }
+
+            notifyClose();
+        }
+
+        private void notifyClose() {
+            if (!notified.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                listener.onClose();
+            } finally {
+                closed.complete(null);
+            }
+        }
+    }
+}
@@ -3,10 +3,11 @@ package it.auties.whatsapp.socket;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalListener;
+import it.auties.whatsapp.crypto.FanOutCipher;
 import it.auties.whatsapp.crypto.GroupBuilder;
 import it.auties.whatsapp.crypto.GroupCipher;
+import it.auties.whatsapp.crypto.InboundCipher;
 import it.auties.whatsapp.crypto.SessionBuilder;
-import it.auties.whatsapp.crypto.SessionCipher;
 import it.auties.whatsapp.listener.Listener;
 import it.auties.whatsapp.model.action.ContactAction;
 import it.auties.whatsapp.model.chat.Chat;
@@ -24,8 +25,6 @@ import it.auties.whatsapp.model.request.Node;
 import it.auties.whatsapp.model.setting.EphemeralSetting;
 import it.auties.whatsapp.model.signal.keypair.SignalSignedKeyPair;
 import it.auties.whatsapp.model.signal.message.SignalDistributionMessage;
-import it.auties.whatsapp.model.signal.message.SignalMessage;
-import it.auties.whatsapp.model.signal.message.SignalPreKeyMessage;
 import it.auties.whatsapp.model.signal.sender.SenderKeyName;
 import it.auties.whatsapp.model.sync.HistorySync;
 import it.auties.whatsapp.model.sync.PushName;
@@ -36,6 +35,7 @@ import java.time.Duration;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.stream.Stream;
 
@@ -48,23 +48,26 @@ import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.*;
 
 class MessageHandler implements JacksonProvider {
-    private static final String SKMSG = "skmsg";
-    private static final String PKMSG = "pkmsg";
-    private static final String MSG = "msg";
+    // Signal sessions and sender keys are locked by their own address or name, so unrelated senders decrypt in parallel
+    private static final int LOCK_STRIPES = 64;
 
     private final Socket socket;
     private final Cache<ContactJid, GroupMetadata> groupsCache;
     private final Cache<String, List<ContactJid>> devicesCache;
     private final Set<Chat> historyCache;
-    private boolean isReadyForContacts;
+    private volatile boolean isReadyForContacts;
     private final Semaphore lock;
+    private final StripedLock signalLocks;
+    private final DecodeLanes decodeLanes;
 
     protected MessageHandler(Socket socket) {
         this.socket = socket;
         this.groupsCache = createCache(Duration.ofMinutes(5));
         this.devicesCache = createCache(Duration.ofMinutes(5));
-        this.historyCache = new HashSet<>();
+        this.historyCache = ConcurrentHashMap.newKeySet();
         this.lock = new Semaphore(1);
+        this.signalLocks = new StripedLock(LOCK_STRIPES);
+        this.decodeLanes = new DecodeLanes(signalLocks, socket.executor());
     }
 
 
@@ -76,12 +79,12 @@ class MessageHandler implements JacksonProvider {
 
     @SafeVarargs
     protected final CompletableFuture<Void> encode(MessageInfo info, Entry<String, Object>... attributes) {
-        return CompletableFuture.runAsync(this::tryLock)
+        return CompletableFuture.runAsync(this::tryLock, socket.executor())
                 .thenComposeAsync(ignored -> isConversation(info) ?
                         encodeConversation(info, attributes) :
-                        encodeGroup(info, attributes))
-                .thenRunAsync(lock::release)
-                .exceptionallyAsync(this::handleMessageFailure);
+                        encodeGroup(info, attributes), socket.executor())
+                .thenRunAsync(lock::release, socket.executor())
+                .exceptionallyAsync(this::handleMessageFailure, socket.executor());
     }
 
     @SafeVarargs
@@ -92,18 +95,19 @@ class MessageHandler implements JacksonProvider {
                 .companion()
                 .toSignalAddress());
         var groupBuilder = new GroupBuilder(socket.keys());
-        var signalMessage = groupBuilder.createOutgoing(senderName);
         var groupCipher = new GroupCipher(senderName, socket.keys());
-        var groupMessage = groupCipher.encrypt(encodedMessage);
+        var signalMessage = signalLocks.lock(senderName, () -> groupBuilder.createOutgoing(senderName));
+        var groupMessage = signalLocks.lock(senderName, () -> groupCipher.encrypt(encodedMessage));
         return Optional.ofNullable(groupsCache.getIfPresent(info.chatJid()))
                 .map(CompletableFuture::completedFuture)
                 .orElseGet(() -> socket.queryGroupMetadata(info.chatJid()))
-                .thenComposeAsync(this::getDevices)
-                .thenComposeAsync(allDevices -> createGroupNodes(info, signalMessage, allDevices))
-                .thenApplyAsync(preKeys -> createEncodedMessageNode(info, preKeys, groupMessage, attributes))
-                .thenComposeAsync(socket::send)
+                .thenComposeAsync(this::getDevices, socket.executor())
+                .thenComposeAsync(allDevices -> createGroupNodes(info, signalMessage, allDevices), socket.executor())
+                .thenApplyAsync(preKeys -> createEncodedMessageNode(info, preKeys, groupMessage, attributes),
+                        socket.executor())
+                .thenComposeAsync(socket::send, socket.executor())
                 .thenRunAsync(() -> info.chat()
-                        .addMessage(info));
+                        .addMessage(info), socket.executor());
     }
 
     @SafeVarargs
@@ -116,11 +120,13 @@ class MessageHandler implements JacksonProvider {
                 .companion()
                 .toUserJid(), info.chatJid());
         return getDevices(knownDevices, true).thenComposeAsync(
-                        allDevices -> createConversationNodes(allDevices, encodedMessage, encodedDeviceMessage))
-                .thenApplyAsync(sessions -> createEncodedMessageNode(info, sessions, null, attributes))
-                .thenComposeAsync(socket::send)
+                        allDevices -> createConversationNodes(allDevices, encodedMessage, encodedDeviceMessage),
+                                socket.executor())
+                .thenApplyAsync(sessions -> createEncodedMessageNode(info, sessions, null, attributes),
+                        socket.executor())
+                .thenComposeAsync(socket::send, socket.executor())
                 .thenRunAsync(() -> info.chat()
-                        .addMessage(info));
+                        .addMessage(info), socket.executor());
     }
 
     private void tryLock() {
@@ -186,11 +192,11 @@ class MessageHandler implements JacksonProvider {
                 .collect(partitioningBy(contact -> Objects.equals(contact.user(), socket.keys()
                         .companion()
                         .user())));
-        var companions = querySessions(partitioned.get(true)).thenApplyAsync(
-                ignored -> createMessageNodes(partitioned.get(true), deviceMessage));
-        var others = querySessions(partitioned.get(false)).thenApplyAsync(
-                ignored -> createMessageNodes(partitioned.get(false), message));
-        return companions.thenCombineAsync(others, (first, second) -> append(first, second));
+        var companions = querySessions(partitioned.get(true)).thenComposeAsync(
+                ignored -> createMessageNodes(partitioned.get(true), deviceMessage), socket.executor());
+        var others = querySessions(partitioned.get(false)).thenComposeAsync(
+                ignored -> createMessageNodes(partitioned.get(false), message), socket.executor());
+        return companions.thenCombineAsync(others, (first, second) -> append(first, second), socket.executor());
     }
 
     @SneakyThrows
@@ -211,9 +217,9 @@ class MessageHandler implements JacksonProvider {
         var whatsappMessage = new SenderKeyDistributionMessage(info.chatJid()
                 .toString(), distributionMessage);
         var paddedMessage = BytesHelper.messageToBytes(whatsappMessage);
-        return querySessions(missingParticipants).thenApplyAsync(
-                        ignored -> createMessageNodes(missingParticipants, paddedMessage))
-                .thenApplyAsync(results -> savePreKeys(info.chat(), missingParticipants, results));
+        return querySessions(missingParticipants).thenComposeAsync(
+                        ignored -> createMessageNodes(missingParticipants, paddedMessage), socket.executor())
+                .thenApplyAsync(results -> savePreKeys(info.chat(), missingParticipants, results), socket.executor());
     }
 
     private List<Node> savePreKeys(Chat group, List<ContactJid> missingParticipants, List<Node> results) {
@@ -233,19 +239,11 @@ class MessageHandler implements JacksonProvider {
         }
 
         return socket.sendQuery("get", "encrypt", withChildren("key", missingSessions))
-                .thenAcceptAsync(this::parseSessions);
+                .thenAcceptAsync(this::parseSessions, socket.executor());
     }
 
-    private List<Node> createMessageNodes(List<ContactJid> contacts, byte[] message) {
-        return contacts.stream()
-                .map(contact -> createMessageNode(contact, message))
-                .toList();
-    }
-
-    private Node createMessageNode(ContactJid contact, byte[] message) {
-        var cipher = new SessionCipher(contact.toSignalAddress(), socket.keys());
-        var encrypted = cipher.encrypt(message);
-        return withChildren("to", of("jid", contact), encrypted);
+    private CompletableFuture<List<Node>> createMessageNodes(List<ContactJid> contacts, byte[] message) {
+        return new FanOutCipher(socket.keys(), signalLocks, socket.executor()).encrypt(contacts, message);
     }
 
     private CompletableFuture<List<ContactJid>> getDevices(GroupMetadata metadata) {
@@ -273,7 +271,7 @@ class MessageHandler implements JacksonProvider {
 
         return queryDevices(missing, excludeSelf).thenApplyAsync(missingDevices -> excludeSelf ?
                 append(contacts, cached, missingDevices) :
-                append(cached, missingDevices));
+                append(cached, missingDevices), socket.executor());
     }
 
     @SneakyThrows
@@ -286,7 +284,7 @@ class MessageHandler implements JacksonProvider {
                 withChildren("query", withAttributes("devices", of("version", "2"))),
                 withChildren("list", contactNodes));
         return socket.sendQuery("get", "usync", body)
-                .thenApplyAsync(result -> parseDevices(result, excludeSelf));
+                .thenApplyAsync(result -> parseDevices(result, excludeSelf), socket.executor());
     }
 
     private List<ContactJid> parseDevices(Node node, boolean excludeSelf) {
@@ -361,13 +359,24 @@ class MessageHandler implements JacksonProvider {
         var key = node.findNode("key")
                 .flatMap(SignalSignedKeyPair::of)
                 .orElse(null);
-        var builder = new SessionBuilder(jid.toSignalAddress(), socket.keys());
-        builder.createOutgoing(registrationId, identity, signedKey, key);
-    }
-
+        var address = jid.toSignalAddress();
+        var builder = new SessionBuilder(address, socket.keys());
+        signalLocks.lock(address, () -> {
+            builder.createOutgoing(registrationId, identity, signedKey, key);
+            return null;
+        });
+    }
+
+    /**
+     * Decodes a message.
+     * Messages are decoded off the thread of the socket, in the order in which they were received for each sender.
+     * Messages that belong to different senders are decoded in parallel.
+     *
+     * @param node the non-null message node
+     */
     protected void decode(Node node) {
-        var encrypted = node.findNodes("enc");
-        encrypted.forEach(message -> decode(node, message));
+        decodeLanes.execute(node, () -> node.findNodes("enc")
+                .forEach(message -> decode(node, message)));
     }
 
     private void decode(Node infoNode, Node messageNode) {
@@ -408,7 +417,7 @@ class MessageHandler implements JacksonProvider {
                     .timestamp(timestamp)
                     .build();
 
-            socket.sendMessageAck(infoNode, of("class", "receipt"));
+            socket.sendMessageAck(infoNode, "receipt", null);
             var encodedMessage = messageNode.contentAsBytes()
                     .orElseThrow();
             var type = messageNode.attributes()
@@ -447,48 +456,13 @@ class MessageHandler implements JacksonProvider {
     private Optional<byte[]> decodeMessageBytes(ContactJid from, ContactJid participant, byte[] encodedMessage,
                                                 String type) {
         try {
-            lock.acquire();
-            return Optional.ofNullable(switch (type) {
-                case SKMSG -> {
-                    Objects.requireNonNull(participant, "Cannot decipher skmsg without participant");
-                    var senderName = new SenderKeyName(from.toString(), participant.toSignalAddress());
-                    var signalGroup = new GroupCipher(senderName, socket.keys());
-                    yield signalGroup.decrypt(encodedMessage);
-                }
-
-                case PKMSG -> {
-                    var user = from.hasServer(ContactJid.Server.WHATSAPP) ?
-                            from :
-                            participant;
-                    Objects.requireNonNull(user, "Cannot decipher pkmsg without user");
-
-                    var session = new SessionCipher(user.toSignalAddress(), socket.keys());
-                    var preKey = SignalPreKeyMessage.ofSerialized(encodedMessage);
-                    yield session.decrypt(preKey)
-                            .orElse(null);
-                }
-
-                case MSG -> {
-                    var user = from.hasServer(ContactJid.Server.WHATSAPP) ?
-                            from :
-                            participant;
-                    Objects.requireNonNull(user, "Cannot decipher msg without user");
-
-                    var session = new SessionCipher(user.toSignalAddress(), socket.keys());
-                    var signalMessage = SignalMessage.ofSerialized(encodedMessage);
-                    yield session.decrypt(signalMessage);
-                }
-
-                default -> throw new IllegalArgumentException("Unsupported encoded message type: %s".formatted(type));
-            });
+            return new InboundCipher(socket.keys(), signalLocks).decrypt(from, participant, encodedMessage, type);
         } catch (Throwable throwable) {
             socket.errorHandler()
                     .handleFailure(MESSAGE, new RuntimeException(
                             "Cannot decrypt message with type %s inside %s from %s".formatted(type, from,
                                     requireNonNullElse(participant, from)), throwable));
             return Optional.empty();
-        }finally {
-            lock.release();
         }
     }
 
@@ -532,7 +506,10 @@ class MessageHandler implements JacksonProvider {
         var groupName = new SenderKeyName(distributionMessage.groupId(), from.toSignalAddress());
         var builder = new GroupBuilder(socket.keys());
         var message = SignalDistributionMessage.ofSerialized(distributionMessage.data());
-        builder.createIncoming(groupName, message);
+        signalLocks.lock(groupName, () -> {
+            builder.createIncoming(groupName, message);
+            return null;
+        });
     }
 
     @SneakyThrows
@@ -541,7 +518,7 @@ class MessageHandler implements JacksonProvider {
             case HISTORY_SYNC_NOTIFICATION -> {
                 var compressed = Medias.download(protocolMessage.historySyncNotification())
                         .orElseThrow(() -> new IllegalArgumentException("Cannot download history sync"));
-                var decompressed = BytesHelper.deflate(compressed);
+                var decompressed = Inflaters.inflate(compressed);
                 var history = PROTOBUF.readMessage(decompressed, HistorySync.class);
                 switch (history.syncType()) {
                     case INITIAL_STATUS_V3 -> {
@@ -0,0 +1,146 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.model.signal.keypair.SignalKeyPair;
+import it.auties.whatsapp.model.signal.keypair.SignalPreKeyPair;
+import it.auties.whatsapp.util.BytesHelper;
+import it.auties.whatsapp.util.SignalSpecification;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.auties.whatsapp.api.ErrorHandler.Location.UNKNOWN;
+import static it.auties.whatsapp.model.request.Node.with;
+import static it.auties.whatsapp.model.request.Node.withChildren;
+
+/**
+ * Keeps the number of one-time pre keys uploaded to Whatsapp between a low and a high watermark.
+ * Whatsapp notifies how many pre keys it has left as they are consumed by new sessions: when the count drops below the low watermark, enough pre keys to reach the high watermark are uploaded in a single query.
+ * Generating a Curve25519 key pair is the expensive part, so key pairs are generated ahead of time on the executor of the session and kept as spares, which are replenished after every upload.
+ * Ids are assigned only when a key pair is uploaded, so the ids of the pre keys stay sequential even if the spares are lost when the session is closed.
+ */
+class PreKeyManager {
+    private final Socket socket;
+
+    private final ConcurrentLinkedQueue<SignalKeyPair> spares;
+
+    private final AtomicInteger sparesCount;
+
+    private final AtomicBoolean generating;
+
+    private final AtomicBoolean uploading;
+
+    PreKeyManager(@NonNull Socket socket) {
+        this.socket = socket;
+        this.spares = new ConcurrentLinkedQueue<>();
+        this.sparesCount = new AtomicInteger();
+        this.generating = new AtomicBoolean();
+        this.uploading = new AtomicBoolean();
+    }
+
+    /**
+     * Uploads the first pre keys if none were uploaded yet, and starts generating spares
+     */
+    void onLoggedIn() {
+        if (!socket.keys()
+                .hasPreKeys()) {
+            onCount(0);
+            return;
+        }
+
+        generateSpares();
+    }
+
+    /**
+     * Uploads new pre keys if the number of pre keys left on Whatsapp's servers is below the low watermark
+     *
+     * @param count the number of pre keys left
+     */
+    void onCount(long count) {
+        if (count >= socket.options()
+                .preKeysLowWatermark() || !uploading.compareAndSet(false, true)) {
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> upload(count), socket.executor())
+                .exceptionally(throwable -> {
+                    uploading.set(false);
+                    socket.errorHandler()
+                            .handleFailure(UNKNOWN, throwable);
+                    return null;
+                });
+    }
+
+    /**
+     * Returns the number of key pairs that were generated ahead of time and weren't uploaded yet
+     *
+     * @return a non-negative int
+     */
+    int sparesCount() {
+        return sparesCount.get();
+    }
+
+    private void upload(long count) {
+        var size = (int) Math.max(highWatermark() - count, 0);
+        if (size == 0) {
+            uploading.set(false);
+            return;
+        }
+
+        var keys = socket.keys();
+        var startId = keys.lastPreKeyId() + 1;
+        var preKeys = new ArrayList<SignalPreKeyPair>(size);
+        for (var index = 0; index < size; index++) {
+            preKeys.add(createPreKey(startId + index));
+        }
+
+        keys.addPreKeys(preKeys);
+        generateSpares();
+        var nodes = preKeys.stream()
+                .map(SignalPreKeyPair::toNode)
+                .toList();
+        socket.sendQuery("set", "encrypt", with("registration", BytesHelper.intToBytes(keys.id(), 4)),
+                        with("type", SignalSpecification.KEY_BUNDLE_TYPE), with("identity", keys.identityKeyPair()
+                                .publicKey()), withChildren("list", nodes), keys.signedKeyPair()
+                                .toNode())
+                .whenComplete((ignored, throwable) -> uploading.set(false));
+    }
+
+    private SignalPreKeyPair createPreKey(int id) {
+        var keyPair = spares.poll();
+        if (keyPair == null) {
+            keyPair = SignalKeyPair.random();
+        } else {
+            sparesCount.decrementAndGet();
+        }
+
+        return new SignalPreKeyPair(id, keyPair.publicKey(), keyPair.privateKey());
+    }
+
+    private void generateSpares() {
+        if (sparesCount.get() >= highWatermark() || !generating.compareAndSet(false, true)) {
+            return;
+        }
+
+        socket.executor()
+                .execute(() -> {
+                    try {
+                        while (sparesCount.get() < highWatermark()) {
+                            spares.add(SignalKeyPair.random());
+                            sparesCount.incrementAndGet();
+                        }
+                    } finally {
+                        generating.set(false);
+                    }
+                });
+    }
+
+    private int highWatermark() {
+        return Math.max(socket.options()
+                .preKeysHighWatermark(), socket.options()
+                .preKeysLowWatermark());
+    }
+}
@@ -3,8 +3,10 @@ package it.auties.whatsapp.socket;
 import it.auties.whatsapp.api.DisconnectReason;
 import it.auties.whatsapp.api.SocketEvent;
 import it.auties.whatsapp.api.Whatsapp;
-import it.auties.whatsapp.binary.MessageWrapper;
+import it.auties.whatsapp.binary.Decoder;
+import it.auties.whatsapp.binary.FrameAssembler;
 import it.auties.whatsapp.binary.PatchType;
+import it.auties.whatsapp.binary.StanzaTemplate;
 import it.auties.whatsapp.controller.Keys;
 import it.auties.whatsapp.controller.Store;
 import it.auties.whatsapp.exception.ErroneousNodeException;
@@ -24,34 +26,27 @@ import it.auties.whatsapp.model.signal.auth.HandshakeMessage;
 import it.auties.whatsapp.model.sync.ActionValueSync;
 import it.auties.whatsapp.model.sync.PatchRequest;
 import it.auties.whatsapp.util.*;
-import jakarta.websocket.*;
-import jakarta.websocket.ClientEndpointConfig.Configurator;
 import lombok.*;
 import lombok.experimental.Accessors;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
 
 import static it.auties.whatsapp.api.ErrorHandler.Location.UNKNOWN;
 import static it.auties.whatsapp.model.request.Node.withAttributes;
 import static it.auties.whatsapp.model.request.Node.withChildren;
-import static jakarta.websocket.ContainerProvider.getWebSocketContainer;
 import static java.lang.Runtime.getRuntime;
 import static java.util.Map.of;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 
 @Accessors(fluent = true)
-@ClientEndpoint(configurator = Socket.OriginPatcher.class)
-public class Socket implements JacksonProvider, SignalSpecification {
-    static {
-        getWebSocketContainer().setDefaultMaxSessionIdleTimeout(0);
-    }
-
+public class Socket implements JacksonProvider, SignalSpecification, Transport.Listener {
     @NonNull
     private final Whatsapp whatsapp;
 
@@ -67,6 +62,10 @@ public class Socket implements JacksonProvider, SignalSpecification {
     @NonNull
     private final AppStateHandler appStateHandler;
 
+    @NonNull
+    @Getter(AccessLevel.PROTECTED)
+    private final PreKeyManager preKeyManager;
+
     @NonNull
     @Getter
     private final Whatsapp.Options options;
@@ -75,7 +74,19 @@ public class Socket implements JacksonProvider, SignalSpecification {
     @Getter(AccessLevel.PROTECTED)
     private final FailureHandler errorHandler;
 
-    private Session session;
+    @NonNull
+    private final Decoder decoder;
+
+    @NonNull
+    private final FrameAssembler frames;
+
+    @NonNull
+    @Getter
+    private final Transport transport;
+
+    @NonNull
+    @Getter
+    private final FrameWriter writer;
 
     @NonNull
     @Getter(AccessLevel.PROTECTED)
@@ -90,27 +101,71 @@ public class Socket implements JacksonProvider, SignalSpecification {
     @NonNull
     private Store store;
 
+    @NonNull
+    private final Thread shutdownHook;
+
+    private boolean shutdownHookRegistered;
+
     public Socket(@NonNull Whatsapp whatsapp, @NonNull Whatsapp.Options options, @NonNull Store store,
                   @NonNull Keys keys) {
         this.whatsapp = whatsapp;
-        this.options = options;
-        this.store = store;
+        this.options = options.withLatestVersion();
+        this.store = attach(store);
         this.keys = keys;
         this.state = SocketState.WAITING;
         this.authHandler = new AuthHandler(this);
         this.streamHandler = new StreamHandler(this);
         this.messageHandler = new MessageHandler(this);
         this.appStateHandler = new AppStateHandler(this);
+        this.preKeyManager = new PreKeyManager(this);
         this.errorHandler = new FailureHandler(this);
-        getRuntime().addShutdownHook(new Thread(this::onShutdown));
+        this.decoder = new Decoder();
+        this.frames = new FrameAssembler();
+        this.transport = Transport.of(options.transport(), options.runtime());
+        this.writer = new FrameWriter(transport, options.writeBatchSize(), options.writeLinger(),
+                options.writeQueueCapacity(), options.executor());
+        this.shutdownHook = new Thread(() -> onShutdown().join());
+        registerShutdownHook();
+    }
+
+    private synchronized void registerShutdownHook() {
+        if (shutdownHookRegistered) {
+            return;
+        }
+
+        getRuntime().addShutdownHook(shutdownHook);
+        this.shutdownHookRegistered = true;
+    }
+
+    // The hook references the whole session, so it's removed when the session is closed to let it be collected
+    private synchronized void unregisterShutdownHook() {
+        if (!shutdownHookRegistered) {
+            return;
+        }
+
+        try {
+            getRuntime().removeShutdownHook(shutdownHook);
+            this.shutdownHookRegistered = false;
+        } catch (IllegalStateException ignored) {
+            // The JVM is already shutting down
+        }
     }
 
-    private void onShutdown() {
+    private CompletableFuture<Void> onShutdown() {
         keys.dispose();
         store.dispose();
         streamHandler.dispose();
         Preferences.waitAsyncOperations();
-        onSocketEvent(SocketEvent.CLOSE);
+        return onSocketEvent(SocketEvent.CLOSE);
+    }
+
+    /**
+     * Returns the executor that runs the asynchronous stages of this session
+     *
+     * @return a non-null executor
+     */
+    public Executor executor() {
+        return options.executor();
     }
 
     public Contact createContact(ContactJid jid) {
@@ -125,27 +180,29 @@ public class Socket implements JacksonProvider, SignalSpecification {
         return newChat;
     }
 
+    private Store attach(Store store) {
+        var runtime = options.runtime();
+        return store.requestsService(runtime.newListenersLane())
+                .timingWheel(runtime.timingWheel())
+                .timeoutsExecutor(options.executor());
+    }
+
     public void changeKeys() {
         var oldListeners = new ArrayList<>(store.listeners());
         deleteAndClearKeys();
 
         var newId = KeyHelper.registrationId();
         this.keys = Keys.random(newId, options.defaultSerialization());
-        this.store = Store.random(newId, options.defaultSerialization());
+        this.store = attach(Store.random(newId, options.defaultSerialization()));
         store.listeners()
                 .addAll(oldListeners);
         onDisconnected(DisconnectReason.LOGGED_OUT);
     }
     
-    @NonNull
-    public Session session() {
-        return session;
-    }
-
-    @OnOpen
-    @SneakyThrows
-    public void onOpen(@NonNull Session session) {
-        this.session = session;
+    @Override
+    public void onOpen() {
+        frames.clear();
+        writer.clear();
         if (state == SocketState.CONNECTED) {
             return;
         }
@@ -158,27 +215,24 @@ public class Socket implements JacksonProvider, SignalSpecification {
                 .publicKey());
         var handshakeMessage = new HandshakeMessage(clientHello);
         Request.with(handshakeMessage)
-                .sendWithPrologue(session, keys, store);
+                .sendWithPrologue(writer, keys, store);
     }
 
-    @OnMessage
-    public void onBinary(byte @NonNull [] raw) {
-        var message = new MessageWrapper(raw);
-        if (message.decoded()
-                .isEmpty()) {
-            return;
-        }
+    @Override
+    public void onMessage(@NonNull ByteBuffer fragment) {
+        frames.append(fragment, this::onFrame);
+    }
 
-        var header = message.decoded()
-                .getFirst();
+    private void onFrame(ByteBuffer frame) {
         if (state != SocketState.CONNECTED) {
-            authHandler.login(session(), header.toByteArray())
-                    .thenRunAsync(() -> state(SocketState.CONNECTED));
+            authHandler.login(writer, BytesHelper.bufferToBytes(frame))
+                    .thenRunAsync(() -> state(SocketState.CONNECTED), executor());
             return;
         }
 
-        message.toNodes(keys)
-                .forEach(this::handleNode);
+        var plainText = keys.readCipher()
+                .decrypt(keys.readCounter(true), frame);
+        handleNode(decoder.decode(plainText));
     }
 
     private void handleNode(Node deciphered) {
@@ -194,37 +248,39 @@ public class Socket implements JacksonProvider, SignalSpecification {
         });
     }
 
-    @SneakyThrows
     public CompletableFuture<Void> connect() {
+        registerShutdownHook();
         if (authHandler.future() == null || authHandler.future()
                 .isDone()) {
             authHandler.createFuture();
         }
 
-        getWebSocketContainer().connectToServer(this, URI.create(options.url()));
-        return authHandler.future();
+        var future = authHandler.future();
+        transport.connect(URI.create(options.url()), this)
+                .exceptionallyAsync(throwable -> {
+                    future.completeExceptionally(throwable);
+                    return null;
+                }, executor());
+        return future;
     }
 
-    @SneakyThrows
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public void await() {
-        if (streamHandler.pingService() == null) {
+        if (streamHandler.pingCompletion() == null) {
             return;
         }
 
-        streamHandler.pingService()
-                .awaitTermination(Integer.MAX_VALUE, TimeUnit.DAYS);
+        streamHandler.pingCompletion()
+                .join();
     }
 
-    @SneakyThrows
     public CompletableFuture<Void> disconnect(boolean reconnect) {
         state(reconnect ? SocketState.RECONNECTING : SocketState.DISCONNECTED);
         keys.clear();
-        session.close();
-        return reconnect ? connect() : completedFuture(null);
+        return transport.close()
+                .thenComposeAsync(ignored -> reconnect ? connect() : completedFuture(null), executor());
     }
 
-    @OnClose
+    @Override
     public void onClose() {
         if (authHandler.future() != null && !authHandler.future()
                 .isDone() && state == SocketState.DISCONNECTED) {
@@ -240,10 +296,11 @@ public class Socket implements JacksonProvider, SignalSpecification {
 
         onDisconnected(DisconnectReason.DISCONNECTED);
         onShutdown();
+        unregisterShutdownHook();
     }
 
-    @OnError
-    public void onError(Throwable throwable) {
+    @Override
+    public void onError(@NonNull Throwable throwable) {
         onSocketEvent(SocketEvent.ERROR);
         errorHandler.handleFailure(UNKNOWN, throwable);
     }
@@ -256,8 +313,8 @@ public class Socket implements JacksonProvider, SignalSpecification {
                 node.toRequest(node.id() == null ?
                                 store.nextTag() :
                                 null)
-                        .send(session, keys, store)
-                        .exceptionallyAsync(errorHandler::handleNodeFailure);
+                        .send(writer, keys, store)
+                        .exceptionallyAsync(errorHandler::handleNodeFailure, executor());
 
     }
 
@@ -276,8 +333,52 @@ public class Socket implements JacksonProvider, SignalSpecification {
                 node.toRequest(node.id() == null ?
                                 store.nextTag() :
                                 null)
-                        .sendWithNoResponse(session, keys, store)
-                        .exceptionallyAsync(throwable -> errorHandler.handleFailure(UNKNOWN, throwable));
+                        .sendWithNoResponse(writer, keys, store)
+                        .exceptionallyAsync(throwable -> errorHandler.handleFailure(UNKNOWN, throwable), executor());
+    }
+
+    /**
+     * Sends a stanza built from a template and waits for its response
+     *
+     * @param template the non-null template of the stanza
+     * @param id       the nullable id of the stanza, if null a new tag is used
+     * @param values   the values of the slots of the template
+     * @return a CompletableFuture
+     */
+    public CompletableFuture<Node> send(@NonNull StanzaTemplate template, String id, Object... values) {
+        var request = createRequest(template, id, values);
+        return errorHandler.failure()
+                .get() ?
+                CompletableFuture.failedFuture(new IllegalStateException("Socket is in fail safe state")) :
+                request.send(writer, keys, store)
+                        .exceptionallyAsync(errorHandler::handleNodeFailure, executor());
+    }
+
+    /**
+     * Sends a stanza built from a template without waiting for a response
+     *
+     * @param template the non-null template of the stanza
+     * @param id       the nullable id of the stanza, if null a new tag is used
+     * @param values   the values of the slots of the template
+     * @return a CompletableFuture
+     */
+    public CompletableFuture<Void> sendWithNoResponse(@NonNull StanzaTemplate template, String id, Object... values) {
+        var request = createRequest(template, id, values);
+        return errorHandler.failure()
+                .get() ?
+                CompletableFuture.failedFuture(new IllegalStateException("Socket is in fail safe state")) :
+                request.sendWithNoResponse(writer, keys, store)
+                        .exceptionallyAsync(throwable -> errorHandler.handleFailure(UNKNOWN, throwable), executor());
+    }
+
+    private Request createRequest(StanzaTemplate template, String id, Object[] values) {
+        var requestId = Objects.requireNonNullElseGet(id, store::nextTag);
+        if (!store.listeners()
+                .isEmpty()) {
+            onNodeSent(template.toNode(requestId, values));
+        }
+
+        return Request.withEncoded(requestId, template.encode(requestId, values));
     }
 
     public CompletableFuture<Void> pushPatch(PatchRequest request) {
@@ -331,7 +432,7 @@ public class Socket implements JacksonProvider, SignalSpecification {
         var sync = withChildren("usync",
                 of("sid", store.nextTag(), "mode", "query", "last", "true", "index", "0", "context", "interactive"),
                 query, list);
-        return sendQuery("get", "usync", sync).thenApplyAsync(this::parseQueryResult);
+        return sendQuery("get", "usync", sync).thenApplyAsync(this::parseQueryResult, executor());
     }
 
     private List<Node> parseQueryResult(Node result) {
@@ -348,16 +449,16 @@ public class Socket implements JacksonProvider, SignalSpecification {
     public CompletableFuture<GroupMetadata> queryGroupMetadata(ContactJid group) {
         var body = withAttributes("query", of("request", "interactive"));
         return sendQuery(group, "get", "w:g2", body).thenApplyAsync(node -> node.findNode("group")
-                        .orElseThrow(() -> new ErroneousNodeException("Missing group node", node)))
-                .exceptionallyAsync(errorHandler::handleNodeFailure)
-                .thenApplyAsync(GroupMetadata::of);
+                        .orElseThrow(() -> new ErroneousNodeException("Missing group node", node)), executor())
+                .exceptionallyAsync(errorHandler::handleNodeFailure, executor())
+                .thenApplyAsync(GroupMetadata::of, executor());
     }
 
     protected void sendSyncReceipt(MessageInfo info, String type) {
-        var receipt = withAttributes("receipt", of("to", ContactJid.of(keys.companion()
-                .user(), ContactJid.Server.USER), "type", type, "id", info.key()
-                .id()));
-        sendWithNoResponse(receipt);
+        var to = ContactJid.of(keys.companion()
+                .user(), ContactJid.Server.USER);
+        sendWithNoResponse(StanzaTemplate.RECEIPT, info.key()
+                .id(), type, to, null, null);
     }
 
     protected void sendReceipt(ContactJid jid, ContactJid participant, List<String> messages) {
@@ -365,6 +466,15 @@ public class Socket implements JacksonProvider, SignalSpecification {
             return;
         }
 
+        if (messages.size() == 1) {
+            var receiptParticipant = Objects.equals(jid, participant) ?
+                    null :
+                    participant;
+            sendWithNoResponse(StanzaTemplate.RECEIPT, messages.get(0), null, jid, receiptParticipant,
+                    Clock.now() / 1000);
+            return;
+        }
+
         var attributes = Attributes.empty()
                 .put("id", messages.get(0))
                 .put("t", Clock.now() / 1000)
@@ -385,19 +495,13 @@ public class Socket implements JacksonProvider, SignalSpecification {
                 .toList();
     }
 
-    protected void sendMessageAck(Node node, Map<String, Object> metadata) {
+    protected void sendMessageAck(Node node, @NonNull String clazz, String type) {
         var to = node.attributes()
                 .getJid("from")
                 .orElseThrow(() -> new NoSuchElementException("Missing from in message ack"));
         var participant = node.attributes()
                 .getNullableString("participant");
-        var attributes = Attributes.of(metadata)
-                .put("id", node.id())
-                .put("to", to)
-                .put("participant", participant, Objects::nonNull)
-                .map();
-        var receipt = withAttributes("ack", attributes);
-        sendWithNoResponse(receipt);
+        sendWithNoResponse(StanzaTemplate.ACK, node.id(), clazz, type, to, participant, null);
     }
 
     private void deleteAndClearKeys() {
@@ -497,44 +601,45 @@ public class Socket implements JacksonProvider, SignalSpecification {
         });
     }
 
-    protected void onSocketEvent(SocketEvent event) {
-        store.invokeListeners(listener -> {
+    protected CompletableFuture<Void> onSocketEvent(SocketEvent event) {
+        return store.invokeListeners(listener -> {
             listener.onSocketEvent(whatsapp, event);
             listener.onSocketEvent(event);
         });
     }
 
-    protected void onDisconnected(DisconnectReason loggedOut) {
-        store.invokeListeners(listener -> {
+    protected CompletableFuture<Void> onDisconnected(DisconnectReason loggedOut) {
+        return store.invokeListeners(listener -> {
             listener.onDisconnected(whatsapp, loggedOut);
             listener.onDisconnected(loggedOut);
         });
     }
 
     protected void onLoggedIn() {
+        var future = authHandler.future();
         store.invokeListeners(listener -> {
-            listener.onLoggedIn(whatsapp);
-            listener.onLoggedIn();
-        });
-        authHandler.future().complete(null);
+                    listener.onLoggedIn(whatsapp);
+                    listener.onLoggedIn();
+                })
+                .thenRun(() -> future.complete(null));
     }
     
-    protected void onChats(){
-        store.invokeListeners(listener -> {
+    protected CompletableFuture<Void> onChats(){
+        return store.invokeListeners(listener -> {
             listener.onChats(whatsapp);
             listener.onChats();
         });
     }
 
-    protected void onStatus(){
-        store.invokeListeners(listener -> {
+    protected CompletableFuture<Void> onStatus(){
+        return store.invokeListeners(listener -> {
             listener.onStatus(whatsapp);
             listener.onStatus();
         });
     }
 
-    protected void onContacts(){
-        store.invokeListeners(listener -> {
+    protected CompletableFuture<Void> onContacts(){
+        return store.invokeListeners(listener -> {
             listener.onContacts(whatsapp);
             listener.onContacts();
         });
@@ -545,12 +650,4 @@ public class Socket implements JacksonProvider, SignalSpecification {
         appStateHandler.latch()
                 .await();
     }
-
-    public static class OriginPatcher extends Configurator {
-        @Override
-        public void beforeRequest(@NonNull Map<String, List<String>> headers) {
-            headers.put("Origin", List.of("https://web.whatsapp.com"));
-            headers.put("Host", List.of("web.whatsapp.com"));
-        }
-    }
 }
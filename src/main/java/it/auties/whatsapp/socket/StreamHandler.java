@@ -4,6 +4,7 @@ import it.auties.bytes.Bytes;
 import it.auties.curve25519.Curve25519;
 import it.auties.whatsapp.api.SocketEvent;
 import it.auties.whatsapp.binary.PatchType;
+import it.auties.whatsapp.binary.StanzaTemplate;
 import it.auties.whatsapp.crypto.Hmac;
 import it.auties.whatsapp.exception.ErroneousNodeException;
 import it.auties.whatsapp.exception.HmacValidationException;
@@ -19,7 +20,6 @@ import it.auties.whatsapp.model.request.Node;
 import it.auties.whatsapp.model.signal.auth.DeviceIdentity;
 import it.auties.whatsapp.model.signal.auth.SignedDeviceIdentity;
 import it.auties.whatsapp.model.signal.auth.SignedDeviceIdentityHMAC;
-import it.auties.whatsapp.model.signal.keypair.SignalPreKeyPair;
 import it.auties.whatsapp.util.*;
 import lombok.*;
 import lombok.experimental.Accessors;
@@ -27,30 +27,28 @@ import lombok.experimental.Accessors;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static it.auties.whatsapp.api.ErrorHandler.Location.*;
 import static it.auties.whatsapp.model.request.Node.*;
 import static java.util.Map.of;
-import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 
 @RequiredArgsConstructor
 @Accessors(fluent = true)
 class StreamHandler implements JacksonProvider {
     private static final byte[] MESSAGE_HEADER = {6, 0};
     private static final byte[] SIGNATURE_HEADER = {6, 1};
-    private static final int REQUIRED_PRE_KEYS_SIZE = 5;
-    private static final int PRE_KEYS_UPLOAD_CHUNK = 30;
     private static final int PING_INTERVAL = 30;
 
     private final Socket socket;
 
+    private ScheduledFuture<?> pingTask;
+
     @Getter(AccessLevel.PROTECTED)
-    private ScheduledExecutorService pingService;
+    private CompletableFuture<Void> pingCompletion;
 
     protected void digest(@NonNull Node node) {
         switch (node.description()) {
@@ -125,10 +123,7 @@ class StreamHandler implements JacksonProvider {
             updateMessageStatus(node, status);
         }
 
-        var attributes = Attributes.empty()
-                .put("class", "receipt")
-                .put("type", type, Objects::nonNull);
-        socket.sendMessageAck(node, attributes.map());
+        socket.sendMessageAck(node, "receipt", type);
     }
 
     private void updateMessageStatus(Node node, MessageStatus status) {
@@ -171,13 +166,13 @@ class StreamHandler implements JacksonProvider {
     }
 
     private void digestCall(Node node) {
-        var call = node.children()
-                .peekFirst();
+        var call = node.findNode()
+                .orElse(null);
         if (call == null) {
             return;
         }
 
-        socket.sendMessageAck(node, of("class", "call", "type", call.description()));
+        socket.sendMessageAck(node, "call", call.description());
     }
 
     private void digestAck(Node node) {
@@ -190,14 +185,13 @@ class StreamHandler implements JacksonProvider {
         var from = node.attributes()
                 .getJid("from")
                 .orElseThrow(() -> new NoSuchElementException("Cannot digest ack: missing from"));
-        var receipt = withAttributes("ack", of("class", "receipt", "id", node.id(), "from", from));
-        socket.sendWithNoResponse(receipt);
+        socket.sendWithNoResponse(StanzaTemplate.ACK, node.id(), "receipt", null, null, null, from);
     }
 
     private void digestNotification(Node node) {
         var type = node.attributes()
                 .getString("type", null);
-        socket.sendMessageAck(node, of("class", "notification", "type", type));
+        socket.sendMessageAck(node, "notification", type);
         handleMessageNotification(node);
         if (!Objects.equals(type, "server_sync")) {
             return;
@@ -229,11 +223,8 @@ class StreamHandler implements JacksonProvider {
             var keysSize = node.findNode("count")
                     .flatMap(Node::contentAsLong)
                     .orElse(0L);
-            if (keysSize >= REQUIRED_PRE_KEYS_SIZE) {
-                return;
-            }
-
-            sendPreKeys();
+            socket.preKeyManager()
+                    .onCount(keysSize);
         }
 
         var stubType = MessageInfo.StubType.forSymbol(body.description());
@@ -297,8 +288,8 @@ class StreamHandler implements JacksonProvider {
     }
 
     private void handleStreamError(Node node) {
-        var child = node.children()
-                .getFirst();
+        var child = node.findNode()
+                .orElseThrow();
         var type = child.attributes()
                 .getString("type");
         var reason = child.attributes()
@@ -311,10 +302,8 @@ class StreamHandler implements JacksonProvider {
 
     private void digestSuccess() {
         confirmConnection();
-        if (!socket.keys()
-                .hasPreKeys()) {
-            sendPreKeys();
-        }
+        socket.preKeyManager()
+                .onLoggedIn();
 
         createPingTask();
         createMediaConnection();
@@ -331,22 +320,35 @@ class StreamHandler implements JacksonProvider {
     }
 
     private void createPingTask() {
-        if (pingService != null && !pingService.isShutdown()) {
+        if (pingTask != null && !pingTask.isDone()) {
             return;
         }
 
-        this.pingService = newSingleThreadScheduledExecutor();
-        pingService.scheduleAtFixedRate(this::sendPing, PING_INTERVAL, PING_INTERVAL, TimeUnit.SECONDS);
+        this.pingCompletion = new CompletableFuture<>();
+        this.pingTask = socket.options()
+                .runtime()
+                .scheduler()
+                .scheduleAtFixedRate(() -> socket.executor()
+                        .execute(this::sendPing), PING_INTERVAL, PING_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private void stopPingTask() {
+        if (pingTask != null) {
+            pingTask.cancel(false);
+        }
+
+        if (pingCompletion != null) {
+            pingCompletion.complete(null);
+        }
     }
 
     private void sendStatusUpdate() {
-        var presence = withAttributes("presence", of("type", "available"));
-        socket.sendWithNoResponse(presence);
+        socket.sendWithNoResponse(StanzaTemplate.PRESENCE, null, "available", null);
         socket.sendQuery("get", "blocklist");
         socket.sendQuery("get", "privacy", with("privacy"));
         socket.sendQuery("get", "abt", withAttributes("props", of("protocol", "1")));
         socket.sendQuery("get", "w", with("props"))
-                .thenAcceptAsync(this::parseProps);
+                .thenAcceptAsync(this::parseProps, socket.executor());
     }
 
     private void parseProps(Node result) {
@@ -363,13 +365,17 @@ class StreamHandler implements JacksonProvider {
 
     private void sendPing() {
         if (socket.state() != SocketState.CONNECTED) {
-            pingService.shutdownNow();
+            stopPingTask();
             return;
         }
 
+        socket.keys()
+                .evictSkippedMessageKeys(socket.options()
+                        .skippedMessageKeysTtl(), socket.options()
+                        .maxSkippedMessageKeys());
         socket.store()
                 .serialize();
-        socket.sendQuery("get", "w:p", with("ping"));
+        socket.send(StanzaTemplate.PING, null);
         socket.onSocketEvent(SocketEvent.PING);
     }
 
@@ -380,24 +386,29 @@ class StreamHandler implements JacksonProvider {
         }
 
         socket.sendQuery("set", "w:m", with("media_conn"))
-                .thenApplyAsync(MediaConnection::of)
+                .thenApplyAsync(node -> MediaConnection.of(node, socket.options()
+                        .runtime()
+                        .httpClient()), socket.executor())
                 .thenApplyAsync(result -> socket.store()
-                        .mediaConnection(result))
+                        .mediaConnection(result), socket.executor())
                 .exceptionallyAsync(throwable -> socket.errorHandler()
-                        .handleFailure(MEDIA_CONNECTION, throwable))
+                        .handleFailure(MEDIA_CONNECTION, throwable), socket.executor())
                 .thenRunAsync(() -> runAsyncDelayed(this::createMediaConnection, socket.store()
                         .mediaConnection()
-                        .ttl()));
+                        .ttl()), socket.executor());
     }
 
     private void runAsyncDelayed(Runnable runnable, int seconds) {
-        var mediaService = CompletableFuture.delayedExecutor(seconds, TimeUnit.SECONDS);
-        CompletableFuture.runAsync(runnable, mediaService);
+        socket.options()
+                .runtime()
+                .scheduler()
+                .schedule(() -> socket.executor()
+                        .execute(runnable), seconds, TimeUnit.SECONDS);
     }
 
     private void digestIq(Node node) {
-        var container = node.children()
-                .peekFirst();
+        var container = node.findNode()
+                .orElse(null);
         if (container == null) {
             return;
         }
@@ -420,22 +431,6 @@ class StreamHandler implements JacksonProvider {
         socket.sendQuery("set", "passive", with("active"));
     }
 
-    private void sendPreKeys() {
-        var startId = socket.keys()
-                .lastPreKeyId() + 1;
-        var preKeys = IntStream.range(startId, startId + PRE_KEYS_UPLOAD_CHUNK)
-                .mapToObj(SignalPreKeyPair::random)
-                .peek(socket.keys()::addPreKey)
-                .map(SignalPreKeyPair::toNode)
-                .toList();
-        socket.sendQuery("set", "encrypt", with("registration", BytesHelper.intToBytes(socket.keys()
-                .id(), 4)), with("type", SignalSpecification.KEY_BUNDLE_TYPE), with("identity", socket.keys()
-                .identityKeyPair()
-                .publicKey()), withChildren("list", preKeys), socket.keys()
-                .signedKeyPair()
-                .toNode());
-    }
-
     private void generateQrCode(Node node, Node container) {
         printQrCode(container);
         sendConfirmNode(node, null);
@@ -530,10 +525,6 @@ class StreamHandler implements JacksonProvider {
     }
 
     public void dispose() {
-        if (pingService == null) {
-            return;
-        }
-
-        pingService.shutdownNow();
+        stopPingTask();
     }
 }
@@ -0,0 +1,104 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.api.TransportType;
+import it.auties.whatsapp.api.WhatsappRuntime;
+import lombok.NonNull;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A WebSocket connection used by {@link Socket} to exchange frames with Whatsapp.
+ * Implementations only move bytes: splitting messages into frames, encryption and decoding are handled by the socket.
+ * A transport can be connected again after it's closed, but it handles at most one connection at a time.
+ */
+public interface Transport {
+    /**
+     * The origin that Whatsapp expects in the handshake
+     */
+    String ORIGIN = "https://web.whatsapp.com";
+
+    /**
+     * The host that Whatsapp expects in the handshake
+     */
+    String HOST = "web.whatsapp.com";
+
+    /**
+     * Constructs a new transport
+     *
+     * @param type    the non-null type of the transport
+     * @param runtime the non-null runtime whose I/O resources the transport uses
+     * @return a non-null transport
+     */
+    static Transport of(@NonNull TransportType type, @NonNull WhatsappRuntime runtime) {
+        return switch (type) {
+            case TYRUS -> new TyrusTransport(runtime.webSocketContainer());
+            case JDK -> new JdkTransport(runtime.httpClient());
+        };
+    }
+
+    /**
+     * Opens a connection to an endpoint
+     *
+     * @param uri      the non-null uri of the endpoint
+     * @param listener the non-null listener that receives the events of the connection
+     * @return a future that completes when the connection is open
+     */
+    CompletableFuture<Void> connect(@NonNull URI uri, @NonNull Listener listener);
+
+    /**
+     * Sends a binary message.
+     * Messages are sent in the same order as this method is called.
+     *
+     * @param message the non-null message to send, it shouldn't be modified until the returned future completes
+     * @return a future that completes when the message was written
+     */
+    CompletableFuture<Void> send(@NonNull ByteBuffer message);
+
+    /**
+     * Closes the connection, if any.
+     * The listener is notified when the connection is closed.
+     *
+     * @return a future that completes when the close request was sent
+     */
+    CompletableFuture<Void> close();
+
+    /**
+     * Returns whether the connection is open
+     *
+     * @return a boolean
+     */
+    boolean isOpen();
+
+    /**
+     * A listener for the events of a connection.
+     * Events of the same connection are never delivered concurrently.
+     */
+    interface Listener {
+        /**
+         * Called when the connection is open
+         */
+        void onOpen();
+
+        /**
+         * Called when a binary message, or a part of it, is received.
+         * The buffer is only valid until this method returns.
+         *
+         * @param fragment the non-null received bytes
+         */
+        void onMessage(@NonNull ByteBuffer fragment);
+
+        /**
+         * Called when the connection is closed
+         */
+        void onClose();
+
+        /**
+         * Called when an error occurs
+         *
+         * @param throwable the non-null error
+         */
+        void onError(@NonNull Throwable throwable);
+    }
+}
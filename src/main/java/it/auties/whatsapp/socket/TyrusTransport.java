@@ -0,0 +1,106 @@
+package it.auties.whatsapp.socket;
+
+import jakarta.websocket.*;
+import jakarta.websocket.ClientEndpointConfig.Configurator;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+
+/**
+ * A transport that uses the Jakarta WebSocket client implemented by Tyrus.
+ * The container is provided by the runtime of the session, so that connections share its I/O threads.
+ */
+@ClientEndpoint(configurator = TyrusTransport.OriginPatcher.class)
+public class TyrusTransport implements Transport {
+    private final WebSocketContainer container;
+
+    private Session session;
+
+    private Listener listener;
+
+    TyrusTransport(WebSocketContainer container) {
+        this.container = container;
+    }
+
+    @Override
+    public CompletableFuture<Void> connect(@NonNull URI uri, @NonNull Listener listener) {
+        try {
+            this.listener = listener;
+            container.connectToServer(this, uri);
+            return completedFuture(null);
+        } catch (DeploymentException | IOException exception) {
+            return failedFuture(exception);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> send(@NonNull ByteBuffer message) {
+        var future = new CompletableFuture<Void>();
+        session.getAsyncRemote()
+                .sendBinary(message, result -> {
+                    if (!result.isOK()) {
+                        future.completeExceptionally(result.getException());
+                        return;
+                    }
+
+                    future.complete(null);
+                });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> close() {
+        if (session == null) {
+            return completedFuture(null);
+        }
+
+        try {
+            session.close();
+            return completedFuture(null);
+        } catch (IOException exception) {
+            return failedFuture(exception);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return session != null && session.isOpen();
+    }
+
+    @OnOpen
+    public void onOpen(@NonNull Session session) {
+        this.session = session;
+        listener.onOpen();
+    }
+
+    @OnMessage
+    public void onBinary(byte @NonNull [] raw, boolean last) {
+        listener.onMessage(ByteBuffer.wrap(raw));
+    }
+
+    @OnClose
+    public void onClose() {
+        listener.onClose();
+    }
+
+    @OnError
+    public void onError(Throwable throwable) {
+        listener.onError(throwable);
+    }
+
+    public static class OriginPatcher extends Configurator {
+        @Override
+        public void beforeRequest(@NonNull Map<String, List<String>> headers) {
+            headers.put("Origin", List.of(ORIGIN));
+            headers.put("Host", List.of(HOST));
+        }
+    }
+}
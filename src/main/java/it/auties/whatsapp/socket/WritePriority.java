@@ -0,0 +1,56 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.model.request.Node;
+import lombok.NonNull;
+
+import java.util.Set;
+
+/**
+ * The constants of this enumerated type describe the lanes of the outbound queue of a socket.
+ * When a message is written, frames are taken from the lanes in the order in which they are declared here.
+ */
+public enum WritePriority {
+    /**
+     * Handshakes, acks, receipts, presences and pings.
+     * If these are delayed for too long, Whatsapp closes the connection, so this lane is never bounded.
+     */
+    CONTROL,
+
+    /**
+     * Queries that a caller is usually waiting for
+     */
+    INTERACTIVE,
+
+    /**
+     * Messages, app state patches and pre key uploads
+     */
+    BULK;
+
+    private static final Set<String> BULK_QUERIES = Set.of("w:sync:app:state", "encrypt");
+
+    /**
+     * Returns the lane of a node
+     *
+     * @param node the non-null node
+     * @return a non-null priority
+     */
+    public static WritePriority of(@NonNull Node node) {
+        return switch (node.description()) {
+            case "message" -> BULK;
+            case "iq" -> isBulkQuery(node) ?
+                    BULK :
+                    INTERACTIVE;
+            default -> CONTROL;
+        };
+    }
+
+    private static boolean isBulkQuery(Node node) {
+        return node.attributes()
+                .getOptionalString("xmlns")
+                .filter(BULK_QUERIES::contains)
+                .isPresent() && node.attributes()
+                .getOptionalString("type")
+                .filter("set"::equals)
+                .isPresent();
+    }
+}
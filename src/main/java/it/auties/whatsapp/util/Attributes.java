@@ -4,7 +4,6 @@ import it.auties.whatsapp.model.contact.ContactJid;
 import lombok.NonNull;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
@@ -14,9 +13,15 @@ import java.util.function.Function;
 import static java.util.Map.ofEntries;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * The attributes of a {@link it.auties.whatsapp.model.request.Node}.
+ * Attributes are stored in a {@link CompactMap}, so they keep their insertion order.
+ *
+ * @param map the non-null map that holds the attributes
+ */
 public record Attributes(Map<String, Object> map) {
     public static Attributes empty() {
-        return of(new HashMap<>());
+        return new Attributes(new CompactMap<>());
     }
 
     @SafeVarargs
@@ -26,8 +31,8 @@ public record Attributes(Map<String, Object> map) {
 
     public static Attributes of(Map<String, Object> map) {
         return new Attributes(map != null ?
-                new HashMap<>(map) :
-                new HashMap<>());
+                new CompactMap<>(map) :
+                new CompactMap<>());
     }
 
     public boolean hasKey(@NonNull String key) {
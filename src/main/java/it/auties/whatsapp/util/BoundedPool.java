@@ -0,0 +1,132 @@
+package it.auties.whatsapp.util;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A bounded pool of reusable objects that are expensive to create, like crypto engines or native zlib streams.
+ * An operation borrows an object from the pool and gives it back when it's done: a new object is created if none is idle, and one that doesn't fit back in the pool is discarded.
+ * Objects aren't bound to a thread, as a thread local would create an object for each virtual thread and never release it.
+ * Objects are given back as they are unless the pool resets them, so an operation must initialize the object it borrows.
+ *
+ * @param <T> the type of the pooled objects
+ */
+public final class BoundedPool<T> {
+    /**
+     * The default number of idle objects kept by a pool
+     */
+    public static final int DEFAULT_CAPACITY = Math.max(16, Runtime.getRuntime()
+            .availableProcessors() * 4);
+
+    private final Factory<T> factory;
+
+    private final Consumer<T> reset;
+
+    private final Consumer<T> discard;
+
+    private final int capacity;
+
+    private final ConcurrentLinkedDeque<T> idle;
+
+    private final AtomicInteger idleCount;
+
+    /**
+     * Constructs a pool of objects that don't need to be reset or released
+     *
+     * @param factory the non-null factory of the pooled objects
+     */
+    public BoundedPool(@NonNull Factory<T> factory) {
+        this(factory, ignored -> {}, ignored -> {}, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a pool
+     *
+     * @param factory  the non-null factory of the pooled objects
+     * @param reset    the non-null action that resets an object before it's given back
+     * @param discard  the non-null action that releases an object that doesn't fit in the pool
+     * @param capacity the maximum number of idle objects
+     */
+    public BoundedPool(@NonNull Factory<T> factory, @NonNull Consumer<T> reset, @NonNull Consumer<T> discard, int capacity) {
+        Validate.isTrue(capacity > 0, "Invalid capacity: %s", capacity);
+        this.factory = factory;
+        this.reset = reset;
+        this.discard = discard;
+        this.capacity = capacity;
+        this.idle = new ConcurrentLinkedDeque<>();
+        this.idleCount = new AtomicInteger();
+    }
+
+    /**
+     * Runs an operation on an object of this pool
+     *
+     * @param operation the non-null operation
+     * @param <R>       the type of the result
+     * @return the result of the operation
+     */
+    @SneakyThrows
+    public <R> R use(@NonNull Operation<T, R> operation) {
+        var value = borrow();
+        try {
+            return operation.apply(value);
+        } finally {
+            release(value);
+        }
+    }
+
+    /**
+     * Returns the number of idle objects in this pool
+     *
+     * @return a non-negative int
+     */
+    public int idle() {
+        return idleCount.get();
+    }
+
+    @SneakyThrows
+    private T borrow() {
+        var value = idle.pollFirst();
+        if (value == null) {
+            return factory.create();
+        }
+
+        idleCount.decrementAndGet();
+        return value;
+    }
+
+    private void release(T value) {
+        reset.accept(value);
+        if (idleCount.incrementAndGet() <= capacity) {
+            idle.offerFirst(value);
+            return;
+        }
+
+        idleCount.decrementAndGet();
+        discard.accept(value);
+    }
+
+    /**
+     * Creates the objects of a pool
+     *
+     * @param <T> the type of the objects
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+        T create() throws Exception;
+    }
+
+    /**
+     * An operation that uses an object borrowed from a pool
+     *
+     * @param <T> the type of the object
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    public interface Operation<T, R> {
+        R apply(T value) throws Exception;
+    }
+}
@@ -6,8 +6,7 @@ import it.auties.whatsapp.model.message.model.MessageContainer;
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
-import java.io.ByteArrayOutputStream;
-import java.util.zip.Inflater;
+import java.nio.ByteBuffer;
 
 @UtilityClass
 public class BytesHelper implements JacksonProvider {
@@ -19,18 +18,16 @@ public class BytesHelper implements JacksonProvider {
         return Byte.toUnsignedInt(version) >> 4;
     }
 
-    @SneakyThrows
+    /**
+     * Inflates a zlib payload
+     *
+     * @param compressed the non-null compressed payload
+     * @return a non-null array
+     * @deprecated use {@link Inflaters#inflate(byte[])}
+     */
+    @Deprecated
     public byte[] deflate(byte[] compressed) {
-        var decompressor = new Inflater();
-        decompressor.setInput(compressed);
-        var result = new ByteArrayOutputStream();
-        var buffer = new byte[1024];
-        while (!decompressor.finished()) {
-            var count = decompressor.inflate(buffer);
-            result.write(buffer, 0, count);
-        }
-
-        return result.toByteArray();
+        return Inflaters.inflate(compressed);
     }
 
     public byte[] messageToBytes(Message message) {
@@ -72,6 +69,13 @@ public class BytesHelper implements JacksonProvider {
         return result;
     }
 
+    public byte[] bufferToBytes(ByteBuffer buffer) {
+        var result = new byte[buffer.remaining()];
+        buffer.duplicate()
+                .get(result);
+        return result;
+    }
+
     public int bytesToInt(byte[] bytes, int length) {
         var result = 0;
         for (var i = 0; i < length; i++) {
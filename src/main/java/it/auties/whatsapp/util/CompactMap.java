@@ -0,0 +1,176 @@
+package it.auties.whatsapp.util;
+
+import java.util.*;
+
+/**
+ * An insertion-ordered map backed by two parallel arrays of keys and values.
+ * Lookups are linear scans: this is faster and much smaller than a hash table for the handful of entries that the attributes of a node usually hold.
+ * This map is not thread safe and should not be used for large numbers of entries.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class CompactMap<K, V> extends AbstractMap<K, V> {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private Object[] keys;
+
+    private Object[] values;
+
+    private int size;
+
+    public CompactMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CompactMap(int capacity) {
+        this.keys = new Object[Math.max(capacity, 1)];
+        this.values = new Object[keys.length];
+    }
+
+    public CompactMap(Map<? extends K, ? extends V> map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    private int indexOf(Object key) {
+        for (var index = 0; index < size; index++) {
+            if (keys[index] == key) {
+                return index;
+            }
+        }
+
+        for (var index = 0; index < size; index++) {
+            if (Objects.equals(keys[index], key)) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        var index = indexOf(key);
+        return index == -1 ?
+                null :
+                (V) values[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        var index = indexOf(key);
+        if (index != -1) {
+            var oldValue = (V) values[index];
+            values[index] = value;
+            return oldValue;
+        }
+
+        if (size == keys.length) {
+            this.keys = Arrays.copyOf(keys, size * 2);
+            this.values = Arrays.copyOf(values, size * 2);
+        }
+
+        keys[size] = key;
+        values[size++] = value;
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        var index = indexOf(key);
+        if (index == -1) {
+            return null;
+        }
+
+        var oldValue = (V) values[index];
+        removeAt(index);
+        return oldValue;
+    }
+
+    private void removeAt(int index) {
+        var moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        keys[--size] = null;
+        values[size] = null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        this.size = 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int next;
+
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.last = next++;
+            return new SimpleEntry<>((K) keys[last], (V) values[last]) {
+                private final int index = last;
+
+                @Override
+                public V setValue(V value) {
+                    values[index] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+
+            removeAt(last);
+            this.next = last;
+            this.last = -1;
+        }
+    }
+}
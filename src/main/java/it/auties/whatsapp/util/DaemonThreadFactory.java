@@ -0,0 +1,32 @@
+package it.auties.whatsapp.util;
+
+import lombok.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread factory that creates numbered daemon threads, so that the pools of the library never keep the JVM alive
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+    private final String prefix;
+
+    private final AtomicInteger counter;
+
+    /**
+     * Constructs a new factory
+     *
+     * @param prefix the non-null prefix of the names of the threads
+     */
+    public DaemonThreadFactory(@NonNull String prefix) {
+        this.prefix = prefix;
+        this.counter = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+        var thread = new Thread(runnable, "%s-%s".formatted(prefix, counter.incrementAndGet()));
+        thread.setDaemon(true);
+        return thread;
+    }
+}
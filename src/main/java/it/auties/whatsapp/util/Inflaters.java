@@ -0,0 +1,127 @@
+package it.auties.whatsapp.util;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompresses the zlib payloads sent by Whatsapp: compressed frames and history syncs.
+ * One-shot inflation borrows an {@link Inflater} from a {@link BoundedPool}, so no native zlib stream is allocated per call: an inflater that doesn't fit back in the pool is ended right away.
+ * Output buffers start from an estimate based on the size of the input and double until the payload fits.
+ * Streaming inflation uses a dedicated {@link Inflater} that is released when the stream is closed.
+ */
+@UtilityClass
+public class Inflaters {
+    private final int MIN_BUFFER_SIZE = 8192;
+
+    private final int STREAM_BUFFER_SIZE = 65536;
+
+    private final int EXPECTED_RATIO = 4;
+
+    private final BoundedPool<Inflater> POOL = new BoundedPool<>(Inflater::new, Inflater::reset, Inflater::end, BoundedPool.DEFAULT_CAPACITY);
+
+    /**
+     * Inflates a zlib payload
+     *
+     * @param compressed the non-null compressed payload
+     * @return a non-null array
+     */
+    public byte[] inflate(byte @NonNull [] compressed) {
+        var result = inflate(ByteBuffer.wrap(compressed));
+        return Arrays.copyOf(result.array(), result.limit());
+    }
+
+    /**
+     * Inflates the remaining bytes of a zlib payload.
+     * The position of {@code compressed} is not changed.
+     *
+     * @param compressed the non-null compressed payload
+     * @return a non-null buffer wrapping an array that may be larger than the inflated payload
+     */
+    public ByteBuffer inflate(@NonNull ByteBuffer compressed) {
+        return POOL.use(inflater -> {
+            inflater.setInput(compressed.duplicate());
+            var output = new byte[Math.max(compressed.remaining() * EXPECTED_RATIO, MIN_BUFFER_SIZE)];
+            var length = 0;
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+
+                var count = inflater.inflate(output, length, output.length - length);
+                if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated or invalid zlib payload");
+                }
+
+                length += count;
+            }
+
+            return ByteBuffer.wrap(output, 0, length);
+        });
+    }
+
+    /**
+     * Returns the number of idle inflaters in the pool
+     *
+     * @return a non-negative int
+     */
+    int idleInflaters() {
+        return POOL.idle();
+    }
+
+    /**
+     * Returns a stream that inflates a zlib payload while it's read
+     *
+     * @param compressed the non-null compressed payload
+     * @return a non-null stream that should be closed after use
+     */
+    public InputStream inflating(@NonNull InputStream compressed) {
+        return new ClosingInflaterInputStream(compressed);
+    }
+
+    /**
+     * Returns a stream that inflates the remaining bytes of a zlib payload while it's read.
+     * The position of {@code compressed} is not changed.
+     *
+     * @param compressed the non-null compressed payload
+     * @return a non-null stream that should be closed after use
+     */
+    public InputStream inflating(@NonNull ByteBuffer compressed) {
+        var source = compressed.duplicate();
+        if (source.hasArray()) {
+            return inflating(new ByteArrayInputStream(source.array(), source.arrayOffset() + source.position(), source.remaining()));
+        }
+
+        return inflating(new ByteArrayInputStream(BytesHelper.bufferToBytes(source)));
+    }
+
+    private static class ClosingInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        private ClosingInflaterInputStream(InputStream compressed) {
+            super(compressed, new Inflater(), STREAM_BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+
+            this.closed = true;
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -11,8 +11,8 @@ public class InitializationLock<T> {
     }
 
     public InitializationLock<T> write(T element) {
-        latch.countDown();
         this.element = element;
+        latch.countDown();
         return this;
     }
 
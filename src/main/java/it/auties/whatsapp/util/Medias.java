@@ -1,6 +1,7 @@
 package it.auties.whatsapp.util;
 
 import it.auties.bytes.Bytes;
+import it.auties.whatsapp.api.WhatsappRuntime;
 import it.auties.whatsapp.crypto.AesCbc;
 import it.auties.whatsapp.crypto.Hmac;
 import it.auties.whatsapp.crypto.Sha256;
@@ -69,7 +70,9 @@ public class Medias implements JacksonProvider {
     }
 
     public MediaFile upload(byte[] file, MediaMessageType type, MediaConnection mediaConnection) {
-        var client = HttpClient.newHttpClient();
+        var client = Optional.ofNullable(mediaConnection)
+                .map(MediaConnection::httpClient)
+                .orElseGet(WhatsappRuntime.shared()::httpClient);
         var auth = URLEncoder.encode(mediaConnection.auth(), StandardCharsets.UTF_8);
         var hosts = getHosts(mediaConnection);
         return hosts.stream()
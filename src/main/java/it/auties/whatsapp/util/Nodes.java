@@ -1,6 +1,7 @@
 package it.auties.whatsapp.util;
 
 import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.model.request.NodeList;
 import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 
@@ -13,7 +14,7 @@ public class Nodes {
         return nodes == null || nodes.stream()
                 .allMatch(Objects::isNull) ?
                 null :
-                new ArrayList<>(nodes);
+                NodeList.of(nodes);
     }
 
     public static LinkedList<Node> findAll(Object list) {
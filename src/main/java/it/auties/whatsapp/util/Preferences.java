@@ -113,9 +113,9 @@ public final class Preferences implements JacksonProvider {
         var id = lastEntry != null ?
                 lastEntry.getKey() + 1 :
                 0;
-        var future = CompletableFuture.runAsync(() -> writeObject(input))
-                .thenRunAsync(() -> writes.remove(id))
-                .exceptionallyAsync(throwable -> onError(id, writes, throwable));
+        var future = CompletableFuture.runAsync(() -> writeObject(input), VirtualThreads.executor())
+                .thenRunAsync(() -> writes.remove(id), VirtualThreads.executor())
+                .exceptionallyAsync(throwable -> onError(id, writes, throwable), VirtualThreads.executor());
         writes.put(id, future);
         ASYNC_WRITES.put(file, writes);
     }
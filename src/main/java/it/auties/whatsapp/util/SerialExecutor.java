@@ -0,0 +1,93 @@
+package it.auties.whatsapp.util;
+
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An executor that runs its tasks one at a time, in the order in which they were submitted, on top of another executor.
+ * It doesn't own any thread: while it has tasks, it occupies a single thread of the delegate, and it gives the thread back after a batch of tasks so that other executors sharing the delegate aren't starved.
+ * This makes it cheap to give each session its own ordered lane on a pool shared by every session.
+ */
+public final class SerialExecutor implements Executor {
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor delegate;
+
+    private final ArrayDeque<Runnable> tasks;
+
+    private boolean running;
+
+    /**
+     * Constructs a new serial executor
+     *
+     * @param delegate the non-null executor that runs the tasks
+     */
+    public SerialExecutor(@NonNull Executor delegate) {
+        this.delegate = delegate;
+        this.tasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public void execute(@NonNull Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (running) {
+                return;
+            }
+
+            this.running = true;
+        }
+
+        schedule();
+    }
+
+    /**
+     * Returns the number of tasks waiting to run
+     *
+     * @return a non-negative int
+     */
+    public int pendingTasks() {
+        synchronized (tasks) {
+            return tasks.size();
+        }
+    }
+
+    private void schedule() {
+        try {
+            delegate.execute(this::drain);
+        } catch (RejectedExecutionException exception) {
+            synchronized (tasks) {
+                tasks.clear();
+                this.running = false;
+            }
+
+            throw exception;
+        }
+    }
+
+    private void drain() {
+        for (var count = 0; count < BATCH_SIZE; count++) {
+            Runnable next;
+            synchronized (tasks) {
+                next = tasks.poll();
+                if (next == null) {
+                    this.running = false;
+                    return;
+                }
+            }
+
+            try {
+                next.run();
+            } catch (Throwable throwable) {
+                var thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler()
+                        .uncaughtException(thread, throwable);
+            }
+        }
+
+        schedule();
+    }
+}
@@ -0,0 +1,74 @@
+package it.auties.whatsapp.util;
+
+import lombok.NonNull;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of locks indexed by the hash of a key.
+ * Tasks that use the same key never run at the same time, while tasks that use different keys run in parallel unless their keys share a stripe.
+ * Locks are reentrant, so a task can use the same key again, but a task shouldn't lock a different key while holding one, as the two keys may be locked in the opposite order by another task.
+ */
+public final class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    private final int mask;
+
+    /**
+     * Constructs a new striped lock
+     *
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    public StripedLock(int stripes) {
+        if (stripes <= 0 || stripes > 1 << 30) {
+            throw new IllegalArgumentException("Illegal number of stripes: %s".formatted(stripes));
+        }
+
+        var length = Math.max(Integer.highestOneBit(stripes - 1) << 1, 1);
+        this.stripes = new ReentrantLock[length];
+        for (var index = 0; index < length; index++) {
+            this.stripes[index] = new ReentrantLock();
+        }
+
+        this.mask = length - 1;
+    }
+
+    /**
+     * Runs a task while holding the lock of a key
+     *
+     * @param key  the non-null key
+     * @param task the non-null task
+     * @param <T>  the type of the result
+     * @return the result of the task
+     */
+    public <T> T lock(@NonNull Object key, @NonNull Supplier<T> task) {
+        var lock = stripes[stripe(key)];
+        lock.lock();
+        try {
+            return task.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the stripe of a key
+     *
+     * @param key the non-null key
+     * @return a non-negative int
+     */
+    public int stripe(@NonNull Object key) {
+        var hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the number of stripes
+     *
+     * @return a positive int
+     */
+    public int size() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,326 @@
+package it.auties.whatsapp.util;
+
+import lombok.NonNull;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel that runs tasks after a delay.
+ * Scheduling and cancelling a task are O(1) and a single thread serves every task, so it's meant for a large number of timeouts that are usually cancelled before they expire, like the ones of the requests sent to Whatsapp.
+ * Tasks expire with the precision of a tick: they never run early, but they may run up to a tick late.
+ * Expired tasks are run on an executor, not on the thread of the wheel: either the one of the task or the default one of the wheel.
+ * The thread is a daemon that starts when the first task is scheduled and stops when the wheel is closed.
+ */
+public final class TimingWheel implements AutoCloseable {
+    private final long tickNanos;
+
+    private final Bucket[] buckets;
+
+    private final int mask;
+
+    private final Executor executor;
+
+    private final ConcurrentLinkedQueue<Timeout> added;
+
+    private final ConcurrentLinkedQueue<Timeout> cancelled;
+
+    private final AtomicInteger size;
+
+    private final long startTime;
+
+    private volatile Thread worker;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new wheel
+     *
+     * @param tick     the duration of a tick
+     * @param unit     the non-null unit of the tick
+     * @param buckets  the number of buckets, rounded up to a power of two
+     * @param executor the non-null executor that runs expired tasks that don't specify one
+     */
+    public TimingWheel(long tick, @NonNull TimeUnit unit, int buckets, @NonNull Executor executor) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: %s".formatted(tick));
+        }
+
+        if (buckets <= 0 || buckets > 1 << 30) {
+            throw new IllegalArgumentException("Illegal number of buckets: %s".formatted(buckets));
+        }
+
+        this.tickNanos = unit.toNanos(tick);
+        var length = Integer.highestOneBit(buckets - 1) << 1;
+        this.buckets = new Bucket[Math.max(length, 1)];
+        for (var index = 0; index < this.buckets.length; index++) {
+            this.buckets[index] = new Bucket();
+        }
+
+        this.mask = this.buckets.length - 1;
+        this.executor = executor;
+        this.added = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Schedules a task that runs on the default executor of this wheel
+     *
+     * @param task  the non-null task to run
+     * @param delay the delay after which the task should run
+     * @param unit  the non-null unit of the delay
+     * @return a non-null handle that can cancel the task
+     */
+    public Timeout schedule(@NonNull Runnable task, long delay, @NonNull TimeUnit unit) {
+        return schedule(task, delay, unit, executor);
+    }
+
+    /**
+     * Schedules a task
+     *
+     * @param task     the non-null task to run
+     * @param delay    the delay after which the task should run
+     * @param unit     the non-null unit of the delay
+     * @param executor the non-null executor that runs the task when it expires
+     * @return a non-null handle that can cancel the task
+     * @throws RejectedExecutionException if the wheel is closed
+     */
+    public Timeout schedule(@NonNull Runnable task, long delay, @NonNull TimeUnit unit, @NonNull Executor executor) {
+        if (closed) {
+            throw new RejectedExecutionException("Cannot schedule task: the wheel is closed");
+        }
+
+        var deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0));
+        var timeout = new Timeout(this, task, executor, deadline);
+        size.incrementAndGet();
+        added.add(timeout);
+        start();
+        return timeout;
+    }
+
+    /**
+     * Returns the number of tasks that are scheduled and weren't cancelled yet
+     *
+     * @return a non-negative int
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Stops the thread of this wheel.
+     * The tasks that didn't expire yet never run.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void start() {
+        if (worker != null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (worker != null || closed) {
+                return;
+            }
+
+            var thread = new Thread(this::run, "timing-wheel");
+            thread.setDaemon(true);
+            thread.start();
+            this.worker = thread;
+        }
+    }
+
+    private void run() {
+        var tick = 0L;
+        while (waitForTick(tick)) {
+            removeCancelled();
+            addScheduled(tick);
+            expire(buckets[(int) (tick & mask)], (tick + 1) * tickNanos);
+            tick++;
+        }
+    }
+
+    private boolean waitForTick(long tick) {
+        var deadline = (tick + 1) * tickNanos;
+        for (var remaining = deadline - (System.nanoTime() - startTime); remaining > 0;
+             remaining = deadline - (System.nanoTime() - startTime)) {
+            if (Thread.currentThread()
+                    .isInterrupted()) {
+                return false;
+            }
+
+            LockSupport.parkNanos(this, remaining);
+        }
+
+        return !Thread.currentThread()
+                .isInterrupted();
+    }
+
+    private void removeCancelled() {
+        for (var timeout = cancelled.poll(); timeout != null; timeout = cancelled.poll()) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void addScheduled(long tick) {
+        for (var timeout = added.poll(); timeout != null; timeout = added.poll()) {
+            if (timeout.state.get() != Timeout.WAITING) {
+                continue;
+            }
+
+            var ticks = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (ticks - tick) / buckets.length;
+            buckets[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket, long now) {
+        var timeout = bucket.head;
+        while (timeout != null) {
+            var next = timeout.next;
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else if (timeout.deadline <= now) {
+                bucket.remove(timeout);
+                timeout.expire();
+            }
+
+            timeout = next;
+        }
+    }
+
+    /**
+     * A handle to a task scheduled on a {@link TimingWheel}
+     */
+    public static final class Timeout {
+        private static final int WAITING = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+
+        private final Runnable task;
+
+        private final Executor executor;
+
+        private final long deadline;
+
+        private final AtomicInteger state;
+
+        private long remainingRounds;
+
+        private Bucket bucket;
+
+        private Timeout previous;
+
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task, Executor executor, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.executor = executor;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(WAITING);
+        }
+
+        /**
+         * Cancels the task if it didn't run yet
+         *
+         * @return whether the task was cancelled by this call
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+
+            wheel.size.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Returns whether the task was cancelled
+         *
+         * @return a boolean
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Returns whether the task expired
+         *
+         * @return a boolean
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(WAITING, EXPIRED)) {
+                return;
+            }
+
+            wheel.size.decrementAndGet();
+            executor.execute(task);
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                this.head = this.tail = timeout;
+                return;
+            }
+
+            tail.next = timeout;
+            timeout.previous = tail;
+            this.tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                this.head = timeout.next;
+            }
+
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                this.tail = timeout.previous;
+            }
+
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+    }
+}
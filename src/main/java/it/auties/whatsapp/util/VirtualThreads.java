@@ -0,0 +1,49 @@
+package it.auties.whatsapp.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the executor that runs the asynchronous stages of a session when no other executor is configured.
+ * If the running JVM supports virtual threads, every task runs on a new virtual thread, so tasks that block waiting for a response or for a lock only park their thread.
+ * Otherwise, tasks run on a pool of daemon platform threads that grows with the number of blocked tasks and shrinks when they are idle.
+ * In both cases, blocking tasks never starve the common pool.
+ * The lookup is reflective because the library targets a release where virtual threads don't exist yet.
+ */
+@UtilityClass
+public class VirtualThreads {
+    private final ExecutorService VIRTUAL_EXECUTOR = createVirtualExecutor();
+
+    private final ExecutorService EXECUTOR = VIRTUAL_EXECUTOR != null ?
+            VIRTUAL_EXECUTOR :
+            Executors.newCachedThreadPool(new DaemonThreadFactory("whatsapp-async"));
+
+    /**
+     * Returns whether the running JVM supports virtual threads
+     *
+     * @return a boolean
+     */
+    public boolean isSupported() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Returns the shared executor
+     *
+     * @return a non-null executor service
+     */
+    public ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    private ExecutorService createVirtualExecutor() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException exception) {
+            return null;
+        }
+    }
+}
@@ -5,6 +5,7 @@ open module it.auties.whatsappweb4j {
     requires transitive java.desktop;
 
     requires jakarta.websocket;
+    requires org.glassfish.tyrus.client;
     requires java.net.http;
 
     requires com.fasterxml.jackson.annotation;
@@ -0,0 +1,122 @@
+package it.auties.whatsapp.api;
+
+import it.auties.whatsapp.model.signal.auth.Version;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionHostTest {
+    private static final int SESSIONS = 4;
+
+    private static final Duration RAMP_UP_INTERVAL = Duration.ofMillis(100);
+
+    @Test
+    public void testStaggeredConnections() {
+        try (var host = SessionHost.of(createOptions())) {
+            var start = System.nanoTime();
+            var futures = IntStream.range(0, SESSIONS)
+                    .mapToObj(host::connect)
+                    .toList();
+            assertEquals(SESSIONS, host.metrics()
+                    .queued());
+            assertSame(futures.get(0), host.connect(0));
+            futures.forEach(future -> assertThrows(Exception.class, () -> future.get(10, TimeUnit.SECONDS)));
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+            assertTrue(elapsed.compareTo(RAMP_UP_INTERVAL.multipliedBy(SESSIONS)) >= 0, elapsed::toString);
+            var metrics = host.metrics();
+            assertEquals(SESSIONS, metrics.sessions());
+            assertEquals(SESSIONS, metrics.hibernated());
+            assertEquals(0, metrics.estimatedBytes());
+            host.sessions()
+                    .forEach(session -> assertTrue(session.whatsapp()
+                            .isEmpty()));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        try (var host = SessionHost.of(createOptions())) {
+            var future = host.connect(0);
+            host.remove(0)
+                    .join();
+            assertTrue(future.isCancelled());
+            assertTrue(host.session(0)
+                    .isEmpty());
+            assertTrue(host.find(0)
+                    .isEmpty());
+        }
+    }
+
+    @Test
+    public void testHibernateAndResume() throws Exception {
+        try (var host = SessionHost.of(createOptions())
+                .connector(CompletableFuture::completedFuture)) {
+            var first = host.connect(0)
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(HostedSession.State.ACTIVE, host.session(0)
+                    .orElseThrow()
+                    .state());
+            host.hibernate(0)
+                    .get(10, TimeUnit.SECONDS);
+            var session = host.session(0)
+                    .orElseThrow();
+            assertEquals(HostedSession.State.HIBERNATED, session.state());
+            assertTrue(session.whatsapp()
+                    .isEmpty());
+            assertEquals(1, host.metrics()
+                    .hibernated());
+            var second = host.connect(0)
+                    .get(10, TimeUnit.SECONDS);
+            assertNotSame(first, second);
+            assertEquals(HostedSession.State.ACTIVE, session.state());
+            assertSame(second, host.find(0)
+                    .orElseThrow());
+        }
+    }
+
+    @Test
+    public void testHibernateWhileConnecting() throws Exception {
+        var connection = new CompletableFuture<Whatsapp>();
+        try (var host = SessionHost.of(createOptions())
+                .connector(whatsapp -> connection.thenApply(ignored -> whatsapp))) {
+            var future = host.connect(0);
+            var session = host.session(0)
+                    .orElseThrow();
+            var start = System.nanoTime();
+            while (session.state() != HostedSession.State.CONNECTING) {
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10), "The session didn't start connecting");
+                Thread.sleep(10);
+            }
+
+            var hibernation = host.hibernate(0);
+            assertThrows(Exception.class, () -> hibernation.get(10, TimeUnit.SECONDS));
+            assertEquals(HostedSession.State.CONNECTING, session.state());
+            assertSame(future, host.connect(0));
+            connection.complete(null);
+            future.get(10, TimeUnit.SECONDS);
+            assertEquals(HostedSession.State.ACTIVE, session.state());
+            assertFalse(future.isCancelled());
+        }
+    }
+
+    private SessionHost.Options createOptions() {
+        var sessionOptions = Whatsapp.Options.newOptions()
+                .version(new Version(2, 2212, 7))
+                .url("ws://127.0.0.1:1")
+                .transport(TransportType.JDK)
+                .defaultSerialization(false)
+                .autodetectListeners(false)
+                .errorHandler((location, throwable) -> false)
+                .build();
+        return SessionHost.Options.newOptions()
+                .sessionOptions(sessionOptions)
+                .rampUpInterval(RAMP_UP_INTERVAL)
+                .maxConcurrentHandshakes(1)
+                .build();
+    }
+}
@@ -0,0 +1,43 @@
+package it.auties.whatsapp.binary;
+
+import it.auties.whatsapp.model.request.Node;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EncoderTest {
+    private static final List<String> STRINGS = List.of("plain ascii text", "caffè", "привет", "日本語のテキスト", "emoji 😀👍", "lone \uD83D high", "lone \uDE00 low", "trailing \uD83D", "x".repeat(300) + "é");
+
+    @Test
+    public void testUtf8Length() {
+        for (var string : STRINGS) {
+            assertEquals(string.getBytes(StandardCharsets.UTF_8).length, Encoder.utf8Length(string), string);
+        }
+    }
+
+    @Test
+    public void testUtf8Content() {
+        for (var string : STRINGS) {
+            var expected = string.getBytes(StandardCharsets.UTF_8);
+            var encoded = new Encoder().encodeValues(string);
+            var payload = new byte[expected.length];
+            System.arraycopy(encoded, encoded.length - expected.length, payload, 0, expected.length);
+            assertArrayEquals(expected, payload, string);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (var string : STRINGS) {
+            var node = Node.withAttributes("message", Map.of("text", string));
+            var decoded = new Decoder().decode(new Encoder().encode(node));
+            assertEquals(new String(string.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), decoded.attributes()
+                    .getString("text"), string);
+        }
+    }
+}
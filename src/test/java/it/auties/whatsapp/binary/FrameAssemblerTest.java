@@ -0,0 +1,98 @@
+package it.auties.whatsapp.binary;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameAssemblerTest {
+    private static final int ITERATIONS = 1000;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testFragmentedFrames() {
+        for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+            var frames = randomFrames();
+            var message = toMessage(frames);
+            var assembler = new FrameAssembler();
+            var results = new ArrayList<ByteBuffer>();
+            while (message.hasRemaining()) {
+                var size = Math.min(message.remaining(), random.nextInt(64));
+                var fragment = message.slice(message.position(), size);
+                message.position(message.position() + size);
+                assembler.append(fragment, frame -> results.add(copy(frame)));
+            }
+
+            assertFalse(assembler.hasPartialFrame());
+            assertEquals(frames, results);
+        }
+    }
+
+    @Test
+    public void testLargeFrame() {
+        var frame = ByteBuffer.wrap(randomBytes(5_000_000));
+        var message = toMessage(List.of(frame));
+        var assembler = new FrameAssembler();
+        var results = new ArrayList<ByteBuffer>();
+        assembler.append(message.slice(0, 2), results::add);
+        assembler.append(message.slice(2, 1_000_000), results::add);
+        assertTrue(results.isEmpty());
+        assertTrue(assembler.hasPartialFrame());
+        assembler.append(message.slice(1_000_002, message.remaining() - 1_000_002), results::add);
+        assertEquals(List.of(frame), results);
+        assertFalse(assembler.hasPartialFrame());
+    }
+
+    @Test
+    public void testClear() {
+        var frames = randomFrames();
+        var message = toMessage(frames);
+        var assembler = new FrameAssembler();
+        assembler.append(message.slice(0, 5), ignored -> fail("No frame should be complete"));
+        assembler.clear();
+        var results = new ArrayList<ByteBuffer>();
+        assembler.append(message, frame -> results.add(copy(frame)));
+        assertEquals(frames, results);
+    }
+
+    private List<ByteBuffer> randomFrames() {
+        var result = new ArrayList<ByteBuffer>();
+        var count = 1 + random.nextInt(8);
+        for (var index = 0; index < count; index++) {
+            result.add(ByteBuffer.wrap(randomBytes(random.nextInt(300))));
+        }
+
+        return result;
+    }
+
+    private ByteBuffer toMessage(List<ByteBuffer> frames) {
+        var length = frames.stream()
+                .mapToInt(frame -> frame.remaining() + 3)
+                .sum();
+        var result = ByteBuffer.allocate(length);
+        for (var frame : frames) {
+            result.put((byte) (frame.remaining() >>> 16));
+            result.putShort((short) frame.remaining());
+            result.put(frame.duplicate());
+        }
+
+        return result.flip();
+    }
+
+    private ByteBuffer copy(ByteBuffer frame) {
+        var result = ByteBuffer.allocate(frame.remaining());
+        result.put(frame.duplicate());
+        return result.flip();
+    }
+
+    private byte[] randomBytes(int length) {
+        var result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+}
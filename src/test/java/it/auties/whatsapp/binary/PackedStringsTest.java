@@ -0,0 +1,107 @@
+package it.auties.whatsapp.binary;
+
+import it.auties.whatsapp.model.request.Node;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedStringsTest {
+    private static final int ITERATIONS = 10_000;
+    private static final String NIBBLE_ALPHABET = "0123456789-.";
+    private static final String HEX_ALPHABET = "0123456789ABCDEF";
+    private static final String MIXED_ALPHABET = "0123456789-.ABCDEFabcdef@:_ é";
+    private static final Pattern NIBBLE_REGEX = Pattern.compile("[^0-9.-]+?");
+    private static final Pattern HEX_REGEX = Pattern.compile("[^0-9A-F]+?");
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testClassificationMatchesRegex() {
+        for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+            var input = randomString(MIXED_ALPHABET, 1 + random.nextInt(160));
+            assertEquals(classifyWithRegex(input), PackedStrings.classify(input), input);
+        }
+    }
+
+    @Test
+    public void testNibbleRoundTrip() {
+        for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+            var input = randomString(NIBBLE_ALPHABET, 1 + random.nextInt(127));
+            assertEquals(Tag.NIBBLE_8, PackedStrings.classify(input), input);
+            assertRoundTrip(input, Tag.NIBBLE_8);
+        }
+    }
+
+    @Test
+    public void testHexRoundTrip() {
+        for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+            var input = randomString(HEX_ALPHABET, 1 + random.nextInt(127));
+            assertRoundTrip(input, PackedStrings.classify(input));
+        }
+    }
+
+    @Test
+    public void testNodeRoundTrip() {
+        for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+            var value = randomString(MIXED_ALPHABET, 1 + random.nextInt(160));
+            var node = Node.withAttributes("receipt", Map.of("id", value, "t", randomString(NIBBLE_ALPHABET, 10)));
+            var encoded = new Encoder().encode(node);
+            assertEquals(node, new Decoder().decode(encoded), value);
+        }
+    }
+
+    private void assertRoundTrip(String input, Tag tag) {
+        var packed = new byte[PackedStrings.packedLength(input)];
+        PackedStrings.pack(input, tag, packed, 0);
+        assertArrayEquals(packWithReference(input, tag), packed, input);
+        var header = PackedStrings.header(input);
+        assertEquals(input, PackedStrings.unpack(ByteBuffer.wrap(packed), tag, header));
+    }
+
+    private Tag classifyWithRegex(String input) {
+        if (input.length() >= 128) {
+            return Tag.UNKNOWN;
+        }
+
+        if (NIBBLE_REGEX.matcher(input).results().findAny().isEmpty()) {
+            return Tag.NIBBLE_8;
+        }
+
+        if (HEX_REGEX.matcher(input).results().findAny().isEmpty()) {
+            return Tag.HEX_8;
+        }
+
+        return Tag.UNKNOWN;
+    }
+
+    private byte[] packWithReference(String input, Tag tag) {
+        var alphabet = tag == Tag.NIBBLE_8 ?
+                NIBBLE_ALPHABET :
+                HEX_ALPHABET;
+        var result = new ByteArrayOutputStream();
+        for (var index = 0; index < input.length(); index += 2) {
+            var high = alphabet.indexOf(input.charAt(index));
+            var low = index + 1 < input.length() ?
+                    alphabet.indexOf(input.charAt(index + 1)) :
+                    15;
+            result.write(high << 4 | low);
+        }
+
+        return result.toByteArray();
+    }
+
+    private String randomString(String alphabet, int length) {
+        var result = new StringBuilder(length);
+        for (var index = 0; index < length; index++) {
+            result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        return result.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package it.auties.whatsapp.binary;
+
+import it.auties.whatsapp.model.contact.ContactJid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StanzaTemplateTest {
+    private static final String ID = "3EB0C431C26A1916E07E";
+
+    private static final ContactJid USER = ContactJid.of("393495089819@s.whatsapp.net");
+
+    private static final ContactJid DEVICE = ContactJid.of("393495089819:12@s.whatsapp.net");
+
+    private static final ContactJid GROUP = ContactJid.of("120363041234567890@g.us");
+
+    @Test
+    public void testReceipt() {
+        assertTemplate(StanzaTemplate.RECEIPT, null, USER, null, 1660000000L);
+        assertTemplate(StanzaTemplate.RECEIPT, null, GROUP, DEVICE, 1660000000L);
+        assertTemplate(StanzaTemplate.RECEIPT, "hist_sync", USER, null, null);
+    }
+
+    @Test
+    public void testAck() {
+        assertTemplate(StanzaTemplate.ACK, "receipt", "read", GROUP, "393495089819@s.whatsapp.net", null);
+        assertTemplate(StanzaTemplate.ACK, "notification", null, ContactJid.WHATSAPP, null, null);
+        assertTemplate(StanzaTemplate.ACK, "receipt", null, null, null, DEVICE);
+    }
+
+    @Test
+    public void testPing() {
+        assertTemplate(StanzaTemplate.PING);
+    }
+
+    @Test
+    public void testPresence() {
+        assertTemplate(StanzaTemplate.PRESENCE, "available", null);
+        assertTemplate(StanzaTemplate.PRESENCE, "composing", USER);
+        assertTemplate(StanzaTemplate.PRESENCE, "subscribe", GROUP);
+    }
+
+    @Test
+    public void testWrongValues() {
+        assertThrows(IllegalArgumentException.class, () -> StanzaTemplate.PRESENCE.encode(ID, "available"));
+    }
+
+    private void assertTemplate(StanzaTemplate template, Object... values) {
+        var node = template.toNode(ID, values);
+        var encoded = template.encode(ID, values);
+        assertArrayEquals(new Encoder().encode(node), encoded, () -> "%s %s".formatted(node, Arrays.toString(values)));
+        assertEquals(new Decoder().decode(encoded), new Decoder().decode(new Encoder().encode(node)));
+        assertEquals(node.description(), new Decoder().decode(encoded)
+                .description());
+    }
+}
@@ -0,0 +1,74 @@
+package it.auties.whatsapp.binary;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static it.auties.whatsapp.binary.Tag.DICTIONARY_0;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TokenIndexTest {
+    private static final int ITERATIONS = 10_000;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testEveryToken() {
+        Stream.concat(Tokens.SINGLE_BYTE.stream(), Tokens.DOUBLE_BYTE.stream())
+                .forEach(token -> assertEquals(findLinear(token), TokenIndex.find(token), token));
+    }
+
+    @Test
+    public void testReverseLookup() {
+        for (var index = 0; index < Tokens.SINGLE_BYTE.size(); index++) {
+            assertEquals(Tokens.SINGLE_BYTE.get(index), TokenIndex.singleByte(index + 1));
+        }
+
+        var dictionarySize = Tokens.DOUBLE_BYTE.size() / 4;
+        for (var index = 0; index < Tokens.DOUBLE_BYTE.size(); index++) {
+            assertEquals(Tokens.DOUBLE_BYTE.get(index),
+                    TokenIndex.doubleByte(DICTIONARY_0.data() + index / dictionarySize, index % dictionarySize));
+        }
+    }
+
+    @Test
+    public void testNonTokens() {
+        var inputs = Stream.of("", " ", "TYPE", "type ", "s.whatsapp.ne", "3EB0C431C26A1916E07E",
+                "393495089819@s.whatsapp.net", "message", "\u0000");
+        var tokens = Stream.concat(Tokens.SINGLE_BYTE.stream(), Tokens.DOUBLE_BYTE.stream())
+                .flatMap(token -> Stream.of(token + "x", "x" + token, token.toUpperCase()));
+        Stream.concat(inputs, tokens)
+                .forEach(input -> assertEquals(findLinear(input), TokenIndex.find(input), input));
+        for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+            var input = randomString(1 + random.nextInt(24));
+            assertEquals(findLinear(input), TokenIndex.find(input), input);
+        }
+    }
+
+    // The lookup used by the encoder before the index
+    private int findLinear(String input) {
+        var singleByte = Tokens.SINGLE_BYTE.indexOf(input);
+        if (singleByte != -1) {
+            return singleByte + 1;
+        }
+
+        var doubleByte = Tokens.DOUBLE_BYTE.indexOf(input);
+        if (doubleByte == -1) {
+            return TokenIndex.NO_TOKEN;
+        }
+
+        var dictionarySize = Tokens.DOUBLE_BYTE.size() / 4;
+        return (DICTIONARY_0.data() + doubleByte / dictionarySize) << 8 | doubleByte % dictionarySize;
+    }
+
+    private String randomString(int length) {
+        var alphabet = "abcdefghijklmnopqrstuvwxyz-_.:@0123456789";
+        var builder = new StringBuilder(length);
+        for (var index = 0; index < length; index++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package it.auties.whatsapp.controller;
+
+import it.auties.whatsapp.model.signal.keypair.SignalPreKeyPair;
+import it.auties.whatsapp.util.JacksonProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeysTest {
+    @Test
+    public void testFindPreKeyById() {
+        var keys = Keys.random(1, false);
+        keys.addPreKeys(IntStream.rangeClosed(1, 100)
+                .mapToObj(SignalPreKeyPair::random)
+                .toList());
+        keys.addPreKey(SignalPreKeyPair.random(101));
+        assertEquals(101, keys.preKeysCount());
+        assertEquals(101, keys.lastPreKeyId());
+        assertEquals(42, keys.findPreKeyById(42)
+                .orElseThrow()
+                .id());
+        assertTrue(keys.findPreKeyById(101)
+                .isPresent());
+        assertTrue(keys.findPreKeyById(102)
+                .isEmpty());
+        assertTrue(keys.findPreKeyById(null)
+                .isEmpty());
+    }
+
+    @Test
+    public void testDeserializedPreKeys() throws Exception {
+        var keys = Keys.random(1, false);
+        var preKey = SignalPreKeyPair.random(7);
+        keys.addPreKey(preKey);
+        var json = JacksonProvider.JSON.writeValueAsString(keys);
+        var result = JacksonProvider.JSON.readValue(json, Keys.class);
+        assertArrayEquals(preKey.publicKey(), result.findPreKeyById(7)
+                .orElseThrow()
+                .publicKey());
+        result.addPreKey(SignalPreKeyPair.random(8));
+        assertTrue(result.findPreKeyById(8)
+                .isPresent());
+    }
+}
@@ -0,0 +1,34 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AesCbcTest {
+    @Test
+    public void testEncryptIntoBuffer() {
+        var key = Bytes.ofRandom(32)
+                .toByteArray();
+        var iv = Bytes.ofRandom(16)
+                .toByteArray();
+        var plainText = Bytes.ofRandom(100)
+                .toByteArray();
+        var encrypted = new byte[AesCbc.outputSize(plainText.length) + 4];
+        var encryptedLength = AesCbc.encrypt(iv, plainText, key, encrypted, 4);
+        assertEquals(AesCbc.outputSize(plainText.length), encryptedLength);
+        assertArrayEquals(AesCbc.encrypt(iv, plainText, key), Bytes.of(encrypted)
+                .slice(4)
+                .toByteArray());
+    }
+
+    @Test
+    public void testEncryptAndPrefix() {
+        var key = Bytes.ofRandom(32)
+                .toByteArray();
+        var plainText = Bytes.ofRandom(100)
+                .toByteArray();
+        assertArrayEquals(plainText, AesCbc.decrypt(AesCbc.encryptAndPrefix(plainText, key), key));
+    }
+}
@@ -0,0 +1,53 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.signal.keypair.SignalPreKeyPair;
+import it.auties.whatsapp.model.signal.keypair.SignalSignedKeyPair;
+import it.auties.whatsapp.util.StripedLock;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FanOutCipherTest {
+    private static final int DEVICES = 100;
+
+    @Test
+    public void testOrder() throws Exception {
+        var sender = Keys.random(1, false);
+        var receiver = Keys.random(2, false);
+        var preKey = SignalPreKeyPair.random(1);
+        var signedPreKey = new SignalSignedKeyPair(preKey.id(), preKey.toGenericKeyPair(), null);
+        var devices = new ArrayList<ContactJid>();
+        for (var index = 0; index < DEVICES; index++) {
+            var device = ContactJid.of("39%010d:%s@s.whatsapp.net".formatted(index / 4, index % 4));
+            new SessionBuilder(device.toSignalAddress(), sender).createOutgoing(receiver.id(), receiver.identityKeyPair()
+                    .encodedPublicKey(), receiver.signedKeyPair(), signedPreKey);
+            devices.add(device);
+        }
+
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var cipher = new FanOutCipher(sender, new StripedLock(16), executor);
+            var nodes = cipher.encrypt(devices, "Hello".getBytes(StandardCharsets.UTF_8))
+                    .get(30, TimeUnit.SECONDS);
+            assertEquals(devices.size(), nodes.size());
+            for (var index = 0; index < devices.size(); index++) {
+                var node = nodes.get(index);
+                assertEquals(devices.get(index), node.attributes()
+                        .getJid("jid")
+                        .orElseThrow());
+                assertTrue(node.findNode("enc")
+                        .isPresent());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HkdfTest {
+    private static final HexFormat HEX = HexFormat.of();
+
+    // Test case 1 of RFC 5869
+    @Test
+    public void testExtractAndExpand() {
+        var inputKeyMaterial = HEX.parseHex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        var salt = HEX.parseHex("000102030405060708090a0b0c");
+        var info = HEX.parseHex("f0f1f2f3f4f5f6f7f8f9");
+        var expected = HEX.parseHex(
+                "3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865");
+        assertArrayEquals(expected, Hkdf.extractAndExpand(inputKeyMaterial, salt, info, 42));
+    }
+
+    @Test
+    public void testDeriveSecrets() throws Exception {
+        var input = Bytes.ofRandom(32)
+                .toByteArray();
+        var salt = Bytes.ofRandom(32)
+                .toByteArray();
+        var info = "WhisperMessageKeys".getBytes(StandardCharsets.UTF_8);
+        var prk = hmac(salt, input);
+        var first = hmac(prk, Bytes.of(info)
+                .append(1)
+                .toByteArray());
+        var second = hmac(prk, Bytes.of(first)
+                .append(info)
+                .append(2)
+                .toByteArray());
+        var third = hmac(prk, Bytes.of(second)
+                .append(info)
+                .append(3)
+                .toByteArray());
+        var secrets = Hkdf.deriveSecrets(input, salt, info, 3);
+        assertEquals(3, secrets.length);
+        assertArrayEquals(first, secrets[0]);
+        assertArrayEquals(second, secrets[1]);
+        assertArrayEquals(third, secrets[2]);
+        assertArrayEquals(first, Hkdf.deriveSecrets(input, salt, info, 1)[0]);
+    }
+
+    private byte[] hmac(byte[] key, byte[] data) throws Exception {
+        var mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+}
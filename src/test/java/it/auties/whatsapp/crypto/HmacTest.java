@@ -0,0 +1,21 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class HmacTest {
+    @Test
+    public void testCalculateIntoBuffer() {
+        var key = Bytes.ofRandom(32)
+                .toByteArray();
+        var plainText = Bytes.ofRandom(100)
+                .toByteArray();
+        var hmac = new byte[36];
+        Hmac.calculateSha256(plainText, key, hmac, 4);
+        assertArrayEquals(Hmac.calculateSha256(plainText, key), Bytes.of(hmac)
+                .slice(4)
+                .toByteArray());
+    }
+}
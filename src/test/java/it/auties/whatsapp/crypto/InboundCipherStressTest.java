@@ -0,0 +1,114 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.model.signal.keypair.SignalPreKeyPair;
+import it.auties.whatsapp.model.signal.keypair.SignalSignedKeyPair;
+import it.auties.whatsapp.model.signal.message.SignalDistributionMessage;
+import it.auties.whatsapp.model.signal.message.SignalMessage;
+import it.auties.whatsapp.model.signal.sender.SenderKeyName;
+import it.auties.whatsapp.util.StripedLock;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Decrypts the enc nodes of many senders, both direct and group messages, from many threads and in random order
+public class InboundCipherStressTest {
+    private static final int SENDERS = 32;
+
+    private static final int MESSAGES = 25;
+
+    private static final int THREADS = 8;
+
+    private static final ContactJid GROUP = ContactJid.of("120363000000000000@g.us");
+
+    @Test
+    public void testConcurrentDecryption() throws Exception {
+        var receiver = Keys.random(1, false);
+        var receiverJid = ContactJid.of("390000000000@s.whatsapp.net");
+        var locks = new StripedLock(64);
+        var cipher = new InboundCipher(receiver, locks);
+        var messages = new ArrayList<EncryptedMessage>();
+        for (var sender = 0; sender < SENDERS; sender++) {
+            var senderKeys = Keys.random(sender + 2, false);
+            var senderJid = ContactJid.of("39%010d@s.whatsapp.net".formatted(sender));
+            var session = createSession(senderKeys, senderJid, receiver, receiverJid, cipher);
+            var senderName = new SenderKeyName(GROUP.toString(), senderJid.toSignalAddress());
+            var distribution = new GroupBuilder(senderKeys).createOutgoing(senderName);
+            new GroupBuilder(receiver).createIncoming(senderName, SignalDistributionMessage.ofSerialized(distribution));
+            var group = new GroupCipher(senderName, senderKeys);
+            for (var message = 0; message < MESSAGES; message++) {
+                var plainText = "%s:%s".formatted(sender, message)
+                        .getBytes(StandardCharsets.UTF_8);
+                messages.add(EncryptedMessage.of(senderJid, null, plainText, session.encrypt(plainText)));
+                messages.add(EncryptedMessage.of(GROUP, senderJid, plainText, group.encrypt(plainText)));
+            }
+        }
+
+        assertEquals(SENDERS * MESSAGES, messages.stream()
+                .filter(message -> message.type()
+                        .equals(InboundCipher.MSG))
+                .count());
+        assertEquals(SENDERS * MESSAGES, messages.stream()
+                .filter(message -> message.type()
+                        .equals(InboundCipher.SKMSG))
+                .count());
+        Collections.shuffle(messages, new Random(42));
+        var results = new ConcurrentHashMap<EncryptedMessage, byte[]>();
+        var executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            var futures = messages.stream()
+                    .map(message -> CompletableFuture.runAsync(() -> results.put(message, cipher.decrypt(message.from(),
+                            message.participant(), message.encrypted(), message.type()).orElseThrow()), executor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(futures)
+                    .get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(messages.size(), results.size());
+        messages.forEach(message -> assertArrayEquals(message.plainText(), results.get(message)));
+    }
+
+    // Establishes a session that both sides acknowledged, so that the next messages of the sender are msg and not pkmsg
+    private SessionCipher createSession(Keys senderKeys, ContactJid senderJid, Keys receiver, ContactJid receiverJid,
+                                        InboundCipher cipher) {
+        var preKey = SignalPreKeyPair.random(senderKeys.id());
+        receiver.addPreKey(preKey);
+        new SessionBuilder(receiverJid.toSignalAddress(), senderKeys).createOutgoing(receiver.id(),
+                receiver.identityKeyPair()
+                        .encodedPublicKey(), receiver.signedKeyPair(),
+                new SignalSignedKeyPair(preKey.id(), preKey.toGenericKeyPair(), null));
+        var session = new SessionCipher(receiverJid.toSignalAddress(), senderKeys);
+        var hello = EncryptedMessage.of(senderJid, null, new byte[1], session.encrypt(new byte[1]));
+        assertEquals(InboundCipher.PKMSG, hello.type());
+        cipher.decrypt(hello.from(), null, hello.encrypted(), hello.type())
+                .orElseThrow();
+        var reply = new SessionCipher(senderJid.toSignalAddress(), receiver).encrypt(new byte[1])
+                .contentAsBytes()
+                .orElseThrow();
+        session.decrypt(SignalMessage.ofSerialized(reply));
+        return session;
+    }
+
+    private record EncryptedMessage(ContactJid from, ContactJid participant, byte[] plainText, byte[] encrypted,
+                                    String type) {
+        private static EncryptedMessage of(ContactJid from, ContactJid participant, byte[] plainText, Node node) {
+            return new EncryptedMessage(from, participant, plainText, node.contentAsBytes()
+                    .orElseThrow(), node.attributes()
+                    .getRequiredString("type"));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class Sha256Test {
+    @Test
+    public void testCalculateIntoBuffer() {
+        var plainText = Bytes.ofRandom(100)
+                .toByteArray();
+        var hash = new byte[36];
+        Sha256.calculate(plainText, hash, 4);
+        assertArrayEquals(Sha256.calculate(plainText), Bytes.of(hash)
+                .slice(4)
+                .toByteArray());
+    }
+}
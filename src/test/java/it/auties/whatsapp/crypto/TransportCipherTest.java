@@ -0,0 +1,64 @@
+package it.auties.whatsapp.crypto;
+
+import it.auties.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransportCipherTest {
+    private static final int ITERATIONS = 256;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testCompatibility() {
+        var key = Bytes.of(randomBytes(32));
+        var writer = new TransportCipher(key);
+        var reader = new TransportCipher(key);
+        for (var counter = 0L; counter < ITERATIONS; counter++) {
+            var plainText = randomBytes(random.nextInt(70_000));
+            var expected = AesGmc.of(key, counter, true)
+                    .encrypt(plainText);
+            var encrypted = new byte[3 + writer.outputSize(plainText.length)];
+            var written = writer.encrypt(counter, plainText, 0, plainText.length, encrypted, 3);
+            assertEquals(expected.length, written);
+            assertArrayEquals(expected, Bytes.of(encrypted)
+                    .slice(3)
+                    .toByteArray());
+            assertArrayEquals(plainText, reader.decrypt(counter, ByteBuffer.wrap(encrypted, 3, written)));
+        }
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        var key = Bytes.of(randomBytes(32));
+        var cipher = new TransportCipher(key);
+        var plainText = randomBytes(1024);
+        var encrypted = AesGmc.of(key, 7, true)
+                .encrypt(plainText);
+        var buffer = ByteBuffer.allocateDirect(encrypted.length)
+                .put(encrypted)
+                .flip();
+        assertArrayEquals(plainText, cipher.decrypt(7, buffer));
+    }
+
+    @Test
+    public void testWrongCounter() {
+        var key = Bytes.of(randomBytes(32));
+        var cipher = new TransportCipher(key);
+        var encrypted = AesGmc.of(key, 1, true)
+                .encrypt(randomBytes(64));
+        assertThrows(AEADBadTagException.class, () -> cipher.decrypt(2, ByteBuffer.wrap(encrypted)));
+        assertThrows(IllegalArgumentException.class, () -> cipher.decrypt(1, ByteBuffer.allocate(8)));
+    }
+
+    private byte[] randomBytes(int length) {
+        var result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,49 @@
+package it.auties.whatsapp.model.request;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NodeListTest {
+    private static final List<String> DESCRIPTIONS = List.of("to", "participant", "enc", "device-identity");
+
+    @Test
+    public void testLookupsMatchLinearScan() {
+        for (var size = 0; size < 32; size++) {
+            var children = new ArrayList<Node>();
+            for (var index = 0; index < size; index++) {
+                var description = DESCRIPTIONS.get(index * 7 % DESCRIPTIONS.size());
+                children.add(Node.withAttributes(description, Map.of("id", index)));
+            }
+
+            var node = Node.withChildren("message", children);
+            assertEquals(children, node.children());
+            for (var description : DESCRIPTIONS) {
+                var expected = children.stream()
+                        .filter(child -> Objects.equals(child.description(), description))
+                        .toList();
+                assertEquals(expected, node.findNodes(description));
+                assertEquals(expected.stream()
+                        .findFirst(), node.findNode(description));
+                assertEquals(!expected.isEmpty(), node.hasNode(description));
+            }
+
+            assertTrue(node.findNodes("missing")
+                    .isEmpty());
+        }
+    }
+
+    @Test
+    public void testChildrenAreImmutable() {
+        var node = Node.withChildren("iq", Node.with("ping"));
+        assertThrows(UnsupportedOperationException.class, () -> node.children()
+                .add(Node.with("pong")));
+        assertSame(node.children(), Node.with("iq", node.children())
+                .children());
+    }
+}
@@ -0,0 +1,84 @@
+package it.auties.whatsapp.model.request;
+
+import it.auties.whatsapp.api.WhatsappRuntime;
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.controller.Store;
+import it.auties.whatsapp.socket.FrameWriter;
+import it.auties.whatsapp.socket.Transport;
+import lombok.NonNull;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestTest {
+    // The response is read on another thread, so it can arrive before the write of the request completes
+    @Test
+    public void testResponseBeforeWrite() throws Exception {
+        var transport = new PendingTransport();
+        var writer = new FrameWriter(transport, 16, Duration.ZERO, 16, Runnable::run);
+        var store = createStore();
+        var node = Node.withAttributes("iq", Map.of("id", "request-1"));
+        var future = Request.with(node)
+                .send(writer, Keys.random(1, false), store);
+        assertTrue(store.resolvePendingRequest(Node.withAttributes("iq", Map.of("id", "request-1", "type", "result")), false));
+        assertEquals("result", future.get(10, TimeUnit.SECONDS)
+                .attributes()
+                .getString("type"));
+        transport.pending.complete(null);
+    }
+
+    @Test
+    public void testFailedWrite() {
+        var transport = new PendingTransport();
+        var writer = new FrameWriter(transport, 16, Duration.ZERO, 16, Runnable::run);
+        var store = createStore();
+        var node = Node.withAttributes("iq", Map.of("id", "request-2"));
+        var future = Request.with(node)
+                .send(writer, Keys.random(1, false), store);
+        assertTrue(store.findPendingRequest("request-2")
+                .isPresent());
+        transport.pending.completeExceptionally(new IllegalStateException("Closed session"));
+        assertTrue(future.isCompletedExceptionally());
+        assertTrue(store.findPendingRequest("request-2")
+                .isEmpty());
+    }
+
+    private Store createStore() {
+        var runtime = WhatsappRuntime.shared();
+        return Store.random(1, false)
+                .requestsService(runtime.newListenersLane())
+                .timingWheel(runtime.timingWheel())
+                .timeoutsExecutor(Runnable::run);
+    }
+
+    private static class PendingTransport implements Transport {
+        private final CompletableFuture<Void> pending = new CompletableFuture<>();
+
+        @Override
+        public CompletableFuture<Void> connect(@NonNull URI uri, @NonNull Listener listener) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> send(@NonNull ByteBuffer message) {
+            return pending;
+        }
+
+        @Override
+        public CompletableFuture<Void> close() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package it.auties.whatsapp.model.signal.session;
+
+import it.auties.whatsapp.controller.Keys;
+import it.auties.whatsapp.model.signal.keypair.SignalKeyPair;
+import it.auties.whatsapp.util.JacksonProvider;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SkippedMessageKeysTest {
+    @Test
+    public void testPutAndRemove() {
+        var keys = new SkippedMessageKeys();
+        for (var counter = 0; counter < 10; counter++) {
+            keys.put(counter, key(counter));
+        }
+
+        assertEquals(10, keys.size());
+        assertArrayEquals(key(5), keys.remove(5));
+        assertNull(keys.remove(5));
+        assertFalse(keys.contains(5));
+        assertArrayEquals(key(0), keys.remove(0));
+        assertTrue(keys.evictOldest());
+        assertFalse(keys.contains(1));
+        assertTrue(keys.contains(2));
+        assertEquals(7, keys.size());
+    }
+
+    @Test
+    public void testChainLimit() {
+        var keys = new SkippedMessageKeys();
+        var last = SkippedMessageKeys.MAX_KEYS + 500;
+        for (var counter = 0; counter < last; counter++) {
+            keys.put(counter, key(counter));
+        }
+
+        assertEquals(SkippedMessageKeys.MAX_KEYS, keys.size());
+        assertFalse(keys.contains(499));
+        assertTrue(keys.contains(500));
+        keys.put(last + SkippedMessageKeys.MAX_KEYS * 2, key(0));
+        assertEquals(1, keys.size());
+    }
+
+    @Test
+    public void testEviction() {
+        var keys = Keys.random(1, false);
+        var session = new Session();
+        keys.putSession(new SessionAddress("test", 0), session);
+        var chain = new SessionChain(-1, key(0));
+        var state = SessionState.builder()
+                .rootKey(key(0))
+                .ephemeralKeyPair(SignalKeyPair.random())
+                .lastRemoteEphemeralKey(key(0))
+                .remoteIdentityKey(key(0))
+                .baseKey(key(0))
+                .build()
+                .addChain(key(1), chain);
+        session.addState(state);
+        for (var counter = 0; counter < 100; counter++) {
+            chain.messageKeys()
+                    .put(counter, key(counter));
+        }
+
+        assertEquals(100, keys.skippedMessageKeysCount());
+        assertEquals(60, keys.evictSkippedMessageKeys(Duration.ofDays(1), 40));
+        assertTrue(chain.hasMessageKey(60));
+        assertFalse(chain.hasMessageKey(59));
+        assertEquals(40, keys.evictSkippedMessageKeys(Duration.ofMillis(-1), 1000));
+        assertEquals(0, keys.skippedMessageKeysCount());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        var chain = new SessionChain(10, key(0));
+        chain.messageKeys()
+                .put(3, key(3));
+        chain.messageKeys()
+                .put(7, key(7));
+        var json = JacksonProvider.JSON.writeValueAsString(chain);
+        var result = JacksonProvider.JSON.readValue(json, SessionChain.class);
+        assertEquals(2, result.messageKeys()
+                .size());
+        assertArrayEquals(key(3), result.messageKeys()
+                .get(3));
+        assertArrayEquals(key(7), result.messageKeys()
+                .get(7));
+        assertFalse(result.hasMessageKey(5));
+    }
+
+    private byte[] key(int counter) {
+        var result = new byte[32];
+        result[0] = (byte) counter;
+        result[1] = (byte) (counter >> 8);
+        return result;
+    }
+}
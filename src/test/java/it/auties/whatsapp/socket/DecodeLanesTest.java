@@ -0,0 +1,72 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.model.contact.ContactJid;
+import it.auties.whatsapp.model.request.Node;
+import it.auties.whatsapp.util.StripedLock;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static it.auties.whatsapp.model.request.Node.withChildren;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecodeLanesTest {
+    private static final ContactJid SENDER = ContactJid.of("393495089819:2@s.whatsapp.net");
+
+    private static final ContactJid GROUP = ContactJid.of("120363000000000000@g.us");
+
+    @Test
+    public void testSender() {
+        assertEquals(SENDER.toUserJid(), DecodeLanes.sender(message(GROUP, SENDER, "pkmsg"))
+                .orElseThrow());
+        assertEquals(SENDER.toUserJid(), DecodeLanes.sender(message(SENDER, null, "msg"))
+                .orElseThrow());
+    }
+
+    // A session set up by a pkmsg in a group must exist before the next msg of the same sender in a conversation is decoded
+    @Test
+    public void testGroupPreKeyThenConversation() throws Exception {
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var locks = new StripedLock(64);
+            assertNotEquals(locks.stripe(GROUP), locks.stripe(SENDER.toUserJid()), "The chats should use different lanes");
+            var lanes = new DecodeLanes(locks, executor);
+            var decoded = new CopyOnWriteArrayList<String>();
+            var done = new CountDownLatch(2);
+            lanes.execute(message(GROUP, SENDER, "pkmsg"), () -> {
+                sleep();
+                decoded.add("pkmsg");
+                done.countDown();
+            });
+            lanes.execute(message(SENDER, null, "msg"), () -> {
+                decoded.add("msg");
+                done.countDown();
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of("pkmsg", "msg"), decoded);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Node message(ContactJid from, ContactJid participant, String type) {
+        var attributes = participant == null ?
+                Map.<String, Object>of("id", "1", "from", from) :
+                Map.<String, Object>of("id", "1", "from", from, "participant", participant);
+        return withChildren("message", attributes, Node.withAttributes("enc", Map.of("type", type)));
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException exception) {
+            Thread.currentThread()
+                    .interrupt();
+        }
+    }
+}
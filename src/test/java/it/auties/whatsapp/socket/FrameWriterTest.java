@@ -0,0 +1,321 @@
+package it.auties.whatsapp.socket;
+
+import it.auties.whatsapp.api.OutboundMetrics;
+import lombok.NonNull;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameWriterTest {
+    private static final int CAPACITY = 16;
+
+    @Test
+    public void testCoalescing() {
+        var transport = new RecordingTransport(false);
+        var writer = new FrameWriter(transport, 1024, Duration.ZERO, CAPACITY, Runnable::run);
+        var first = writer.write(WritePriority.BULK, () -> frame(0, 10));
+        var second = writer.write(WritePriority.BULK, () -> frame(1, 10));
+        var third = writer.write(WritePriority.BULK, () -> frame(2, 10));
+        assertEquals(1, transport.messages.size());
+        assertEquals(2, writer.pendingFrames());
+        transport.completeNext();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(2, transport.messages.size());
+        assertEquals(List.of(1, 2), counters(transport.messages.get(1)));
+        transport.completeNext();
+        assertTrue(second.isDone() && third.isDone());
+        assertEquals(0, writer.pendingFrames());
+    }
+
+    @Test
+    public void testBatchSize() {
+        var transport = new RecordingTransport(false);
+        var writer = new FrameWriter(transport, 64, Duration.ZERO, CAPACITY, Runnable::run);
+        for (var index = 0; index < 10; index++) {
+            var counter = index;
+            writer.write(WritePriority.BULK, () -> frame(counter, 20));
+        }
+
+        while (transport.completeNext()) {
+            // Every completion flushes the next batch
+        }
+
+        var sizes = transport.messages.stream()
+                .map(ByteBuffer::remaining)
+                .toList();
+        assertEquals(List.of(23, 46, 46, 46, 46, 23), sizes);
+    }
+
+    @Test
+    public void testConcurrentOrder() throws Exception {
+        var transport = new RecordingTransport(true);
+        var writer = new FrameWriter(transport, 4096, Duration.ZERO, CAPACITY, Runnable::run);
+        var counter = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(8);
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        for (var index = 0; index < 8_000; index++) {
+            var priority = WritePriority.values()[index % 3];
+            futures.add(CompletableFuture.supplyAsync(() -> writeWhenWritable(writer, priority, counter), executor)
+                    .thenCompose(future -> future));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        var received = transport.messages.stream()
+                .flatMap(message -> counters(message).stream())
+                .toList();
+        assertEquals(8_000, received.size());
+        for (var index = 0; index < received.size(); index++) {
+            assertEquals(index, received.get(index));
+        }
+
+        assertTrue(transport.messages.size() < 8_000, "No frame was coalesced");
+    }
+
+    @Test
+    public void testPriority() {
+        var transport = new RecordingTransport(false);
+        var writer = new FrameWriter(transport, 1024, Duration.ZERO, CAPACITY, Runnable::run);
+        var counter = new AtomicInteger();
+        writer.write(WritePriority.BULK, () -> frame(counter.getAndIncrement(), 10));
+        writer.write(WritePriority.BULK, () -> frame(counter.getAndIncrement(), 10));
+        writer.write(WritePriority.INTERACTIVE, () -> frame(counter.getAndIncrement(), 10));
+        writer.write(WritePriority.CONTROL, () -> frame(counter.getAndIncrement(), 10));
+        assertEquals(new OutboundMetrics(1, 1, 1, CAPACITY, 1, 1, 0), writer.metrics());
+        transport.completeNext();
+        assertEquals(List.of(1, 2, 3), counters(transport.messages.get(1)));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        var transport = new RecordingTransport(false);
+        var writer = new FrameWriter(transport, 1024, Duration.ZERO, CAPACITY, Runnable::run);
+        writer.write(WritePriority.BULK, () -> frame(0, 10));
+        for (var index = 0; index < CAPACITY; index++) {
+            writer.write(WritePriority.BULK, () -> frame(1, 10));
+        }
+
+        assertFalse(writer.isWritable(WritePriority.BULK));
+        assertTrue(writer.isWritable(WritePriority.INTERACTIVE));
+        var rejected = writer.write(WritePriority.BULK, () -> frame(2, 10));
+        var exception = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        assertFalse(writer.write(WritePriority.CONTROL, () -> frame(3, 10))
+                .isCompletedExceptionally());
+        var writable = writer.whenWritable(WritePriority.BULK);
+        assertFalse(writable.isDone());
+        transport.completeNext();
+        writable.get(5, TimeUnit.SECONDS);
+        assertEquals(1, writer.metrics()
+                .rejectedFrames());
+    }
+
+    @Test
+    public void testWritableExecutor() throws Exception {
+        var transport = new RecordingTransport(false);
+        var executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "writer-executor"));
+        try {
+            var writer = new FrameWriter(transport, 1024, Duration.ZERO, CAPACITY, executor);
+            writer.write(WritePriority.BULK, () -> frame(0, 10));
+            for (var index = 0; index < CAPACITY; index++) {
+                writer.write(WritePriority.BULK, () -> frame(1, 10));
+            }
+
+            var thread = writer.whenWritable(WritePriority.BULK)
+                    .thenApply(ignored -> Thread.currentThread()
+                            .getName());
+            assertFalse(thread.isDone());
+            transport.completeNext();
+            assertEquals("writer-executor", thread.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLinger() throws Exception {
+        var transport = new RecordingTransport(true);
+        var executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "writer-executor"));
+        try {
+            var writer = new FrameWriter(transport, 1024, Duration.ofMillis(50), CAPACITY, executor);
+            var threads = new ArrayList<String>();
+            var first = writer.write(WritePriority.BULK, () -> {
+                threads.add(Thread.currentThread()
+                        .getName());
+                return frame(0, 10);
+            });
+            var second = writer.write(WritePriority.BULK, () -> frame(1, 10));
+            CompletableFuture.allOf(first, second)
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals(1, transport.messages.size());
+            assertEquals(List.of(0, 1), counters(transport.messages.get(0)));
+            assertEquals(List.of("writer-executor"), threads, "The lingered message should be flushed on the executor of the writer");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testClear() {
+        var transport = new RecordingTransport(false);
+        var writer = new FrameWriter(transport, 1024, Duration.ZERO, CAPACITY, Runnable::run);
+        writer.write(WritePriority.BULK, () -> frame(0, 10));
+        var pending = writer.write(WritePriority.BULK, () -> frame(1, 10));
+        writer.clear();
+        var exception = assertThrows(ExecutionException.class, pending::get);
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        writer.write(WritePriority.BULK, () -> frame(2, 10));
+        assertEquals(2, transport.messages.size());
+        assertEquals(List.of(2), counters(transport.messages.get(1)));
+    }
+
+    @Test
+    public void testSendFailure() throws Exception {
+        var transport = new RecordingTransport(false);
+        transport.failures = 1;
+        var writer = new FrameWriter(transport, 1024, Duration.ZERO, CAPACITY, Runnable::run);
+        var failed = writer.write(WritePriority.BULK, () -> frame(0, 10));
+        var exception = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        var next = writer.write(WritePriority.BULK, () -> frame(1, 10));
+        assertEquals(1, transport.messages.size());
+        transport.completeNext();
+        next.get(5, TimeUnit.SECONDS);
+        assertEquals(0, writer.pendingFrames());
+    }
+
+    @Test
+    public void testCompletedSends() throws Exception {
+        var transport = new RecordingTransport(false);
+        transport.immediate = true;
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var writer = new FrameWriter(transport, 16, Duration.ZERO, 100_000, executor);
+            var maxDepth = new AtomicInteger();
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            for (var index = 0; index < 10_000; index++) {
+                var counter = index;
+                futures.add(writer.write(WritePriority.BULK, () -> {
+                    maxDepth.accumulateAndGet(Thread.currentThread()
+                            .getStackTrace().length, Math::max);
+                    return frame(counter, 10);
+                }));
+            }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                    .get(30, TimeUnit.SECONDS);
+            assertEquals(10_000, transport.messages.size());
+            assertTrue(maxDepth.get() < 200, "Frames were flushed recursively: %s frames deep".formatted(maxDepth.get()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Void> writeWhenWritable(FrameWriter writer, WritePriority priority,
+                                                      AtomicInteger counter) {
+        return writer.whenWritable(priority)
+                .thenCompose(ignored -> writer.write(priority, () -> frame(counter.getAndIncrement(), 16)))
+                .exceptionallyCompose(throwable -> writeWhenWritable(writer, priority, counter));
+    }
+
+    private byte[] frame(int counter, int length) {
+        var result = ByteBuffer.allocate(3 + length);
+        result.put((byte) (length >>> 16));
+        result.putShort((short) length);
+        result.putInt(counter);
+        return result.array();
+    }
+
+    private List<Integer> counters(ByteBuffer message) {
+        var result = new ArrayList<Integer>();
+        var buffer = message.duplicate();
+        while (buffer.hasRemaining()) {
+            var length = Byte.toUnsignedInt(buffer.get()) << 16 | Short.toUnsignedInt(buffer.getShort());
+            result.add(buffer.getInt(buffer.position()));
+            buffer.position(buffer.position() + length);
+        }
+
+        return result;
+    }
+
+    private static class RecordingTransport implements Transport {
+        private final boolean async;
+
+        private final List<ByteBuffer> messages;
+
+        private final List<CompletableFuture<Void>> futures;
+
+        private int completed;
+
+        private int failures;
+
+        private boolean immediate;
+
+        private RecordingTransport(boolean async) {
+            this.async = async;
+            this.messages = new ArrayList<>();
+            this.futures = new ArrayList<>();
+        }
+
+        @Override
+        public CompletableFuture<Void> connect(@NonNull URI uri, @NonNull Listener listener) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> send(@NonNull ByteBuffer message) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("Closed session");
+            }
+
+            messages.add(message);
+            if (immediate) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            if (async) {
+                return CompletableFuture.runAsync(() -> {
+                });
+            }
+
+            var future = new CompletableFuture<Void>();
+            futures.add(future);
+            return future;
+        }
+
+        private boolean completeNext() {
+            if (completed == futures.size()) {
+                return false;
+            }
+
+            futures.get(completed++)
+                    .complete(null);
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<Void> close() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+}
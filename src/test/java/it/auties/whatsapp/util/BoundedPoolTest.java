@@ -0,0 +1,65 @@
+package it.auties.whatsapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedPoolTest {
+    @Test
+    public void testReuse() {
+        var created = new AtomicInteger();
+        var resets = new AtomicInteger();
+        var pool = new BoundedPool<>(created::incrementAndGet, value -> resets.incrementAndGet(), value -> fail("Nothing should be discarded"), 4);
+        var first = pool.use(value -> value);
+        var second = pool.use(value -> value);
+        assertEquals(first, second, "An idle object should be reused");
+        assertEquals(1, created.get());
+        assertEquals(2, resets.get());
+        assertEquals(1, pool.idle());
+    }
+
+    @Test
+    public void testFailure() {
+        var created = new AtomicInteger();
+        var pool = new BoundedPool<>(created::incrementAndGet);
+        assertThrows(IllegalStateException.class, () -> pool.use(value -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(1, pool.idle(), "An object should be given back after a failure");
+        pool.use(value -> value);
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        var capacity = 2;
+        var threads = 8;
+        var discarded = new AtomicInteger();
+        var pool = new BoundedPool<>(Object::new, value -> {}, value -> discarded.incrementAndGet(), capacity);
+        var borrowed = new CountDownLatch(threads);
+        var release = new CountDownLatch(1);
+        var workers = new ArrayList<Thread>();
+        for (var index = 0; index < threads; index++) {
+            var worker = new Thread(() -> pool.use(value -> {
+                borrowed.countDown();
+                release.await();
+                return value;
+            }));
+            workers.add(worker);
+            worker.start();
+        }
+
+        borrowed.await();
+        release.countDown();
+        for (var worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(capacity, pool.idle());
+        assertEquals(threads - capacity, discarded.get());
+    }
+}
@@ -0,0 +1,90 @@
+package it.auties.whatsapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InflatersTest {
+    private static final int[] SIZES = {0, 1, 100, 8192, 100_000, 3_000_000};
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testInflate() throws IOException {
+        for (var size : SIZES) {
+            var data = randomData(size);
+            var compressed = compress(data);
+            assertArrayEquals(data, Inflaters.inflate(compressed));
+            assertEquals(ByteBuffer.wrap(data), Inflaters.inflate(ByteBuffer.wrap(compressed)));
+            try (var stream = Inflaters.inflating(ByteBuffer.wrap(compressed))) {
+                assertArrayEquals(data, stream.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedPayload() {
+        var data = randomData(10_000);
+        var compressed = compress(data);
+        var truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        assertThrows(DataFormatException.class, () -> Inflaters.inflate(truncated));
+        assertArrayEquals(data, Inflaters.inflate(compressed), "The pooled inflaters should be reusable after a failure");
+    }
+
+    @Test
+    public void testManyThreads() throws Exception {
+        var data = randomData(10_000);
+        var compressed = compress(data);
+        var threads = new ArrayList<Thread>();
+        var failures = new ConcurrentLinkedQueue<Throwable>();
+        for (var index = 0; index < 256; index++) {
+            var thread = new Thread(() -> {
+                try {
+                    assertArrayEquals(data, Inflaters.inflate(compressed));
+                } catch (Throwable throwable) {
+                    failures.add(throwable);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.isEmpty(), () -> "Inflation failed: %s".formatted(failures));
+        assertTrue(Inflaters.idleInflaters() <= BoundedPool.DEFAULT_CAPACITY, "The pool should be bounded, but it has %s idle inflaters".formatted(Inflaters.idleInflaters()));
+    }
+
+    private byte[] randomData(int size) {
+        var result = new byte[size];
+        for (var index = 0; index < size; index++) {
+            result[index] = (byte) ('a' + random.nextInt(8));
+        }
+
+        return result;
+    }
+
+    private byte[] compress(byte[] data) {
+        var deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            var result = new byte[data.length + 64];
+            var length = deflater.deflate(result);
+            return Arrays.copyOf(result, length);
+        } finally {
+            deflater.end();
+        }
+    }
+}
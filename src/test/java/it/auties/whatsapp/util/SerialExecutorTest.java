@@ -0,0 +1,96 @@
+package it.auties.whatsapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerialExecutorTest {
+    private static final int TASKS = 10_000;
+
+    @Test
+    public void testOrder() throws Exception {
+        var delegate = Executors.newFixedThreadPool(4);
+        try {
+            var executor = new SerialExecutor(delegate);
+            var results = Collections.synchronizedList(new ArrayList<Integer>());
+            var running = new AtomicInteger();
+            var latch = new CountDownLatch(TASKS);
+            for (var index = 0; index < TASKS; index++) {
+                var value = index;
+                executor.execute(() -> {
+                    assertEquals(1, running.incrementAndGet());
+                    results.add(value);
+                    running.decrementAndGet();
+                    latch.countDown();
+                });
+            }
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(IntStream.range(0, TASKS)
+                    .boxed()
+                    .toList(), results);
+        } finally {
+            delegate.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharedDelegate() throws Exception {
+        var delegate = Executors.newSingleThreadExecutor();
+        try {
+            var lanes = List.of(new SerialExecutor(delegate), new SerialExecutor(delegate));
+            var latch = new CountDownLatch(lanes.size());
+            var blocker = new CountDownLatch(1);
+            lanes.get(0)
+                    .execute(() -> await(blocker));
+            for (var index = 0; index < 1_000; index++) {
+                lanes.get(0)
+                        .execute(() -> {
+                        });
+            }
+
+            lanes.get(0)
+                    .execute(latch::countDown);
+            lanes.get(1)
+                    .execute(latch::countDown);
+            blocker.countDown();
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            delegate.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailingTask() throws Exception {
+        var delegate = Executors.newSingleThreadExecutor();
+        try {
+            var executor = new SerialExecutor(delegate);
+            var latch = new CountDownLatch(1);
+            executor.execute(() -> {
+                throw new IllegalStateException("Expected");
+            });
+            executor.execute(latch::countDown);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(0, executor.pendingTasks());
+        } finally {
+            delegate.shutdownNow();
+        }
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package it.auties.whatsapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedLockTest {
+    private static final int THREADS = 8;
+
+    private static final int ITERATIONS = 10_000;
+
+    @Test
+    public void testMutualExclusion() throws Exception {
+        var lock = new StripedLock(16);
+        var counters = new int[4];
+        var executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            var futures = IntStream.range(0, THREADS)
+                    .mapToObj(thread -> CompletableFuture.runAsync(() -> {
+                        for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+                            var key = iteration % counters.length;
+                            lock.lock("key-%s".formatted(key), () -> counters[key]++);
+                        }
+                    }, executor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(futures)
+                    .get(30, TimeUnit.SECONDS);
+            for (var counter : counters) {
+                assertEquals(THREADS * ITERATIONS / counters.length, counter);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDifferentKeys() throws Exception {
+        var lock = new StripedLock(64);
+        var first = "first";
+        var second = IntStream.range(0, 1000)
+                .mapToObj("second-%s"::formatted)
+                .filter(key -> lock.stripe(key) != lock.stripe(first))
+                .findFirst()
+                .orElseThrow();
+        var holding = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var holder = CompletableFuture.runAsync(() -> lock.lock(first, () -> {
+                holding.countDown();
+                return await(release);
+            }), executor);
+            assertTrue(holding.await(10, TimeUnit.SECONDS));
+            assertTrue(lock.lock(second, () -> true));
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReentrancy() {
+        var lock = new StripedLock(1);
+        var count = new AtomicInteger();
+        lock.lock("key", () -> lock.lock("key", count::incrementAndGet));
+        assertEquals(1, count.get());
+        assertEquals(1, lock.size());
+        assertThrows(IllegalArgumentException.class, () -> new StripedLock(0));
+    }
+
+    private boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+}
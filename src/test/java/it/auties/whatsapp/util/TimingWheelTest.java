@@ -0,0 +1,99 @@
+package it.auties.whatsapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+    @Test
+    public void testExpiry() throws InterruptedException {
+        var wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8, Runnable::run);
+        var latch = new CountDownLatch(3);
+        var start = System.nanoTime();
+        var elapsed = new long[3];
+        var delays = new long[]{0, 20, 120};
+        for (var index = 0; index < delays.length; index++) {
+            var position = index;
+            wheel.schedule(() -> {
+                elapsed[position] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                latch.countDown();
+            }, delays[index], TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (var index = 0; index < delays.length; index++) {
+            assertTrue(elapsed[index] >= delays[index], "Task %s ran early: %s ms".formatted(index, elapsed[index]));
+        }
+
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        var wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 16, Runnable::run);
+        var runs = new AtomicInteger();
+        var timeouts = new ArrayList<TimingWheel.Timeout>();
+        for (var index = 0; index < 10_000; index++) {
+            timeouts.add(wheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS));
+        }
+
+        var survivor = wheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        timeouts.forEach(timeout -> assertTrue(timeout.cancel()));
+        assertEquals(1, wheel.size());
+        Thread.sleep(300);
+        assertEquals(1, runs.get());
+        assertTrue(survivor.isExpired());
+        assertFalse(survivor.cancel());
+        assertTrue(timeouts.get(0)
+                .isCancelled());
+    }
+
+    @Test
+    public void testConcurrentSchedule() throws InterruptedException {
+        var wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 64, Runnable::run);
+        var latch = new CountDownLatch(8 * 1000);
+        var executor = Executors.newFixedThreadPool(8);
+        for (var thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (var index = 0; index < 1000; index++) {
+                    wheel.schedule(latch::countDown, index % 100, TimeUnit.MILLISECONDS);
+                }
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testExecutorAndClose() throws InterruptedException {
+        var wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8, Runnable::run);
+        var executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "timeouts"));
+        try {
+            var thread = new String[1];
+            var latch = new CountDownLatch(1);
+            wheel.schedule(() -> {
+                thread[0] = Thread.currentThread()
+                        .getName();
+                latch.countDown();
+            }, 10, TimeUnit.MILLISECONDS, executor);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals("timeouts", thread[0]);
+            var runs = new AtomicInteger();
+            wheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+            wheel.close();
+            assertThrows(RejectedExecutionException.class, () -> wheel.schedule(runs::incrementAndGet, 0, TimeUnit.MILLISECONDS));
+            Thread.sleep(150);
+            assertEquals(0, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
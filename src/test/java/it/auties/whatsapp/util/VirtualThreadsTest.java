@@ -0,0 +1,38 @@
+package it.auties.whatsapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadsTest {
+    @Test
+    public void testBlockingTasks() throws Exception {
+        var tasks = Runtime.getRuntime()
+                .availableProcessors() * 4;
+        var latch = new CountDownLatch(tasks);
+        var futures = new CompletableFuture[tasks];
+        for (var index = 0; index < tasks; index++) {
+            futures[index] = CompletableFuture.runAsync(() -> {
+                latch.countDown();
+                await(latch);
+            }, VirtualThreads.executor());
+        }
+
+        CompletableFuture.allOf(futures)
+                .get(10, TimeUnit.SECONDS);
+        assertTrue(CompletableFuture.supplyAsync(() -> true)
+                .get(1, TimeUnit.SECONDS));
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+}